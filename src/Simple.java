@@ -7,60 +7,273 @@
  * San Jose State University
  * 
  */
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+import com.sun.management.ThreadMXBean;
+
 import frontend.*;
 import intermediate.*;
 import backend.*;
+import service.*;
 
 import static frontend.Token.TokenType.*;
 
 public class Simple
 {
+    private static final long PARSER_STACK_SIZE = 1L << 30;
+    private static final int THROUGHPUT_PROGRAMS = 10000;
+    private static final int SERIALIZE_ROUNDS = 5;
+    private static final long FORMATS_SEED = 153;
+    private static final int ALLOCATION_WARMUP_RUNS = 1000;
+    private static final int ALLOCATION_RUNS = 2000;
+    private static final int FORMATS_MISMATCHES_SHOWN = 10;
+    
+    // Options between the operation and the source file name.
+    private static boolean iterative = false;
+    private static boolean tiered    = false;
+    private static boolean tracing   = false;
+    private static boolean compiled  = false;
+    private static boolean partial   = false;
+    private static boolean parallel  = false;
+    private static boolean streaming = false;
+    private static boolean lazy      = false;
+    private static boolean sharing   = false;
+    private static String profileDirectory = null;
+    private static String cacheMode = "off";  // off, read, or readwrite
+    private static String outputDirectory = null;  // of a batch's output files
+    private static ParseTreeSerializer.Format treeFormat = ParseTreeSerializer.Format.XML;
+    private static long fuel = Budget.UNLIMITED_FUEL;  // loop back edges
+    private static long timeoutMillis = Budget.NO_TIMEOUT;
+    
     public static void main(String args[])
     {
-        if (args.length != 2)
+        if (args.length < 2) usage();
+        
+        String operation      = args[0];  // -scan, -parse, -cfg, -ranges, -throughput,
+                                          // -serialize, -allocation, -formats, -batch,
+                                          // -daemon, or -execute
+        String sourceFileName = args[args.length - 1];  // or batch
+        
+        for (int i = 1; i < args.length - 1; i++)
         {
-            System.out.println("Usage: simple -{scan, parse, execute} " +
-                               "sourceFileName");
-            System.exit(-1);
+            String option = args[i];
+            
+            if      (option.equalsIgnoreCase("-iterative")) iterative = true;
+            else if (option.equalsIgnoreCase("-tiered"))    tiered    = true;
+            else if (option.equalsIgnoreCase("-trace"))     tracing   = true;
+            else if (option.equalsIgnoreCase("-compile"))   compiled  = true;
+            else if (option.equalsIgnoreCase("-partial"))   partial   = true;
+            else if (option.equalsIgnoreCase("-parallel"))  parallel  = true;
+            else if (option.equalsIgnoreCase("-stream"))    streaming = true;
+            else if (option.equalsIgnoreCase("-lazy"))      lazy      = true;
+            else if (option.equalsIgnoreCase("-share"))     sharing   = true;
+            else if (option.toLowerCase().startsWith("-profile="))
+            {
+                profileDirectory = option.substring("-profile=".length());
+            }
+            else if (option.toLowerCase().startsWith("-cache="))
+            {
+                cacheMode = option.substring("-cache=".length()).toLowerCase();
+                if (!cacheMode.matches("off|read|readwrite")) usage();
+            }
+            else if (option.toLowerCase().startsWith("-format="))
+            {
+                String format = option.substring("-format=".length()).toLowerCase();
+                if (!format.matches("xml|json|binary")) usage();
+                treeFormat = ParseTreeSerializer.Format.valueOf(format.toUpperCase());
+            }
+            else if (option.toLowerCase().startsWith("-fuel="))
+            {
+                fuel = positiveNumber(option.substring("-fuel=".length()));
+            }
+            else if (option.toLowerCase().startsWith("-timeout="))
+            {
+                timeoutMillis = positiveNumber(option.substring("-timeout=".length()));
+            }
+            else if (option.toLowerCase().startsWith("-output="))
+            {
+                outputDirectory = option.substring("-output=".length());
+            }
+            else usage();
         }
         
-        String operation      = args[0];  // -scan, -parse, or -execute
-        String sourceFileName = args[1];
+        // A batch names a directory or a list of source files, a daemon
+        // names its socket file, and a formatter check counts its values.
+        if (operation.equalsIgnoreCase("-batch"))
+        {
+            runBatch(sourceFileName);
+            return;
+        }
+        else if (operation.equalsIgnoreCase("-formats"))
+        {
+            testNumberFormatter(positiveNumber(sourceFileName));
+            return;
+        }
+        else if (operation.equalsIgnoreCase("-daemon"))
+        {
+            SimpleDaemon.serve(sourceFileName);
+            return;
+        }
         
-        Source source = new Source(sourceFileName);
+        // A lazy parser parses skimmed statements from the source text later.
+        String sourceText = lazy ? readSourceText(sourceFileName) : null;
+        Source source = sourceText != null ? new Source(new StringReader(sourceText))
+                                           : new Source(sourceFileName);
         
         if (operation.equalsIgnoreCase("-scan"))
         {
-            testScanner(source);
+            testScanner(source, System.out);
         }
         else if (operation.equalsIgnoreCase("-parse"))
         {
-            testParser(new Scanner(source), new Symtab());
+            testParser(new Scanner(source), new Symtab(), System.out, sourceText);
+        }
+        else if (operation.equalsIgnoreCase("-cfg"))
+        {
+            testControlFlowGraph(new Scanner(source), new Symtab());
+        }
+        else if (operation.equalsIgnoreCase("-ranges"))
+        {
+            testRangeAnalysis(new Scanner(source), new Symtab());
+        }
+        else if (operation.equalsIgnoreCase("-throughput"))
+        {
+            testThroughput(sourceFileName);
+        }
+        else if (operation.equalsIgnoreCase("-serialize"))
+        {
+            testSerializer(new Scanner(source), new Symtab());
+        }
+        else if (operation.equalsIgnoreCase("-allocation"))
+        {
+            testAllocation(sourceFileName);
+        }
+        else if (operation.equalsIgnoreCase("-execute") && streaming)
+        {
+            executeStreaming(source);
         }
         else if (operation.equalsIgnoreCase("-execute"))
         {
             Symtab symtab = new Symtab();
-            executeProgram(new Parser(new Scanner(source), symtab), symtab);
+            Parser parser = new Parser(new Scanner(source), symtab);
+            
+            // Only the tree walker parses skimmed statements when it reaches
+            // them. The other options need the whole tree, and a program for
+            // the iterative executor may be too deep to parse on this stack.
+            if (   !iterative && !tiered && !tracing && !compiled && !parallel 
+                && !partial && !sharing && (profileDirectory == null))
+            {
+                parser.setLazy(sourceText);
+            }
+            
+            // A limited run's result depends on the limits, so it isn't cached.
+            boolean limited =    (fuel != Budget.UNLIMITED_FUEL) 
+                              || (timeoutMillis != Budget.NO_TIMEOUT);
+            
+            if (cacheMode.equals("off") || limited)
+            {
+                executeProgram(parser, symtab, sourceFileName, 
+                               new OutputBuffer(), System::exit);
+            }
+            else executeWithCache(parser, symtab, sourceFileName);
+        }
+    }
+    
+    /**
+     * Print the usage message and exit.
+     */
+    private static void usage()
+    {
+        System.out.println("Usage: simple -{scan, parse, cfg, ranges, throughput, serialize, " +
+                           "allocation, execute} " +
+                           "[-iterative | -tiered | -trace | -compile | -parallel | -stream] " +
+                           "[-partial] [-lazy] [-share] [-format=xml|json|binary] " +
+                           "[-profile=directory] [-cache=off|read|readwrite] " +
+                           "[-fuel=backEdges] [-timeout=milliseconds] sourceFileName");
+        System.out.println("       simple -batch [-output=directory] " +
+                           "[-fuel=backEdges] [-timeout=milliseconds] directory|listFileName");
+        System.out.println("       simple -daemon socketFileName");
+        System.out.println("       simple -formats valueCount");
+        System.exit(-1);
+    }
+    
+    /**
+     * Parse the number of an option.
+     * @param text the text of the number.
+     * @return the number, or exit with the usage message if it 
+     *         isn't a positive integer.
+     */
+    private static long positiveNumber(String text)
+    {
+        try
+        {
+            long number = Long.parseLong(text);
+            if (number > 0) return number;
         }
+        catch (NumberFormatException ex)
+        {
+            // Fall through to the usage message.
+        }
+        
+        usage();
+        return 0;
     }
     
     /**
      * Test the scanner.
      * @param source the input source.
+     * @param out the stream to print the tokens and any errors to.
      */
-    private static void testScanner(Source source)
+    static void testScanner(Source source, PrintStream out)
     {
-        System.out.println("Tokens:");
-        System.out.println();
+        out.println("Tokens:");
+        out.println();
         
-        Scanner scanner = new Scanner(source);  // create the scanner
+        Scanner scanner = new Scanner(source, out);  // create the scanner
         
         // Loop to extract and print each token from the source one at a time.
         for (Token token = scanner.nextToken(); 
              token.type != END_OF_FILE; 
              token = scanner.nextToken())
         {
-            System.out.printf("%12s : %s\n", token.type, token.text);
+            out.printf("%12s : %s\n", token.type, token.text);
+        }
+    }
+    
+    /**
+     * Read the text of a source file.
+     * @param sourceFileName the source file name.
+     * @return the text.
+     */
+    private static String readSourceText(String sourceFileName)
+    {
+        try
+        {
+            return new String(Files.readAllBytes(new File(sourceFileName).toPath()));
+        }
+        catch (IOException ex)
+        {
+            System.out.printf("*** ERROR: Failed to open " + sourceFileName);
+            System.exit(-1);
+            return null;
         }
     }
     
@@ -68,21 +281,321 @@ public class Simple
      * Test the parser.
      * @param scanner the scanner.
      * @param symtab the symbol table.
+     * @param out the stream to print the parse tree and any errors to.
      */
-    private static void testParser(Scanner scanner, Symtab symtab)
+    static void testParser(Scanner scanner, Symtab symtab, PrintStream out)
+    {
+        testParser(scanner, symtab, out, null);
+    }
+    
+    /**
+     * Test the parser.
+     * @param scanner the scanner.
+     * @param symtab the symbol table.
+     * @param out the stream to print the parse tree and any errors to.
+     * @param sourceText the text that the scanner scans, to parse lazily
+     *                   and parse what's skimmed right after, or null.
+     */
+    static void testParser(Scanner scanner, Symtab symtab, PrintStream out,
+                           String sourceText)
+    {
+        Parser parser = new Parser(scanner, symtab, out);  // create the parser
+        parser.setLazy(sourceText);
+        parser.setChecking(true);                          // parse whatever is skimmed
+        Node programNode = parser.parseProgram();          // and parse the program
+        int errorCount = parser.errorCount();
+        
+        // If no errors, print the parse tree.
+        if (errorCount == 0)
+        {
+            if (sharing) shareSubtrees(programNode);
+            
+            // Only the XML is for people to read.
+            if (treeFormat == ParseTreeSerializer.Format.XML)
+            {
+                out.println("Parse tree:");
+                out.println();
+            }
+            out.flush();
+            
+            try
+            {
+                new ParseTreeSerializer(Channels.newChannel(out), treeFormat).serialize(programNode);
+            }
+            catch (IOException ex)
+            {
+                out.println("*** ERROR: " + ex.getMessage());
+            }
+        }
+        else
+        {
+            out.println();
+            out.println("There were " + errorCount + " syntax errors.");
+        }
+    }
+    
+    /**
+     * Measure how fast the parse tree is serialized in each format,
+     * and by ParseTreePrinter, into output that's thrown away. Each
+     * one's best of several rounds is reported.
+     * @param scanner the scanner.
+     * @param symtab the symbol table.
+     */
+    private static void testSerializer(Scanner scanner, Symtab symtab)
+    {
+        Parser parser = new Parser(scanner, symtab);
+        Node programNode = iterative ? parseOnLargeStack(parser)
+                                     : parser.parseProgram();
+        int errorCount = parser.errorCount();
+        
+        if (errorCount > 0)
+        {
+            System.out.println();
+            System.out.println("There were " + errorCount + " syntax errors.");
+            return;
+        }
+        
+        for (ParseTreeSerializer.Format format : ParseTreeSerializer.Format.values())
+        {
+            long bytes = 0;
+            long best = Long.MAX_VALUE;
+            
+            try
+            {
+                for (int round = 0; round < SERIALIZE_ROUNDS; round++)
+                {
+                    ParseTreeSerializer serializer = 
+                        new ParseTreeSerializer(new DiscardChannel(), format);
+                    long start = System.nanoTime();
+                    serializer.serialize(programNode);
+                    best = Math.min(best, System.nanoTime() - start);
+                    bytes = serializer.byteCount();
+                }
+            }
+            catch (IOException ex)
+            {
+                System.out.println("*** ERROR: " + ex.getMessage());
+                return;
+            }
+            
+            printRate(format.toString(), bytes, best);
+        }
+        
+        // The printer recurses, so a deep tree overflows its stack.
+        try
+        {
+            long best = Long.MAX_VALUE;
+            CountingStream counter = null;
+            
+            for (int round = 0; round < SERIALIZE_ROUNDS; round++)
+            {
+                counter = new CountingStream();
+                PrintStream out = new PrintStream(counter);
+                long start = System.nanoTime();
+                new ParseTreePrinter(out).print(programNode);
+                out.flush();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            
+            printRate("ParseTreePrinter", counter.count, best);
+        }
+        catch (StackOverflowError ex)
+        {
+            System.out.println("ParseTreePrinter: the parse tree is too deep");
+        }
+    }
+    
+    /**
+     * Measure the bytes that executing a program allocates, as the 
+     * average of many runs after enough runs to compile the hot code.
+     * Each run parses the program again, which isn't measured, and its
+     * output is thrown away. The tree walker runs the program unless an
+     * -iterative, -tiered or -trace option picks another executor.
+     * @param sourceFileName the source file name.
+     */
+    private static void testAllocation(String sourceFileName)
+    {
+        String sourceText = readSourceText(sourceFileName);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        
+        for (int run = 0; run < ALLOCATION_WARMUP_RUNS + ALLOCATION_RUNS; run++)
+        {
+            Symtab symtab = new Symtab();
+            Parser parser = new Parser(new Scanner(new Source(new StringReader(sourceText))),
+                                       symtab);
+            Node programNode = parser.parseProgram();
+            int errorCount = parser.errorCount();
+            
+            if (errorCount > 0)
+            {
+                System.out.println();
+                System.out.println("There were " + errorCount + " syntax errors.");
+                return;
+            }
+            
+            OutputBuffer output = new OutputBuffer(OutputStream.nullOutputStream());
+            Executor executor = 
+                  iterative ? new IterativeExecutor(symtab, output)
+                : tiered    ? new TieredExecutor(symtab, output, TieredExecutor.DEFAULT_THRESHOLD)
+                : tracing   ? new TracingExecutor(symtab, output, TracingExecutor.DEFAULT_THRESHOLD)
+                :             new Executor(symtab, output);
+            
+            long start = threads.getCurrentThreadAllocatedBytes();
+            executor.visit(programNode);
+            executor.flush();
+            
+            if (run >= ALLOCATION_WARMUP_RUNS)
+            {
+                allocated += threads.getCurrentThreadAllocatedBytes() - start;
+            }
+        }
+        
+        System.out.printf("%,d bytes allocated per execution, the average of %d runs " +
+                          "after %d to warm up%n",
+                          allocated/ALLOCATION_RUNS, ALLOCATION_RUNS, ALLOCATION_WARMUP_RUNS);
+    }
+    
+    /**
+     * Check that NumberFormatter formats random values exactly as
+     * String.format does, with the formats of WRITE arguments. The
+     * values are of every magnitude, integral, decimal ties such as
+     * 2.675, and arbitrary bit patterns, including NaN, infinities and
+     * subnormals. The random seed is fixed, so a mismatch is repeatable.
+     * Exit with status 1 if any value differs.
+     * @param count the number of values.
+     */
+    private static void testNumberFormatter(long count)
+    {
+        Random random = new Random(FORMATS_SEED);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputBuffer out = new OutputBuffer(sink);
+        long formatted = 0;
+        long mismatches = 0;
+        
+        for (long i = 0; i < count; i++)
+        {
+            double value = randomValue(random);
+            int fieldWidth = random.nextInt(4) == 0 ? -1 : 1 + random.nextInt(30);
+            int decimalPlaces = random.nextInt(NumberFormatter.MAX_DECIMAL_PLACES + 1);
+            
+            // The format that WriteFormat compiles.
+            String format = "%" + (fieldWidth >= 0 ? fieldWidth : "") 
+                          + "." + decimalPlaces + "f";
+            
+            if (!NumberFormatter.format(value, fieldWidth, decimalPlaces, out)) continue;
+            formatted++;
+            
+            out.flush();
+            String actual = sink.toString();
+            String expected = String.format(format, value);
+            sink.reset();
+            
+            if (!actual.equals(expected) && (++mismatches <= FORMATS_MISMATCHES_SHOWN))
+            {
+                System.out.printf("*** MISMATCH: %s of %s (bits %016x): expected '%s', got '%s'%n",
+                                  format, value, Double.doubleToRawLongBits(value),
+                                  expected, actual);
+            }
+        }
+        
+        System.out.printf("%d values: %d formatted, %d left to Formatter, %d mismatches%n",
+                          count, formatted, count - formatted, mismatches);
+        if (mismatches > 0) System.exit(1);
+    }
+    
+    /**
+     * @param random the random number generator.
+     * @return a random value to format.
+     */
+    private static double randomValue(Random random)
+    {
+        switch (random.nextInt(4))
+        {
+            case 0 :  // any magnitude
+            {
+                double value = random.nextDouble()*Math.pow(10, random.nextInt(41) - 20);
+                return random.nextBoolean() ? value : -value;
+            }
+            case 1 :  // integral
+                return random.nextLong() >> random.nextInt(64);
+            case 2 :  // a decimal tie, which only the shortest representation shows
+            {
+                double tie = random.nextInt(2_000_001) - 1_000_000 + 0.5;
+                return tie/Math.pow(10, random.nextInt(8));
+            }
+            default :
+                return Double.longBitsToDouble(random.nextLong());
+        }
+    }
+    
+    /**
+     * Print the rate of serializing a parse tree.
+     * @param name the name of the serializer.
+     * @param bytes the number of bytes written.
+     * @param nanoseconds the time taken.
+     */
+    private static void printRate(String name, long bytes, long nanoseconds)
+    {
+        double megabytes = bytes/1e6;
+        double seconds = nanoseconds/1e9;
+        System.out.printf("%-16s %10.2f MB in %.3f seconds: %8.1f MB/second%n",
+                          name, megabytes, seconds, megabytes/seconds);
+    }
+    
+    /**
+     * A channel that throws its bytes away.
+     */
+    private static class DiscardChannel implements WritableByteChannel
+    {
+        public int write(ByteBuffer bytes)
+        {
+            int count = bytes.remaining();
+            bytes.position(bytes.limit());
+            return count;
+        }
+        
+        public boolean isOpen() { return true; }
+        public void close() {}
+    }
+    
+    /**
+     * An output stream that counts its bytes and throws them away.
+     */
+    private static class CountingStream extends OutputStream
+    {
+        long count = 0;
+        
+        public void write(int b) { count++; }
+        public void write(byte[] bytes, int offset, int length) { count += length; }
+    }
+    
+    /**
+     * Test the control flow graph builder.
+     * @param scanner the scanner.
+     * @param symtab the symbol table.
+     */
+    private static void testControlFlowGraph(Scanner scanner, Symtab symtab)
     {
         Parser parser = new Parser(scanner, symtab);  // create the parser
         Node programNode = parser.parseProgram();     // and parse the program
         int errorCount = parser.errorCount();
         
-        // If no errors, print the parse tree.
+        // If no errors, build, verify, and print the control flow graph.
         if (errorCount == 0)
         {
-            System.out.println("Parse tree:");
+            ControlFlowGraph graph = new CfgBuilder(symtab).build(programNode);
+            
+            System.out.println("Control flow graph:");
             System.out.println();
             
-            ParseTreePrinter printer = new ParseTreePrinter();
-            printer.print(programNode);
+            CfgPrinter printer = new CfgPrinter();
+            printer.print(graph);
+            
+            for (String error : new CfgVerifier().verify(graph))
+            {
+                System.out.println("*** CFG ERROR: " + error);
+            }
         }
         else
         {
@@ -91,26 +604,500 @@ public class Simple
         }
     }
     
+    /**
+     * Test the range analysis. Report the division checks that it
+     * removes and the variables that it proves integral. Variables are
+     * still stored as doubles. Only the compiled code of a CASE whose
+     * selector is provably an int looks up its branch by the int.
+     * @param scanner the scanner.
+     * @param symtab the symbol table.
+     */
+    private static void testRangeAnalysis(Scanner scanner, Symtab symtab)
+    {
+        Parser parser = new Parser(scanner, symtab);  // create the parser
+        Node programNode = parser.parseProgram();     // and parse the program
+        int errorCount = parser.errorCount();
+        
+        if (errorCount > 0)
+        {
+            System.out.println();
+            System.out.println("There were " + errorCount + " syntax errors.");
+            return;
+        }
+        
+        ControlFlowGraph graph = new CfgBuilder(symtab).build(programNode);
+        new RangeAnalysis().analyze(graph);
+        
+        System.out.println("Division checks:");
+        System.out.println();
+        
+        int removed = 0, kept = 0;
+        for (BasicBlock block : graph.blocks)
+        {
+            for (Instruction instruction : block.instructions)
+            {
+                if (   (instruction.opcode != Instruction.Opcode.DIVIDE)
+                    && (instruction.opcode != Instruction.Opcode.DIV))
+                {
+                    continue;
+                }
+                
+                Range range = instruction.node.children.get(1).range;
+                Instruction line = instruction.operands.get(2);
+                boolean nonZero = (range != null) && range.isNonZero();
+                
+                if (nonZero) removed++;
+                else         kept++;
+                
+                System.out.printf("%8s  %-6s %-7s divisor %s%n",
+                                  line.opcode == Instruction.Opcode.CONSTANT 
+                                      ? "line " + (long) line.constant : "",
+                                  instruction.opcode.toString().toLowerCase(),
+                                  nonZero ? "removed" : "kept", range);
+            }
+        }
+        
+        System.out.println();
+        System.out.println(removed + " checks removed, " + kept + " kept.");
+        
+        // A variable is integral if every value read from it fits in an int.
+        TreeMap<String, Boolean> integral = new TreeMap<>();
+        for (ControlFlowGraph.Use use : graph.uses)
+        {
+            Node node = use.node;
+            if (node.type != Node.NodeType.VARIABLE) continue;
+            
+            boolean isInt = (node.range != null) && node.range.isInt();
+            integral.merge(node.text, isInt, Boolean::logicalAnd);
+        }
+        integral.values().removeIf(isInt -> !isInt);
+        
+        System.out.println();
+        System.out.println("Variables provably integral: " 
+                           + String.join(", ", integral.keySet()));
+    }
+    
+    /**
+     * Test the throughput of the execution service: Run many copies
+     * of a program at once and report how many finished per second.
+     * @param sourceFileName the source file name.
+     */
+    private static void testThroughput(String sourceFileName)
+    {
+        String sourceText = null;
+        
+        try
+        {
+            sourceText = new String(Files.readAllBytes(new File(sourceFileName).toPath()));
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to read " + sourceFileName);
+            System.exit(-1);
+        }
+        
+        ArrayList<CompletableFuture<ExecutionService.Result>> results = new ArrayList<>();
+        EnumMap<ExecutionService.Status, Integer> counts = 
+            new EnumMap<>(ExecutionService.Status.class);
+        long start = System.nanoTime();
+        
+        try (ExecutionService service = 
+                 new ExecutionService(ExecutionService.DEFAULT_MAX_ADMITTED, fuel, timeoutMillis))
+        {
+            for (int i = 0; i < THROUGHPUT_PROGRAMS; i++) results.add(service.submit(sourceText));
+            
+            for (CompletableFuture<ExecutionService.Result> result : results)
+            {
+                counts.merge(result.join().status, 1, Integer::sum);
+            }
+            
+            double seconds = (System.nanoTime() - start)/1e9;
+            System.out.printf("%d programs on %s threads in %.3f seconds: %.0f programs/second%n",
+                              THROUGHPUT_PROGRAMS, service.isVirtual() ? "virtual" : "platform",
+                              seconds, THROUGHPUT_PROGRAMS/seconds);
+            System.out.println("Results: " + counts);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Execute the programs of a batch of source files in this JVM, on
+     * all the processors. Each program's output goes to its own file in
+     * the output directory, or else to the standard output in batch
+     * order, each after a line that names its source file. The summary
+     * then goes to the standard output, or to the standard error if the
+     * programs' output is there. Exit with status 1 if any program
+     * didn't complete.
+     * @param batch a directory, whose .txt files are the batch, or a
+     *              file that names one source file per line.
+     */
+    private static void runBatch(String batch)
+    {
+        boolean allCompleted = false;
+        
+        try
+        {
+            ArrayList<String> fileNames = BatchRunner.sourceFiles(new File(batch));
+            BatchRunner runner = 
+                new BatchRunner(fuel, timeoutMillis,
+                                outputDirectory != null ? new File(outputDirectory) : null,
+                                System.out);
+            
+            allCompleted = runner.run(fileNames, 
+                                      outputDirectory != null ? System.out : System.err);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: " + ex.getMessage());
+            System.exit(-1);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (!allCompleted) System.exit(1);
+    }
+    
+    /**
+     * Share the identical expression subtrees of the parse tree, and 
+     * report the nodes and memory saved to the standard error, apart
+     * from the program's output.
+     * @param programNode the program's parse tree.
+     */
+    private static void shareSubtrees(Node programNode)
+    {
+        SubtreeSharer sharer = new SubtreeSharer();
+        sharer.share(programNode);
+        
+        System.err.printf("Shared %d of %d parse tree nodes, saving about %d bytes.%n",
+                          sharer.removedCount(), sharer.nodeCount(), sharer.bytesSaved());
+    }
+    
+    /**
+     * Annotate the parse tree with value ranges for the compiled code
+     * of a tiered or tracing executor. A program nested too deeply to
+     * analyze runs without them.
+     * @param programNode the program's parse tree.
+     * @param symtab the symbol table.
+     */
+    private static void analyzeRanges(Node programNode, Symtab symtab)
+    {
+        try
+        {
+            ControlFlowGraph graph = new CfgBuilder(symtab).build(programNode);
+            new RangeAnalysis().analyze(graph);
+        }
+        catch (StackOverflowError error)
+        {
+            // No ranges.
+        }
+    }
+    
+    /**
+     * Execute a program, or replay its cached result. The cache is in
+     * the directory named by the simple.cache system property, if set.
+     * With -cache=readwrite, a program that runs to its end or to a
+     * runtime error has its output and exit status stored.
+     * @param parser the parser.
+     * @param symtab the symbol table.
+     * @param sourceFileName the source file name.
+     */
+    private static void executeWithCache(Parser parser, Symtab symtab,
+                                         String sourceFileName)
+    {
+        String directory = System.getProperty("simple.cache");
+        ResultCache cache = new ResultCache(directory != null ? new File(directory)
+                                                              : ResultCache.DEFAULT_DIRECTORY,
+                                            ResultCache.DEFAULT_MAX_SIZE);
+        byte[] key = null;
+        
+        try
+        {
+            key = ResultCache.key(sourceFileName);
+            
+            System.out.flush();
+            Integer status = cache.replay(key, new FileOutputStream(FileDescriptor.out));
+            
+            if (status != null)
+            {
+                if (status != 0) System.exit(status);
+                return;
+            }
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to read " + sourceFileName);
+            System.exit(-1);
+        }
+        
+        if (cacheMode.equals("read"))
+        {
+            executeProgram(parser, symtab, sourceFileName, 
+                           new OutputBuffer(), System::exit);
+            return;
+        }
+        
+        System.out.flush();
+        ResultCache.Recorder recorder = 
+            new ResultCache.Recorder(new FileOutputStream(FileDescriptor.out));
+        byte[] programKey = key;
+        
+        IntConsumer storeAndExit = status -> 
+        {
+            storeResult(cache, programKey, recorder, status);
+            System.exit(status);
+        };
+        
+        if (executeProgram(parser, symtab, sourceFileName, 
+                           new OutputBuffer(recorder), storeAndExit))
+        {
+            storeResult(cache, key, recorder, 0);
+        }
+    }
+    
+    /**
+     * Store a program's result in the cache, unless its output was 
+     * too big to record.
+     * @param cache the cache.
+     * @param key the program's key.
+     * @param recorder the recorder of the program's output.
+     * @param status the program's exit status.
+     */
+    private static void storeResult(ResultCache cache, byte[] key,
+                                    ResultCache.Recorder recorder, int status)
+    {
+        byte[] output = recorder.recorded();
+        if (output == null) return;
+        
+        try
+        {
+            cache.store(key, output, status);
+        }
+        catch (IOException ex)
+        {
+            System.err.println("*** ERROR: Failed to cache the result: " + ex.getMessage());
+        }
+    }
+    
     /**
      * Test the executor.
      * @param parser the parser.
      * @param symtab the symbol table.
+     * @param sourceFileName the source file name.
+     * @param output the buffer for the program's output.
+     * @param exitHandler called with the exit status if a runtime error
+     *                    ends the program.
+     * @return true if the program executed, false if it had syntax errors.
      */
-    private static void executeProgram(Parser parser, Symtab symtab)
+    private static boolean executeProgram(Parser parser, Symtab symtab,
+                                          String sourceFileName, OutputBuffer output,
+                                          IntConsumer exitHandler)
     {
-        Node programNode = parser.parseProgram();  // build the parse tree
+        // The parser is recursive, so a deeply nested program
+        // meant for the iterative executor is parsed on a big stack.
+        Node programNode = iterative ? parseOnLargeStack(parser)
+                                     : parser.parseProgram();
         int errorCount = parser.errorCount();
         
         // If no errors, execute the program using the parse tree.
         if (errorCount == 0)
         {
-            Executor executor = new Executor(symtab);
-            executor.visit(programNode);
+            if (sharing) shareSubtrees(programNode);
+            
+            Executor executor = 
+                  iterative ? new IterativeExecutor(symtab, output)
+                : tiered    ? new TieredExecutor(symtab, output, TieredExecutor.DEFAULT_THRESHOLD)
+                : tracing   ? new TracingExecutor(symtab, output, TracingExecutor.DEFAULT_THRESHOLD)
+                :             new Executor(symtab, output);
+            executor.setExitHandler(exitHandler);
+            
+            // The budget's clock starts now, so it covers the preparation too.
+            Budget budget = new Budget(fuel, timeoutMillis);
+            executor.setBudget(budget);
+            
+            // Execute the input-independent prefix in advance, unless the
+            // run is limited, since the partial evaluator doesn't charge
+            // the budget.
+            boolean limited =    (fuel != Budget.UNLIMITED_FUEL) 
+                              || (timeoutMillis != Budget.NO_TIMEOUT);
+            
+            if (partial && !limited)
+            {
+                programNode = new PartialEvaluator(symtab).evaluate(programNode);
+            }
+            
+            if (tiered || tracing || compiled || parallel) analyzeRanges(programNode, symtab);
+            
+            if ((compiled || parallel) && runCompiled(programNode, symtab, output, budget, exitHandler))
+            {
+                return true;
+            }
+            
+            if (profileDirectory == null) executor.visit(programNode);
+            else executeWithProfile(executor, programNode, symtab, sourceFileName,
+                                    output, budget, exitHandler);
+            return true;
         }
         else
         {
             System.out.println();
             System.out.println("There were " + errorCount + " errors.");
+            return false;
+        }
+    }
+    
+    /**
+     * Execute a program while it's parsed: The parser runs on a thread of
+     * its own and hands each statement of the program's compound statement
+     * to the tree walker, and a statement is garbage once it has run. The
+     * statements before the first syntax error run, and then all the
+     * errors are printed after their output. The other executor options,
+     * except -iterative, need the whole tree and don't apply.
+     * @param source the input source.
+     */
+    private static void executeStreaming(Source source)
+    {
+        Symtab symtab = new Symtab();
+        ByteArrayOutputStream errorBytes = new ByteArrayOutputStream();
+        PrintStream errors = new PrintStream(errorBytes, true);
+        Parser parser = new Parser(new Scanner(source, errors), symtab, errors);
+        
+        OutputBuffer output = new OutputBuffer();
+        Executor executor = iterative ? new IterativeExecutor(symtab, output)
+                                      : new Executor(symtab, output);
+        executor.setBudget(new Budget(fuel, timeoutMillis));
+        
+        StatementStream statements = 
+            new StatementStream(parser, StatementStream.DEFAULT_CAPACITY, PARSER_STACK_SIZE);
+        executor.executeStatements(statements);
+        statements.finish();
+        
+        int errorCount = parser.errorCount();
+        if (errorCount > 0)
+        {
+            System.out.print(errorBytes.toString());
+            System.out.println();
+            System.out.println("There were " + errorCount + " errors.");
+        }
+    }
+    
+    /**
+     * Compile a whole program and run it. With -parallel, independent
+     * FOR loop iterations and independent statements run in parallel.
+     * @param programNode the program's parse tree.
+     * @param symtab the symbol table.
+     * @param output the buffer for the program's output.
+     * @param budget the execution budget.
+     * @param exitHandler called with the exit status if a runtime error
+     *                    ends the program.
+     * @return true if the program ran, or false if it's nested too 
+     *         deeply to compile.
+     */
+    private static boolean runCompiled(Node programNode, Symtab symtab,
+                                       OutputBuffer output, Budget budget,
+                                       IntConsumer exitHandler)
+    {
+        CompiledProgram program;
+        
+        try
+        {
+            program = CompiledProgram.compile(programNode, symtab, null, parallel);
+        }
+        catch (StackOverflowError error)
+        {
+            return false;
+        }
+        
+        int status = program.run(output, budget);
+        if (status != 0) exitHandler.accept(status);
+        
+        return true;
+    }
+    
+    /**
+     * Execute a program specialized with its saved profile. If there is
+     * none yet, profile this run in the tree walker and save the profile.
+     * @param executor the executor to use with a profile.
+     * @param programNode the program's parse tree.
+     * @param symtab the symbol table.
+     * @param sourceFileName the source file name.
+     * @param output the buffer for the program's output.
+     * @param budget the execution budget.
+     * @param exitHandler called with the exit status if a runtime error
+     *                    ends the program.
+     */
+    private static void executeWithProfile(Executor executor, Node programNode,
+                                           Symtab symtab, String sourceFileName,
+                                           OutputBuffer output, Budget budget,
+                                           IntConsumer exitHandler)
+    {
+        byte[] hash = null;
+        
+        try
+        {
+            hash = Profile.hash(sourceFileName);
         }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to read " + sourceFileName);
+            System.exit(-1);
+        }
+        
+        File profileFile = new File(profileDirectory, Profile.fileName(hash));
+        Profile profile = Profile.load(profileFile, programNode, hash);
+        
+        if (profile != null)
+        {
+            executor.setProfile(profile);
+            executor.visit(programNode);
+            return;
+        }
+        
+        ProfilingExecutor profiler = new ProfilingExecutor(symtab, output);
+        profiler.setExitHandler(exitHandler);
+        profiler.setBudget(budget);
+        profiler.visit(programNode);
+        
+        // A failure is reported on the standard error, so that the
+        // program's output stays the same.
+        try
+        {
+            Files.createDirectories(profileFile.getParentFile().toPath());
+            profiler.profile().save(profileFile, programNode, hash);
+        }
+        catch (IOException ex)
+        {
+            System.err.println("*** ERROR: Failed to write " + profileFile 
+                                   + ": " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Parse a program on a thread with a large stack.
+     * @param parser the parser.
+     * @return the program's parse tree.
+     */
+    private static Node parseOnLargeStack(Parser parser)
+    {
+        Node[] programNode = new Node[1];
+        Thread thread = new Thread(null, 
+                                   () -> programNode[0] = parser.parseProgram(), 
+                                   "parser", PARSER_STACK_SIZE);
+        thread.start();
+        
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        return programNode[0];
     }
 }
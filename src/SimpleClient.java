@@ -0,0 +1,172 @@
+/**
+ * Client class for a simple interpreter.
+ *
+ * Has the same command line as Simple, but has a running SimpleDaemon
+ * scan, parse or execute the program, so that it costs neither the
+ * loading of the interpreter's classes nor their warming up. The source
+ * file is read here and sent over the daemon's Unix domain socket, named
+ * by the simple.socket system property, and the daemon's output is
+ * streamed back to the standard output as it comes. The client exits
+ * with the status that Simple would have. It runs Simple itself for any
+ * other operation or option, or if no daemon is listening.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class SimpleClient
+{
+    // Kinds of the frames that the daemon sends back: a piece of
+    // output, and then the exit status.
+    static final byte OUTPUT = 1;
+    static final byte EXIT   = 2;
+
+    private static final String[] DAEMON_OPERATIONS = { "-scan", "-parse", "-execute" };
+
+    // Executor options, since the daemon's compiled code prints the
+    // same output as every executor.
+    private static final String[] DAEMON_OPTIONS =
+        { "-iterative", "-tiered", "-trace", "-compile", "-parallel", "-partial" };
+
+    public static void main(String args[])
+    {
+        SocketChannel channel = forDaemon(args) ? connect() : null;
+
+        if (channel == null)
+        {
+            Simple.main(args);
+            return;
+        }
+
+        String sourceFileName = args[args.length - 1];
+        int status = -1;
+
+        try (channel)
+        {
+            byte[] sourceBytes = Files.readAllBytes(Path.of(sourceFileName));
+            DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            // The operation, options and source file name, and then the source.
+            request.writeInt(args.length + 1);
+            for (String arg : args) writeBytes(request, arg.getBytes(StandardCharsets.UTF_8));
+            writeBytes(request, sourceBytes);
+            request.flush();
+
+            status = receive(new DataInputStream(
+                         new BufferedInputStream(Channels.newInputStream(channel))));
+        }
+        catch (IOException ex)
+        {
+            if (!Files.isReadable(Path.of(sourceFileName)))
+            {
+                System.out.printf("*** ERROR: Failed to open " + sourceFileName);
+            }
+            else System.out.println("*** ERROR: Lost the daemon: " + ex.getMessage());
+        }
+
+        if (status != 0) System.exit(status);
+    }
+
+    /**
+     * @return the socket file name of the daemon.
+     */
+    static String socketFileName()
+    {
+        return System.getProperty("simple.socket",
+                                  Path.of(System.getProperty("java.io.tmpdir"),
+                                          "simple-" + System.getProperty("user.name")
+                                                    + ".sock").toString());
+    }
+
+    /**
+     * @param args the command line arguments.
+     * @return true if the daemon can run the command.
+     */
+    private static boolean forDaemon(String args[])
+    {
+        if ((args.length < 2) || !isOneOf(args[0], DAEMON_OPERATIONS)) return false;
+
+        for (int i = 1; i < args.length - 1; i++)
+        {
+            String option = args[i].toLowerCase();
+
+            if (   !isOneOf(option, DAEMON_OPTIONS)
+                && !option.matches("-(fuel|timeout)=0*[1-9][0-9]{0,17}"))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isOneOf(String text, String[] choices)
+    {
+        for (String choice : choices)
+        {
+            if (text.equalsIgnoreCase(choice)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Connect to the daemon.
+     * @return the channel, or null if no daemon is listening.
+     */
+    private static SocketChannel connect()
+    {
+        try
+        {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socketFileName()));
+        }
+        catch (IOException | UnsupportedOperationException ex)
+        {
+            return null;
+        }
+    }
+
+    private static void writeBytes(DataOutputStream request, byte[] bytes) throws IOException
+    {
+        request.writeInt(bytes.length);
+        request.write(bytes);
+    }
+
+    /**
+     * Copy the daemon's output to the standard output until the exit status.
+     * @param response the daemon's frames.
+     * @return the exit status.
+     * @throws IOException if the connection fails.
+     */
+    private static int receive(DataInputStream response) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(FileDescriptor.out);
+
+        for (;;)
+        {
+            byte kind = response.readByte();
+            int length = response.readInt();
+
+            if (kind == EXIT) return length;  // the status itself
+
+            byte[] bytes = new byte[length];
+            response.readFully(bytes);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/**
+ * Daemon class for a simple interpreter.
+ *
+ * Keeps a JVM running with the interpreter's classes loaded and warmed
+ * up, and scans, parses or executes the programs that SimpleClient sends
+ * over a Unix domain socket. Each request gets a thread of its own, and
+ * its output is sent back in frames as it's printed, followed by the
+ * exit status. Programs are executed by an ExecutionService's compiled
+ * code, each with a budget that is cancelled if its client goes away,
+ * and compiled programs are kept in a ProgramCache.
+ *
+ * A request is an int count of byte strings, and then each string as an
+ * int length and its bytes: the client's command line arguments in
+ * UTF-8, and then the source text. Each frame back is a kind byte and an
+ * int: an OUTPUT frame's int is the length of the output bytes that
+ * follow, and the EXIT frame's int is the exit status.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.BindException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import frontend.*;
+import intermediate.*;
+import backend.*;
+import service.*;
+
+public class SimpleDaemon
+{
+    private static final long STACK_SIZE = 1L << 30;  // as Simple's parser thread
+    private static final int FRAME_SIZE = 4*1024;     // of output
+    private static final int MAX_REQUEST = 64 << 20;  // bytes of all of a request's strings
+    private static final int READ_CHUNK = 64*1024;    // first buffer size of a string
+    private static final int WARMUP_RUNS = 500;
+
+    // Programs sent again aren't parsed and compiled again.
+    private static final ProgramCache cache = new ProgramCache();
+
+    private static final String WARMUP_PROGRAM =
+        "PROGRAM Warmup;\n"                                       +
+        "BEGIN\n"                                                 +
+        "    total := 0;\n"                                       +
+        "    FOR n := 1 TO 20 DO BEGIN\n"                         +
+        "        root := n; diff := 1;\n"                         +
+        "        WHILE diff > 0.000001 DO BEGIN\n"                +
+        "            prev := root; root := (n/root + root)/2;\n"  +
+        "            diff := prev - root\n"                       +
+        "        END;\n"                                          +
+        "        CASE n MOD 3 OF\n"                               +
+        "            0: total := total + n;\n"                    +
+        "            1, 2: IF n > 10 THEN total := total - 1\n"   +
+        "        END;\n"                                          +
+        "        i := 0;\n"                                       +
+        "        REPEAT i := i + 1 UNTIL i >= n;\n"               +
+        "        write('n = '); write(n:2); writeln(root:14:6)\n" +
+        "    END;\n"                                              +
+        "    writeln(total)\n"                                    +
+        "END.\n";
+
+    /**
+     * Output stream that sends each write as an OUTPUT frame. It writes
+     * to the channel itself, since a stream of the channel would wait
+     * for the watcher's read.
+     */
+    private static class FrameStream extends OutputStream
+    {
+        private final SocketChannel channel;
+
+        FrameStream(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            ByteBuffer frame = ByteBuffer.allocate(1 + 4 + length);
+            frame.put(SimpleClient.OUTPUT).putInt(length).put(bytes, offset, length).flip();
+            writeFully(channel, frame);
+        }
+
+        /**
+         * Send the EXIT frame.
+         * @param status the exit status.
+         * @throws IOException if the client went away.
+         */
+        void exit(int status) throws IOException
+        {
+            ByteBuffer frame = ByteBuffer.allocate(1 + 4);
+            frame.put(SimpleClient.EXIT).putInt(status).flip();
+            writeFully(channel, frame);
+        }
+    }
+
+    /**
+     * Serve requests until the process is killed.
+     * @param socketFileName the name of the socket file to listen at.
+     */
+    public static void serve(String socketFileName)
+    {
+        Path path = Path.of(socketFileName);
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX))
+        {
+            // A socket file that nothing listens at is left from a daemon
+            // that was killed.
+            try
+            {
+                SocketChannel.open(address).close();
+                alreadyListening(path);
+            }
+            catch (IOException ex)
+            {
+                Files.deleteIfExists(path);
+            }
+
+            long start = System.nanoTime();
+            warmUp();
+            System.out.printf("Warmed up in %.3f seconds%n", (System.nanoTime() - start)/1e9);
+
+            // Another daemon that started at the same time may have bound
+            // the socket file since the probe.
+            try
+            {
+                server.bind(address);
+            }
+            catch (BindException ex)
+            {
+                alreadyListening(path);
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> path.toFile().delete()));
+            System.out.println("Listening at " + path);
+
+            for (;;)
+            {
+                SocketChannel client = server.accept();
+                Thread thread = new Thread(null, () -> handle(client), "simple-request",
+                                           STACK_SIZE);
+                thread.start();
+            }
+        }
+        catch (IOException | UnsupportedOperationException ex)
+        {
+            System.out.println("*** ERROR: Failed to listen at " + path + ": " + ex.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Report that another daemon listens at the socket file, and exit.
+     * @param path the socket file's path.
+     */
+    private static void alreadyListening(Path path)
+    {
+        System.out.println("*** ERROR: A daemon is already listening at " + path);
+        System.exit(-1);
+    }
+
+    /**
+     * Load the classes and compile the hot code of each operation by
+     * running it on a warmup program many times.
+     */
+    private static void warmUp()
+    {
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+
+        for (int i = 0; i < WARMUP_RUNS; i++)
+        {
+            Simple.testScanner(new Source(new StringReader(WARMUP_PROGRAM)), nowhere);
+            Simple.testParser(new Scanner(new Source(new StringReader(WARMUP_PROGRAM)), nowhere),
+                              new Symtab(), nowhere);
+            ExecutionService.execute(WARMUP_PROGRAM, OutputStream.nullOutputStream(),
+                                     new Budget());
+        }
+    }
+
+    /**
+     * Handle a request, and close its channel.
+     * @param channel the client's channel.
+     */
+    private static void handle(SocketChannel channel)
+    {
+        try (channel)
+        {
+            byte[][] request = readRequest(channel);
+            String args[] = new String[request.length - 1];
+            for (int i = 0; i < args.length; i++)
+            {
+                args[i] = new String(request[i], StandardCharsets.UTF_8);
+            }
+            String sourceText = new String(request[args.length], Charset.defaultCharset());
+
+            Budget budget = budget(args);
+            watch(channel, budget);
+
+            FrameStream frames = new FrameStream(channel);
+            BufferedOutputStream out = new BufferedOutputStream(frames, FRAME_SIZE);
+            int status;
+
+            try
+            {
+                status = run(args[0], sourceText, out, budget);
+            }
+            catch (StackOverflowError error)
+            {
+                status = 1;  // like an uncaught StackOverflowError
+            }
+
+            out.flush();
+            frames.exit(status);
+        }
+        catch (IOException | UncheckedIOException ex)
+        {
+            // The client went away.
+        }
+    }
+
+    /**
+     * Run an operation.
+     * @param operation -scan, -parse or -execute.
+     * @param sourceText the source text.
+     * @param out the stream for the output.
+     * @param budget the budget of an execution.
+     * @return the exit status.
+     */
+    private static int run(String operation, String sourceText, OutputStream out,
+                           Budget budget)
+    {
+        Source source = new Source(new StringReader(sourceText));
+        PrintStream printer = new PrintStream(out, false, Charset.defaultCharset());
+
+        if (operation.equalsIgnoreCase("-scan"))
+        {
+            Simple.testScanner(source, printer);
+        }
+        else if (operation.equalsIgnoreCase("-parse"))
+        {
+            Simple.testParser(new Scanner(source, printer), new Symtab(), printer);
+        }
+        else
+        {
+            return ExecutionService.execute(sourceText, out, budget, cache).exitStatus();
+        }
+
+        printer.flush();
+        return 0;
+    }
+
+    /**
+     * Make the budget of a request from its -fuel and -timeout options,
+     * which the client checked.
+     * @param args the request's command line arguments.
+     * @return the budget.
+     */
+    private static Budget budget(String args[])
+    {
+        long fuel = Budget.UNLIMITED_FUEL;
+        long timeoutMillis = Budget.NO_TIMEOUT;
+
+        for (int i = 1; i < args.length - 1; i++)
+        {
+            String option = args[i].toLowerCase();
+
+            if (option.startsWith("-fuel="))
+            {
+                fuel = Long.parseLong(option.substring("-fuel=".length()));
+            }
+            else if (option.startsWith("-timeout="))
+            {
+                timeoutMillis = Long.parseLong(option.substring("-timeout=".length()));
+            }
+        }
+
+        return new Budget(fuel, timeoutMillis);
+    }
+
+    /**
+     * Cancel a budget when its client closes the connection. The client
+     * sends nothing after its request, so a read returns only then, or
+     * when the request is done and the channel is closed.
+     * @param channel the client's channel.
+     * @param budget the request's budget.
+     */
+    private static void watch(SocketChannel channel, Budget budget)
+    {
+        Thread watcher = new Thread(() -> {
+            try
+            {
+                ByteBuffer ignored = ByteBuffer.allocate(1);
+                while (channel.read(ignored) >= 0) ignored.clear();
+            }
+            catch (IOException ex)
+            {
+                // Closed.
+            }
+
+            budget.cancel();
+        }, "simple-watcher");
+
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Read a request.
+     * @param channel the client's channel.
+     * @return the request's byte strings.
+     * @throws IOException if the request is cut off or too big.
+     */
+    private static byte[][] readRequest(SocketChannel channel) throws IOException
+    {
+        int count = readInt(channel);
+        if ((count < 2) || (count > 1024)) throw new IOException("Bad request");
+
+        byte[][] strings = new byte[count][];
+        int remaining = MAX_REQUEST;  // bytes that the rest of the strings may have
+
+        for (int i = 0; i < count; i++)
+        {
+            int length = readInt(channel);
+            if ((length < 0) || (length > remaining)) throw new IOException("Bad request");
+
+            remaining -= length;
+            strings[i] = readBytes(channel, length);
+        }
+
+        return strings;
+    }
+
+    /**
+     * Read a string's bytes into a buffer that grows as they arrive, so
+     * a client that declares a length and then sends less costs only
+     * what it sent.
+     * @param channel the client's channel.
+     * @param length the declared length.
+     * @return the bytes.
+     * @throws IOException if the channel closes before all of them.
+     */
+    private static byte[] readBytes(SocketChannel channel, int length) throws IOException
+    {
+        byte[] bytes = new byte[Math.min(length, READ_CHUNK)];
+        int read = 0;
+
+        while (read < length)
+        {
+            if (read == bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L*bytes.length));
+            }
+
+            int n = channel.read(ByteBuffer.wrap(bytes, read, bytes.length - read));
+            if (n < 0) throw new IOException("Request cut off");
+            read += n;
+        }
+
+        return bytes;
+    }
+
+    private static int readInt(SocketChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(channel, buffer);
+        return buffer.getInt(0);
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer) < 0) throw new IOException("Request cut off");
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Execution budget class for a simple interpreter.
+ *
+ * Limits how long one execution of a program may run: a number of loop
+ * back edges, which is the fuel, and a deadline on the clock. The code
+ * of a loop counts its back edges in a local variable and charges them
+ * to the budget in batches, and when it exits, so the check costs
+ * almost nothing per iteration. The clock is only read once a batch's
+ * worth of back edges has been charged. Code without loops always
+ * finishes, so a program whose budget runs out is in a loop. Another
+ * thread can cancel a budget, which stops the code charging it at its
+ * next charge, and a budget can be made to be cancelled along with a
+ * parent.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+public class Budget
+{
+    public static final int BATCH = 1024;  // back edges between charges
+
+    public static final long UNLIMITED_FUEL = Long.MAX_VALUE;
+    public static final long NO_TIMEOUT = 0;
+
+    private long fuel;              // back edges left
+    private final long deadline;    // System.nanoTime() value
+    private final boolean timed;    // true if there is a deadline
+    private final boolean limited;  // true if there is any limit
+    private long unclocked;         // back edges since the clock was read
+    private final Budget parent;    // or null
+    private volatile boolean cancelled;
+    private LimitExceeded.Limit exceeded;  // or null
+
+    /**
+     * Constructor for an unlimited budget.
+     */
+    public Budget()
+    {
+        this(UNLIMITED_FUEL, NO_TIMEOUT);
+    }
+
+    /**
+     * Constructor. The clock starts now.
+     * @param fuel the number of back edges allowed, or UNLIMITED_FUEL.
+     * @param timeoutMillis the time allowed in milliseconds, or NO_TIMEOUT.
+     */
+    public Budget(long fuel, long timeoutMillis)
+    {
+        this(fuel, timeoutMillis, null);
+    }
+
+    /**
+     * Constructor for an unlimited budget that is cancelled along
+     * with its parent.
+     * @param parent the parent budget.
+     */
+    public Budget(Budget parent)
+    {
+        this(UNLIMITED_FUEL, NO_TIMEOUT, parent);
+    }
+
+    private Budget(long fuel, long timeoutMillis, Budget parent)
+    {
+        this.fuel = fuel;
+        this.parent = parent;
+        this.timed =    (timeoutMillis != NO_TIMEOUT)
+                     && (timeoutMillis < Long.MAX_VALUE/1_000_000);
+        this.deadline = System.nanoTime() + timeoutMillis*1_000_000;
+        this.limited = (fuel != UNLIMITED_FUEL) || timed;
+        this.unclocked = 0;
+    }
+
+    /**
+     * Charge back edges to the budget.
+     * @param backEdges the number of back edges taken.
+     * @param lineNumber the line number of the loop.
+     * @throws LimitExceeded if the fuel is gone, the deadline passed,
+     *                       or the budget was cancelled.
+     */
+    public void charge(int backEdges, int lineNumber)
+    {
+        if (isCancelled())
+        {
+            exceeded = LimitExceeded.Limit.CANCELLED;
+            throw new LimitExceeded(lineNumber, exceeded);
+        }
+
+        fuel -= backEdges;
+        if (fuel < 0)
+        {
+            fuel = 0;
+            exceeded = LimitExceeded.Limit.FUEL;
+            throw new LimitExceeded(lineNumber, exceeded);
+        }
+
+        if (timed)
+        {
+            unclocked += backEdges;
+
+            if (unclocked >= BATCH)
+            {
+                unclocked = 0;
+                if (System.nanoTime() - deadline >= 0)
+                {
+                    exceeded = LimitExceeded.Limit.DEADLINE;
+                    throw new LimitExceeded(lineNumber, exceeded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancel the budget, and those that it's the parent of.
+     */
+    public void cancel() { cancelled = true; }
+
+    /**
+     * Getter.
+     * @return true if the budget or a parent was cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled || ((parent != null) && parent.isCancelled());
+    }
+
+    /**
+     * Getter.
+     * @return true if the fuel or the time is limited.
+     */
+    public boolean isLimited() { return limited; }
+
+    /**
+     * Getter.
+     * @return the fuel left.
+     */
+    public long fuel() { return fuel; }
+
+    /**
+     * Getter.
+     * @return the limit that was exceeded, or null if none.
+     */
+    public LimitExceeded.Limit exceeded() { return exceeded; }
+}
@@ -0,0 +1,254 @@
+/**
+ * Dispatch structure for a CASE statement's SELECT node.
+ *
+ * Each SELECT node is prepared once. When every branch constant is a
+ * number, the selector value maps to its branch with either a dense jump
+ * table, if the integer constants span a small range, or a binary search
+ * of the sorted constants. A CASE with variable or string constants
+ * keeps the original linear search. A profile of earlier runs can name
+ * a hot constant, which is checked before the search.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class CaseDispatch
+{
+    private static final int MAX_TABLE_SIZE = 1024;
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
+
+    private final int[] table;      // dense jump table of branch indexes
+    private final long minimum;     // constant in table[0]
+    private final double[] keys;    // sorted constants for binary search
+    private final int[] branches;   // branch indexes parallel to keys
+    private final double hotKey;    // constant checked first, or NaN if none
+    private final int hotBranch;    // branch index of the hot constant
+
+    private CaseDispatch(int[] table, long minimum, double[] keys, int[] branches)
+    {
+        this(table, minimum, keys, branches, Double.NaN, -1);
+    }
+
+    private CaseDispatch(int[] table, long minimum, double[] keys, int[] branches,
+                         double hotKey, int hotBranch)
+    {
+        this.table = table;
+        this.minimum = minimum;
+        this.keys = keys;
+        this.branches = branches;
+        this.hotKey = hotKey;
+        this.hotBranch = hotBranch;
+    }
+
+    /**
+     * Prepare the dispatch structure of a SELECT node.
+     * @param selectNode the SELECT node.
+     * @return the dispatch structure.
+     */
+    public static CaseDispatch compile(Node selectNode)
+    {
+        return compile(selectNode, null);
+    }
+
+    /**
+     * Prepare the dispatch structure of a SELECT node.
+     * @param selectNode the SELECT node.
+     * @param profile a profile of earlier runs, or null.
+     * @return the dispatch structure.
+     */
+    public static CaseDispatch compile(Node selectNode, Profile profile)
+    {
+        ArrayList<Node> children = selectNode.children;
+        int count = 0;
+
+        // Count the constants. Any that isn't a number forces linear search.
+        for (int i = 1; i < children.size(); i++)
+        {
+            for (Node constant : children.get(i).children.get(0).children)
+            {
+                if ((constant.type != INTEGER_CONSTANT) && (constant.type != REAL_CONSTANT))
+                {
+                    return new CaseDispatch(null, 0, null, null);
+                }
+
+                count++;
+            }
+        }
+
+        // Sort the constants. The first branch of any duplicate wins,
+        // as it would with a linear search.
+        double[] keys = new double[count];
+        int[] branches = new int[count];
+        Integer[] order = new Integer[count];
+        int k = 0;
+
+        for (int i = 1; i < children.size(); i++)
+        {
+            for (Node constant : children.get(i).children.get(0).children)
+            {
+                keys[k] = ((Number) constant.value).doubleValue();
+                branches[k] = i;
+                order[k] = k;
+                k++;
+            }
+        }
+
+        Arrays.sort(order, (a, b) -> {
+            int c = Double.compare(keys[a], keys[b]);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+
+        double[] sortedKeys = new double[count];
+        int[] sortedBranches = new int[count];
+        int unique = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            double key = keys[order[i]];
+            if ((unique > 0) && (Double.compare(sortedKeys[unique - 1], key) == 0)) continue;
+
+            sortedKeys[unique] = key;
+            sortedBranches[unique] = branches[order[i]];
+            unique++;
+        }
+
+        sortedKeys = Arrays.copyOf(sortedKeys, unique);
+        sortedBranches = Arrays.copyOf(sortedBranches, unique);
+
+        // Use a dense jump table if the constants are integers
+        // within a small range.
+        if ((unique > 0) && allIntegers(sortedKeys))
+        {
+            long minimum = (long) sortedKeys[0];
+            long span = (long) sortedKeys[unique - 1] - minimum + 1;
+
+            if (span <= Math.min(MAX_TABLE_SIZE, 4L*unique + 16))
+            {
+                int[] table = new int[(int) span];
+                Arrays.fill(table, -1);
+
+                for (int i = 0; i < unique; i++)
+                {
+                    table[(int) ((long) sortedKeys[i] - minimum)] = sortedBranches[i];
+                }
+
+                return new CaseDispatch(table, minimum, null, null);
+            }
+        }
+
+        // Check the hot branch's constant before searching, if it's the
+        // branch's only constant. A zero is left to the search, which
+        // tells 0.0 from -0.0.
+        int hottest = profile != null ? profile.hottestBranch(selectNode) : -1;
+        if (hottest > 0)
+        {
+            ArrayList<Node> constants = children.get(hottest).children.get(0).children;
+
+            if (constants.size() == 1)
+            {
+                double hotKey = ((Number) constants.get(0).value).doubleValue();
+                int hotBranch = branchIndex(sortedKeys, sortedBranches, hotKey);
+
+                if (hotKey != 0.0)
+                {
+                    return new CaseDispatch(null, 0, sortedKeys, sortedBranches,
+                                            hotKey, hotBranch);
+                }
+            }
+        }
+
+        return new CaseDispatch(null, 0, sortedKeys, sortedBranches);
+    }
+
+    /**
+     * @return true if the CASE must be searched linearly.
+     */
+    public boolean isLinear() { return (table == null) && (keys == null); }
+
+    /**
+     * Find the branch selected by a value.
+     * @param value the value of the CASE expression.
+     * @return the index of the SELECT_BRANCH child, or -1 if none.
+     */
+    public int branchIndex(double value)
+    {
+        if (table != null)
+        {
+            double offset = value - minimum;
+
+            if (   (offset >= 0) && (offset < table.length)
+                && (offset == (int) offset)
+                && (Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS))
+            {
+                return table[(int) offset];
+            }
+
+            return -1;
+        }
+
+        if (value == hotKey) return hotBranch;
+
+        return branchIndex(keys, branches, value);
+    }
+
+    /**
+     * Find the branch selected by a value that is known to be an int,
+     * which can't be fractional or -0.0.
+     * @param value the value of the CASE expression.
+     * @return the index of the SELECT_BRANCH child, or -1 if none.
+     */
+    public int branchIndex(int value)
+    {
+        if (table == null) return branchIndex((double) value);
+
+        long offset = value - minimum;
+        return (offset >= 0) && (offset < table.length) ? table[(int) offset] : -1;
+    }
+
+    /**
+     * Binary search for the branch of a value.
+     * @param keys the sorted constants.
+     * @param branches the branch indexes parallel to the keys.
+     * @param value the value to find.
+     * @return the branch index, or -1 if none.
+     */
+    private static int branchIndex(double[] keys, int[] branches, double value)
+    {
+        int low = 0;
+        int high = keys.length - 1;
+
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int c = Double.compare(keys[middle], value);
+
+            if      (c < 0) low  = middle + 1;
+            else if (c > 0) high = middle - 1;
+            else            return branches[middle];
+        }
+
+        return -1;
+    }
+
+    private static boolean allIntegers(double[] keys)
+    {
+        for (double key : keys)
+        {
+            if (   (key != Math.rint(key)) || (Math.abs(key) > Integer.MAX_VALUE)
+                || (Double.doubleToRawLongBits(key) == NEGATIVE_ZERO_BITS))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,833 @@
+/**
+ * Closure compiler for a simple interpreter.
+ *
+ * Compiles a parse subtree into a tree of closures that run against the
+ * primitive variable slots of a Frame. Dispatch on node types, symbol
+ * table lookups, format compilation and CASE preparation all happen once,
+ * at compile time, so compiled code runs much faster than the tree
+ * walker. Each variable the code refers to gets a slot, in the order
+ * returned by variables(). With a profile of earlier runs, an IF whose
+ * ELSE side was the hot one is laid out with that side first. Where a
+ * RangeAnalysis proved a divisor nonzero, the division isn't checked,
+ * and a CASE expression that fits in an int is dispatched as one. When
+ * parallel execution is enabled, a FOR loop whose iterations are
+ * independent is compiled to a ParallelFor, and a compound statement
+ * whose statements fall into independent groups to a ParallelCompound.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class ClosureCompiler
+{
+    /**
+     * A compiled statement.
+     */
+    public interface Statement
+    {
+        void execute(Frame frame);
+    }
+
+    /**
+     * A compiled numeric expression.
+     */
+    public interface NumberExpression
+    {
+        double evaluate(Frame frame);
+    }
+
+    /**
+     * A compiled relational or logical expression.
+     */
+    public interface BooleanExpression
+    {
+        boolean evaluate(Frame frame);
+    }
+
+    private static final Statement NO_OPERATION = frame -> {};
+    private static final int TASKS_PER_THREAD = 2;  // of a parallel compound statement
+
+    private Symtab symtab;
+    private Profile profile;  // profile of earlier runs, or null
+    private DependenceAnalysis dependence;  // null unless loops may run in parallel
+    private IdentityHashMap<SymtabEntry, Integer> slots;
+    private ArrayList<SymtabEntry> variables;
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table of the code to compile.
+     */
+    public ClosureCompiler(Symtab symtab)
+    {
+        this(symtab, null);
+    }
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table of the code to compile.
+     * @param profile a profile of earlier runs, or null.
+     */
+    public ClosureCompiler(Symtab symtab, Profile profile)
+    {
+        this.symtab = symtab;
+        this.profile = profile;
+        this.slots = new IdentityHashMap<>();
+        this.variables = new ArrayList<>();
+    }
+
+    /**
+     * Setter.
+     * @param parallel true to run the iterations of FOR loops and the
+     *                 statements of compound statements in parallel
+     *                 where they are independent.
+     */
+    public void setParallel(boolean parallel)
+    {
+        dependence = parallel ? new DependenceAnalysis(symtab) : null;
+    }
+
+    /**
+     * Getter.
+     * @return the variables of all the code compiled so far,
+     *         indexed by slot.
+     */
+    public ArrayList<SymtabEntry> variables() { return variables; }
+
+    /**
+     * Get the slot of a variable, and give it one if it has none yet.
+     * @param variableId the variable's symbol table entry.
+     * @return the slot.
+     */
+    public int slotOf(SymtabEntry variableId)
+    {
+        Integer slot = slots.get(variableId);
+
+        if (slot == null)
+        {
+            slot = variables.size();
+            slots.put(variableId, slot);
+            variables.add(variableId);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Compile a statement. Like the tree walker, compound statements,
+     * assignments, loops and writes record their line number in the frame.
+     * @param node the statement node.
+     * @return the compiled statement.
+     */
+    public Statement compileStatement(Node node)
+    {
+        if (node == null) return NO_OPERATION;
+
+        int line = node.lineNumber;
+
+        switch (node.type)
+        {
+            case COMPOUND :
+            {
+                Statement[] statements = compileStatements(node.children, 0);
+
+                if (dependence != null)
+                {
+                    Statement parallel = compileParallelCompound(node, statements);
+                    if (parallel != null) return parallel;
+                }
+
+                return frame -> {
+                    frame.lineNumber = line;
+                    for (Statement statement : statements) statement.execute(frame);
+                };
+            }
+
+            case ASSIGN :
+            {
+                int slot = slotOf(entryOf(node.children.get(0)));
+                NumberExpression value = compileNumber(node.children.get(1));
+
+                return frame -> {
+                    frame.lineNumber = line;
+                    frame.slots[slot] = value.evaluate(frame);
+                };
+            }
+
+            case LOOP :
+            {
+                Statement iterations = compileIterations(node);
+
+                return frame -> {
+                    frame.lineNumber = line;
+                    iterations.execute(frame);
+                };
+            }
+
+            case WRITE :
+            case WRITELN :  return compileWrite(node);
+
+            case IFNODE :
+            {
+                BooleanExpression test = compileTest(node.children.get(0));
+                Statement thenStatement = compileStatement(node.children.get(1));
+
+                if (node.children.size() > 2)
+                {
+                    Statement elseStatement = compileStatement(node.children.get(2));
+
+                    if (   (profile != null) 
+                        && (profile.trueRatio(node.children.get(0)) >= 0)
+                        && (profile.trueRatio(node.children.get(0)) < 0.5))
+                    {
+                        return frame -> {
+                            if (!test.evaluate(frame)) elseStatement.execute(frame);
+                            else                       thenStatement.execute(frame);
+                        };
+                    }
+
+                    return frame -> {
+                        if (test.evaluate(frame)) thenStatement.execute(frame);
+                        else                      elseStatement.execute(frame);
+                    };
+                }
+
+                return frame -> {
+                    if (test.evaluate(frame)) thenStatement.execute(frame);
+                };
+            }
+
+            case SELECT :   return compileSelect(node);
+
+            case TEST :
+            {
+                BooleanExpression test = compileTest(node);
+                return frame -> test.evaluate(frame);
+            }
+
+            default :       return NO_OPERATION;
+        }
+    }
+
+    /**
+     * Compile the iterations of a LOOP node. Unlike the compiled LOOP
+     * statement, the result doesn't record the loop's line number, so it
+     * can also take over a loop whose iterations are already under way.
+     * @param loopNode the LOOP node.
+     * @return the compiled iterations, from the top of an iteration
+     *         until a test is true. They charge their back edges to
+     *         the frame's budget.
+     */
+    public Statement compileIterations(Node loopNode)
+    {
+        ArrayList<Node> children = loopNode.children;
+        int count = children.size();
+        int loopLine = loopNode.lineNumber;
+
+        // WHILE loop: A test followed by a statement.
+        if ((count == 2) && isTest(children.get(0)) && !isTest(children.get(1)))
+        {
+            BooleanExpression test = compileTest(children.get(0));
+            Statement body = compileStatement(children.get(1));
+
+            return frame -> {
+                int backEdges = 0;
+
+                while (!test.evaluate(frame))
+                {
+                    body.execute(frame);
+
+                    if (++backEdges == Budget.BATCH)
+                    {
+                        frame.budget.charge(backEdges, loopLine);
+                        backEdges = 0;
+                    }
+                }
+
+                frame.budget.charge(backEdges, loopLine);
+            };
+        }
+
+        // FOR loop: A test followed by the body and the increment.
+        if (   (count == 3) && isTest(children.get(0))
+            && !isTest(children.get(1)) && !isTest(children.get(2)))
+        {
+            BooleanExpression test = compileTest(children.get(0));
+            Statement body = compileStatement(children.get(1));
+            Statement increment = compileStatement(children.get(2));
+
+            Statement iterations = frame -> {
+                int backEdges = 0;
+
+                while (!test.evaluate(frame))
+                {
+                    body.execute(frame);
+                    increment.execute(frame);
+
+                    if (++backEdges == Budget.BATCH)
+                    {
+                        frame.budget.charge(backEdges, loopLine);
+                        backEdges = 0;
+                    }
+                }
+
+                frame.budget.charge(backEdges, loopLine);
+            };
+
+            if ((dependence != null) && dependence.isIndependent(loopNode))
+            {
+                Node relationNode = children.get(0).children.get(0);
+                long cost = 0;
+                for (Node child : children) cost += DependenceAnalysis.cost(child);
+
+                int controlSlot = slotOf(entryOf(relationNode.children.get(0)));
+                HashSet<SymtabEntry> written = dependence.writes(children.get(1));
+                written.add(entryOf(relationNode.children.get(0)));
+
+                return new ParallelFor(controlSlot, relationNode.type == GT,
+                                       compileNumber(relationNode.children.get(1)),
+                                       body, increment, children.get(2).lineNumber,
+                                       slotsOf(written), cost, iterations);
+            }
+
+            return iterations;
+        }
+
+        // REPEAT loop: Statements followed by a test.
+        if ((count > 0) && isTest(children.get(count - 1)) && (testCount(children) == 1))
+        {
+            Statement[] statements = compileStatements(children, 1);
+            BooleanExpression test = compileTest(children.get(count - 1));
+
+            return frame -> {
+                int backEdges = 0;
+
+                while (true)
+                {
+                    for (Statement statement : statements) statement.execute(frame);
+                    if (test.evaluate(frame)) break;
+
+                    if (++backEdges == Budget.BATCH)
+                    {
+                        frame.budget.charge(backEdges, loopLine);
+                        backEdges = 0;
+                    }
+                }
+
+                frame.budget.charge(backEdges, loopLine);
+            };
+        }
+
+        // Any other arrangement of statements and tests.
+        Statement[] statements = new Statement[count];
+        BooleanExpression[] tests = new BooleanExpression[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            Node child = children.get(i);
+
+            if (isTest(child)) tests[i] = compileTest(child);
+            else               statements[i] = compileStatement(child);
+        }
+
+        return frame -> {
+            int backEdges = 0;
+
+            while (true)
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    if (tests[i] == null) statements[i].execute(frame);
+                    else if (tests[i].evaluate(frame))
+                    {
+                        frame.budget.charge(backEdges, loopLine);
+                        return;
+                    }
+                }
+
+                if (++backEdges == Budget.BATCH)
+                {
+                    frame.budget.charge(backEdges, loopLine);
+                    backEdges = 0;
+                }
+            }
+        };
+    }
+
+    /**
+     * Plan the parallel execution of the independent groups of
+     * statements of a compound statement.
+     * @param compoundNode the COMPOUND node.
+     * @param statements its compiled statements.
+     * @return the parallel statement, or null if running the groups
+     *         in parallel isn't worth it.
+     */
+    private Statement compileParallelCompound(Node compoundNode, Statement[] statements)
+    {
+        ArrayList<Node> children = compoundNode.children;
+        int count = children.size();
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+
+        int[] groups = count > 1 ? dependence.independentGroups(children) : null;
+        if ((groups == null) || (threads < 2)) return null;
+
+        int groupCount = 0;
+        for (int group : groups) groupCount = Math.max(groupCount, group + 1);
+        if (groupCount < 2) return null;
+
+        // Costs saturate, so they're added without overflowing.
+        long[] costs = new long[groupCount];
+        int longest = 0;
+        long rest = 0;  // cost of the groups besides the longest
+
+        for (int i = 0; i < count; i++)
+        {
+            long cost = DependenceAnalysis.cost(children.get(i));
+            costs[groups[i]] = DependenceAnalysis.saturatedSum(costs[groups[i]], cost);
+        }
+
+        for (int g = 1; g < groupCount; g++) if (costs[g] > costs[longest]) longest = g;
+        for (int g = 0; g < groupCount; g++)
+        {
+            if (g != longest) rest = DependenceAnalysis.saturatedSum(rest, costs[g]);
+        }
+
+        if (rest < ParallelCompound.THRESHOLD) return null;
+
+        // Deal the groups, most costly first, to the least loaded task.
+        int taskCount = Math.min(groupCount, threads*TASKS_PER_THREAD);
+        Integer[] order = new Integer[groupCount];
+        for (int g = 0; g < groupCount; g++) order[g] = g;
+        Arrays.sort(order, (a, b) -> Long.compare(costs[b], costs[a]));
+
+        int[] taskOf = new int[groupCount];
+        long[] loads = new long[taskCount];
+
+        for (int g : order)
+        {
+            int lightest = 0;
+            for (int t = 1; t < taskCount; t++) if (loads[t] < loads[lightest]) lightest = t;
+
+            taskOf[g] = lightest;
+            loads[lightest] = DependenceAnalysis.saturatedSum(loads[lightest], costs[g]);
+        }
+
+        int[] sizes = new int[taskCount];
+        for (int i = 0; i < count; i++) sizes[taskOf[groups[i]]]++;
+
+        int[][] tasks = new int[taskCount][];
+        for (int t = 0; t < taskCount; t++) tasks[t] = new int[sizes[t]];
+
+        Arrays.fill(sizes, 0);
+        for (int i = 0; i < count; i++)
+        {
+            int t = taskOf[groups[i]];
+            tasks[t][sizes[t]++] = i;
+        }
+
+        boolean[] printing = new boolean[count];
+        HashSet<SymtabEntry> written = new HashSet<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            printing[i] = containsWrite(children.get(i));
+            written.addAll(dependence.writes(children.get(i)));
+        }
+
+        return new ParallelCompound(compoundNode.lineNumber, statements, printing,
+                                    tasks, slotsOf(written));
+    }
+
+    /**
+     * Compile a numeric expression.
+     * @param node the root node of the expression.
+     * @return the compiled expression.
+     */
+    public NumberExpression compileNumber(Node node)
+    {
+        switch (node.type)
+        {
+            case VARIABLE :
+            {
+                int slot = slotOf(entryOf(node));
+                return frame -> frame.slots[slot];
+            }
+
+            case INTEGER_CONSTANT :
+            {
+                double value = (Long) node.value;
+                return frame -> value;
+            }
+
+            case REAL_CONSTANT :
+            {
+                double value = (Double) node.value;
+                return frame -> value;
+            }
+
+            case ADD :
+            case SUBTRACT :
+            case MULTIPLY :  return compileArithmetic(node);
+
+            case DIVIDE :
+            case DIV :
+            {
+                NumberExpression left  = compileNumber(node.children.get(0));
+                NumberExpression right = compileNumber(node.children.get(1));
+                String text = node.text;
+
+                if (isNonZero(node.children.get(1)))
+                {
+                    if (node.type == DIVIDE)
+                    {
+                        return frame -> left.evaluate(frame)/right.evaluate(frame);
+                    }
+
+                    return frame -> Math.floor(left.evaluate(frame)/right.evaluate(frame));
+                }
+
+                if (node.type == DIVIDE)
+                {
+                    return frame -> {
+                        double value1 = left.evaluate(frame);
+                        double value2 = right.evaluate(frame);
+
+                        if (value2 != 0.0) return value1/value2;
+                        throw new RuntimeError(frame.lineNumber, "Division by zero", text);
+                    };
+                }
+
+                return frame -> {
+                    double value1 = left.evaluate(frame);
+                    double value2 = right.evaluate(frame);
+
+                    if (value2 != 0.0) return Math.floor(value1/value2);
+                    throw new RuntimeError(frame.lineNumber, "Division by zero", text);
+                };
+            }
+
+            default :
+            {
+                String text = node.text;
+                return frame -> {
+                    throw new RuntimeError(frame.lineNumber, "Invalid numeric expression", text);
+                };
+            }
+        }
+    }
+
+    /**
+     * Compile a relational or logical expression. Both operands of AND
+     * and OR are always evaluated, as in the tree walker.
+     * @param node the root node of the expression.
+     * @return the compiled expression.
+     */
+    public BooleanExpression compileBoolean(Node node)
+    {
+        switch (node.type)
+        {
+            case EQ :
+            case NE :
+            case LT :
+            case LTE :
+            case GT :
+            case GTE :  return compileRelational(node);
+
+            case AND :
+            {
+                BooleanExpression left  = compileBoolean(node.children.get(0));
+                BooleanExpression right = compileBoolean(node.children.get(1));
+                return frame -> left.evaluate(frame) & right.evaluate(frame);
+            }
+
+            case OR :
+            {
+                BooleanExpression left  = compileBoolean(node.children.get(0));
+                BooleanExpression right = compileBoolean(node.children.get(1));
+                return frame -> left.evaluate(frame) | right.evaluate(frame);
+            }
+
+            case NOT :
+            {
+                BooleanExpression operand = compileBoolean(node.children.get(0));
+                return frame -> !operand.evaluate(frame);
+            }
+
+            default :
+            {
+                String text = node.text;
+                return frame -> {
+                    throw new RuntimeError(frame.lineNumber, "Invalid boolean expression", text);
+                };
+            }
+        }
+    }
+
+    private NumberExpression compileArithmetic(Node node)
+    {
+        Node leftNode  = node.children.get(0);
+        Node rightNode = node.children.get(1);
+
+        // Specialize the common forms "variable op constant" and
+        // "variable op variable".
+        if ((leftNode.type == VARIABLE) && isNumericConstant(rightNode))
+        {
+            int slot = slotOf(entryOf(leftNode));
+            double constant = ((Number) rightNode.value).doubleValue();
+
+            switch (node.type)
+            {
+                case ADD :      return frame -> frame.slots[slot] + constant;
+                case SUBTRACT : return frame -> frame.slots[slot] - constant;
+                default :       return frame -> frame.slots[slot] * constant;
+            }
+        }
+
+        if ((leftNode.type == VARIABLE) && (rightNode.type == VARIABLE))
+        {
+            int slot1 = slotOf(entryOf(leftNode));
+            int slot2 = slotOf(entryOf(rightNode));
+
+            switch (node.type)
+            {
+                case ADD :      return frame -> frame.slots[slot1] + frame.slots[slot2];
+                case SUBTRACT : return frame -> frame.slots[slot1] - frame.slots[slot2];
+                default :       return frame -> frame.slots[slot1] * frame.slots[slot2];
+            }
+        }
+
+        NumberExpression left  = compileNumber(leftNode);
+        NumberExpression right = compileNumber(rightNode);
+
+        switch (node.type)
+        {
+            case ADD :      return frame -> left.evaluate(frame) + right.evaluate(frame);
+            case SUBTRACT : return frame -> left.evaluate(frame) - right.evaluate(frame);
+            default :       return frame -> left.evaluate(frame) * right.evaluate(frame);
+        }
+    }
+
+    private BooleanExpression compileRelational(Node node)
+    {
+        Node leftNode  = node.children.get(0);
+        Node rightNode = node.children.get(1);
+
+        // Specialize the common form "variable op constant".
+        if ((leftNode.type == VARIABLE) && isNumericConstant(rightNode))
+        {
+            int slot = slotOf(entryOf(leftNode));
+            double constant = ((Number) rightNode.value).doubleValue();
+
+            switch (node.type)
+            {
+                case EQ :  return frame -> frame.slots[slot] == constant;
+                case NE :  return frame -> frame.slots[slot] != constant;
+                case LT :  return frame -> frame.slots[slot] <  constant;
+                case LTE : return frame -> frame.slots[slot] <= constant;
+                case GT :  return frame -> frame.slots[slot] >  constant;
+                default :  return frame -> frame.slots[slot] >= constant;
+            }
+        }
+
+        NumberExpression left  = compileNumber(leftNode);
+        NumberExpression right = compileNumber(rightNode);
+
+        switch (node.type)
+        {
+            case EQ :  return frame -> left.evaluate(frame) == right.evaluate(frame);
+            case NE :  return frame -> left.evaluate(frame) != right.evaluate(frame);
+            case LT :  return frame -> left.evaluate(frame) <  right.evaluate(frame);
+            case LTE : return frame -> left.evaluate(frame) <= right.evaluate(frame);
+            case GT :  return frame -> left.evaluate(frame) >  right.evaluate(frame);
+            default :  return frame -> left.evaluate(frame) >= right.evaluate(frame);
+        }
+    }
+
+    private BooleanExpression compileTest(Node testNode)
+    {
+        return compileBoolean(testNode.children.get(0));
+    }
+
+    private Statement compileWrite(Node writeNode)
+    {
+        int line = writeNode.lineNumber;
+        boolean writeln = writeNode.type == WRITELN;
+
+        if (writeNode.children.isEmpty())
+        {
+            return frame -> {
+                frame.lineNumber = line;
+                frame.output.newline();
+            };
+        }
+
+        WriteFormat format = WriteFormat.compile(writeNode);
+
+        if (format.isConstant())
+        {
+            return frame -> {
+                frame.lineNumber = line;
+                format.write(frame.output);
+                if (writeln) frame.output.newline();
+            };
+        }
+
+        NumberExpression value = compileNumber(writeNode.children.get(0));
+
+        return frame -> {
+            frame.lineNumber = line;
+            format.write(frame.output, value.evaluate(frame));
+            if (writeln) frame.output.newline();
+        };
+    }
+
+    private Statement compileSelect(Node selectNode)
+    {
+        ArrayList<Node> children = selectNode.children;
+        NumberExpression selector = compileNumber(children.get(0));
+        CaseDispatch dispatch = CaseDispatch.compile(selectNode, profile);
+
+        // Index the branch statements like the SELECT node's children.
+        Statement[] branches = new Statement[children.size()];
+        for (int i = 1; i < children.size(); i++)
+        {
+            branches[i] = compileStatement(children.get(i).children.get(1));
+        }
+
+        if (!dispatch.isLinear() && isInt(children.get(0)))
+        {
+            return frame -> {
+                int i = dispatch.branchIndex((int) selector.evaluate(frame));
+                if (i > 0) branches[i].execute(frame);
+            };
+        }
+
+        if (!dispatch.isLinear())
+        {
+            return frame -> {
+                int i = dispatch.branchIndex(selector.evaluate(frame));
+                if (i > 0) branches[i].execute(frame);
+            };
+        }
+
+        // Constants that aren't known until run time.
+        NumberExpression[][] constants = new NumberExpression[children.size()][];
+        for (int i = 1; i < children.size(); i++)
+        {
+            ArrayList<Node> constantNodes = children.get(i).children.get(0).children;
+            constants[i] = new NumberExpression[constantNodes.size()];
+
+            for (int j = 0; j < constantNodes.size(); j++)
+            {
+                constants[i][j] = compileNumber(constantNodes.get(j));
+            }
+        }
+
+        return frame -> {
+            double value = selector.evaluate(frame);
+
+            for (int i = 1; i < branches.length; i++)
+            {
+                for (NumberExpression constant : constants[i])
+                {
+                    if (Double.compare(constant.evaluate(frame), value) == 0)
+                    {
+                        branches[i].execute(frame);
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Compile a list of statements.
+     * @param nodes the statement nodes.
+     * @param skip the number of nodes to leave off the end of the list.
+     * @return the compiled statements.
+     */
+    private Statement[] compileStatements(ArrayList<Node> nodes, int skip)
+    {
+        Statement[] statements = new Statement[nodes.size() - skip];
+        for (int i = 0; i < statements.length; i++)
+        {
+            statements[i] = compileStatement(nodes.get(i));
+        }
+
+        return statements;
+    }
+
+    private int[] slotsOf(HashSet<SymtabEntry> entries)
+    {
+        int[] entrySlots = new int[entries.size()];
+        int i = 0;
+        for (SymtabEntry entry : entries) entrySlots[i++] = slotOf(entry);
+
+        return entrySlots;
+    }
+
+    private SymtabEntry entryOf(Node variableNode)
+    {
+        return variableNode.entry != null ? variableNode.entry
+                                          : symtab.lookup(variableNode.text);
+    }
+
+    private static boolean containsWrite(Node node)
+    {
+        if (node == null) return false;
+        if ((node.type == WRITE) || (node.type == WRITELN)) return true;
+
+        for (Node child : node.children)
+        {
+            if (containsWrite(child)) return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isTest(Node node)
+    {
+        return (node != null) && (node.type == TEST);
+    }
+
+    private static int testCount(ArrayList<Node> nodes)
+    {
+        int count = 0;
+        for (Node node : nodes) if (isTest(node)) count++;
+
+        return count;
+    }
+
+    private static boolean isNumericConstant(Node node)
+    {
+        return (node.type == INTEGER_CONSTANT) || (node.type == REAL_CONSTANT);
+    }
+
+    /**
+     * @param node an expression node.
+     * @return true if a range analysis proved that its value is never zero.
+     */
+    private static boolean isNonZero(Node node)
+    {
+        return (node.range != null) && node.range.isNonZero();
+    }
+
+    /**
+     * @param node an expression node.
+     * @return true if a range analysis proved that its value fits in an int.
+     */
+    private static boolean isInt(Node node)
+    {
+        return (node.range != null) && node.range.isInt();
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Compiled program class for a simple interpreter.
+ *
+ * A whole program compiled once by the ClosureCompiler, to be run any
+ * number of times. The compiled code refers to no parse tree node or
+ * symbol table entry, only to immutable values and to the variable
+ * slots of a Frame, and each run gets a new frame and writes to its own
+ * output buffer. So a compiled program is immutable, and any number of
+ * threads can run it at once without locking. Compiling is recursive,
+ * so a program nested too deeply for the stack can't be compiled.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+
+import intermediate.*;
+
+public final class CompiledProgram
+{
+    private final String name;
+    private final ClosureCompiler.Statement body;
+    private final String[] variableNames;  // by slot
+
+    private CompiledProgram(String name, ClosureCompiler.Statement body,
+                            String[] variableNames)
+    {
+        this.name = name;
+        this.body = body;
+        this.variableNames = variableNames;
+    }
+
+    /**
+     * Compile a program.
+     * @param programNode the program's parse tree. It isn't used after
+     *                    compiling and can then be changed or dropped.
+     * @param symtab the program's symbol table.
+     * @return the compiled program.
+     */
+    public static CompiledProgram compile(Node programNode, Symtab symtab)
+    {
+        return compile(programNode, symtab, null);
+    }
+
+    /**
+     * Compile a program.
+     * @param programNode the program's parse tree. It isn't used after
+     *                    compiling and can then be changed or dropped.
+     * @param symtab the program's symbol table.
+     * @param profile a profile of earlier runs, or null.
+     * @return the compiled program.
+     */
+    public static CompiledProgram compile(Node programNode, Symtab symtab, Profile profile)
+    {
+        return compile(programNode, symtab, profile, false);
+    }
+
+    /**
+     * Compile a program.
+     * @param programNode the program's parse tree. It isn't used after
+     *                    compiling and can then be changed or dropped.
+     * @param symtab the program's symbol table.
+     * @param profile a profile of earlier runs, or null.
+     * @param parallel true to run the independent iterations of FOR
+     *                 loops in parallel.
+     * @return the compiled program.
+     */
+    public static CompiledProgram compile(Node programNode, Symtab symtab, Profile profile,
+                                          boolean parallel)
+    {
+        ClosureCompiler compiler = new ClosureCompiler(symtab, profile);
+        compiler.setParallel(parallel);
+        ClosureCompiler.Statement body =
+            compiler.compileStatement(programNode.children.get(0));
+
+        ArrayList<SymtabEntry> variables = compiler.variables();
+        String[] variableNames = new String[variables.size()];
+        for (int i = 0; i < variableNames.length; i++)
+        {
+            variableNames[i] = variables.get(i).getName();
+        }
+
+        return new CompiledProgram(programNode.text, body, variableNames);
+    }
+
+    /**
+     * Getter.
+     * @return the program name.
+     */
+    public String getName() { return name; }
+
+    /**
+     * Getter.
+     * @return the number of variable slots of a run's frame.
+     */
+    public int slotCount() { return variableNames.length; }
+
+    /**
+     * @param slot a variable slot.
+     * @return the name of the variable in the slot.
+     */
+    public String variableName(int slot) { return variableNames[slot]; }
+
+    /**
+     * Run the program with all its variables 0.0. A runtime error is
+     * reported in the output like the tree walker does, but it doesn't
+     * exit.
+     * @param output the buffer for the program's output, flushed at the
+     *               end. Concurrent runs need separate buffers.
+     * @return the exit status: 0, or -2 after a runtime error.
+     */
+    public int run(OutputBuffer output)
+    {
+        return run(output, new Budget());
+    }
+
+    /**
+     * Run the program with all its variables 0.0 and a limited budget.
+     * @param output the buffer for the program's output, flushed at the
+     *               end. Concurrent runs need separate buffers.
+     * @param budget the run's budget. Concurrent runs need separate ones.
+     * @return the exit status: 0, -2 after a runtime error, or -3 if
+     *         the budget ran out.
+     */
+    public int run(OutputBuffer output, Budget budget)
+    {
+        Frame frame = new Frame(variableNames.length, output, budget);
+
+        try
+        {
+            body.execute(frame);
+        }
+        catch (RuntimeError error)
+        {
+            output.write(error.report());
+            output.flush();
+            return error.exitStatus();
+        }
+
+        output.flush();
+        return 0;
+    }
+}
@@ -11,16 +11,24 @@
  */
 package backend;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
 
 import intermediate.*;
 import static intermediate.Node.NodeType.*;
 
 public class Executor
 {
-    private int lineNumber;
+    protected int lineNumber;
     private Symtab symtab;
+    protected OutputBuffer output;
+    protected Profile profile;  // profile of earlier runs, or null
+    protected Budget budget = new Budget();
+    private IntConsumer exitHandler = System::exit;
     
     private static HashSet<Node.NodeType> singletons;
     private static HashSet<Node.NodeType> relationals;
@@ -59,10 +67,41 @@ public class Executor
     }
     
     public Executor(Symtab symtab)
+    {
+        this(symtab, new OutputBuffer());
+    }
+    
+    public Executor(Symtab symtab, OutputBuffer output)
     {
         this.symtab = symtab;
+        this.output = output;
     }
     
+    /**
+     * Write any buffered program output.
+     */
+    public void flush() { output.flush(); }
+    
+    /**
+     * Setter.
+     * @param profile a profile of earlier runs of the program to
+     *                specialize execution with, or null.
+     */
+    public void setProfile(Profile profile) { this.profile = profile; }
+    
+    /**
+     * Setter.
+     * @param budget the budget of the execution, charged at loop back edges.
+     */
+    public void setBudget(Budget budget) { this.budget = budget; }
+    
+    /**
+     * Setter.
+     * @param exitHandler called with the exit status when a runtime
+     *                    error ends the program. The default exits.
+     */
+    public void setExitHandler(IntConsumer exitHandler) { this.exitHandler = exitHandler; }
+    
     public Object visit(Node node)
     {
         switch (node.type)
@@ -87,7 +126,42 @@ public class Executor
     private Object visitProgram(Node programNode)
     {
         Node compoundNode = programNode.children.get(0);
-        return visit(compoundNode);
+        
+        try
+        {
+            visit(compoundNode);
+        }
+        catch (RuntimeError error)
+        {
+            output.write(error.report());
+            output.flush();
+            exitHandler.accept(error.exitStatus());
+        }
+        
+        output.flush();
+        return null;
+    }
+    
+    /**
+     * Execute the statements of a program's compound statement one at a
+     * time, as they become available, instead of a whole parse tree.
+     * @param statements the statements in order, such as those that a
+     *                   StatementStream hands over while it parses.
+     */
+    public void executeStatements(Iterator<Node> statements)
+    {
+        try
+        {
+            while (statements.hasNext()) visit(statements.next());
+        }
+        catch (RuntimeError error)
+        {
+            output.write(error.report());
+            output.flush();
+            exitHandler.accept(error.exitStatus());
+        }
+        
+        output.flush();
     }
     
     private Object visitStatement(Node statementNode)
@@ -109,48 +183,84 @@ public class Executor
     
     private Object visitCompound(Node compoundNode)
     {
-        for (Node statementNode : compoundNode.children) visit(statementNode);
+        if (compoundNode.value != null) parseDeferred(compoundNode);
+        
+        ArrayList<Node> children = compoundNode.children;
+        for (int i = 0; i < children.size(); i++) visit(children.get(i));
         
         return null;
     }
     
-    private Object visitAssign(Node assignNode)
+    protected Object visitAssign(Node assignNode)
     {
         Node lhs = assignNode.children.get(0);
         Node rhs = assignNode.children.get(1);
         
-        // Evaluate the right-hand-side expression;
-        Double value = (Double) visit(rhs);
+        // Evaluate the right-hand-side expression without boxing it.
+        double value = evalDouble(rhs);
         
         // Store the value into the variable's symbol table entry.
-        String variableName = lhs.text;
-        SymtabEntry variableId = symtab.lookup(variableName);
-        variableId.setValue(value);
+        variableEntry(lhs).setValue(value);
         
         return null;
     }
     
-    private Object visitLoop(Node loopNode)
+    /**
+     * Parse the statements of a compound statement that a lazy parser
+     * only skimmed, the first time it executes. Syntax errors in them 
+     * are printed as program output, and then they end the program like
+     * a runtime error.
+     * @param compoundNode the COMPOUND node, whose value is a DeferredBody.
+     */
+    protected void parseDeferred(Node compoundNode)
+    {
+        DeferredBody body = (DeferredBody) compoundNode.value;
+        compoundNode.value = null;
+        
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        if (body.parse(compoundNode, new PrintStream(messages, true)) > 0)
+        {
+            output.write(messages.toString());
+            throw new RuntimeError(compoundNode.lineNumber, 
+                                   "Syntax errors in a compound statement");
+        }
+    }
+    
+    protected Object visitLoop(Node loopNode)
     {        
-        boolean b = false;
-        do
+        ArrayList<Node> children = loopNode.children;
+        int count = children.size();
+        int backEdges = 0;
+        
+        while (true)
         {
-            for (Node node : loopNode.children)
+            for (int i = 0; i < count; i++)
             {
-                Object value = visit(node);  // statement or test
+                Node node = children.get(i);
                 
                 // Evaluate the test condition. Stop looping if true.
-                b = (node.type == TEST) && ((boolean) value);
-                if (b) break;
+                if (node.type == TEST)
+                {
+                    if (evalTest(node)) 
+                    {
+                        budget.charge(backEdges, loopNode.lineNumber);
+                        return null;
+                    }
+                }
+                else visit(node);
             }
-        } while (!b);
-        
-        return null;
+            
+            if (++backEdges == Budget.BATCH)
+            {
+                budget.charge(backEdges, loopNode.lineNumber);
+                backEdges = 0;
+            }
+        }
     }
     
     private Object visitIfNode(Node ifNode)
     {        
-        if ((Boolean) visit(ifNode.children.get(0))) 
+        if (evalTest(ifNode.children.get(0))) 
         {
         	visit(ifNode.children.get(1));
         } else if (ifNode.children.size() > 2) 
@@ -162,9 +272,42 @@ public class Executor
     
     private Object visitCaseNode(Node caseNode)
     {   
-    	
-    	Double value = (Double) visit(caseNode.children.get(0));
-    	
+        Node statementNode = selectBranch(caseNode);
+        return statementNode != null ? visit(statementNode) : null;
+    }
+    
+    /**
+     * Find the statement of the branch that a CASE selects.
+     * @param caseNode the SELECT node.
+     * @return the branch's statement node, or null if no branch matches.
+     */
+    protected Node selectBranch(Node caseNode)
+    {
+        return selectBranch(caseNode, evalDouble(caseNode.children.get(0)));
+    }
+    
+    /**
+     * Find the statement of the branch that a CASE selects.
+     * @param caseNode the SELECT node.
+     * @param value the value of the CASE expression.
+     * @return the branch's statement node, or null if no branch matches.
+     */
+    protected Node selectBranch(Node caseNode, double value)
+    {
+        // Prepare the node's dispatch structure the first time it executes.
+        CaseDispatch dispatch = (CaseDispatch) caseNode.value;
+        if (dispatch == null)
+        {
+            dispatch = CaseDispatch.compile(caseNode, profile);
+            caseNode.value = dispatch;
+        }
+        
+        if (!dispatch.isLinear())
+        {
+            int i = dispatch.branchIndex(value);
+            return i > 0 ? caseNode.children.get(i).children.get(1) : null;
+        }
+        
     	for (int i = 1; i < caseNode.children.size(); i++)
         {
             Node branch = caseNode.children.get(i);
@@ -173,9 +316,9 @@ public class Executor
             
             for (int j = 0; j < constants.children.size(); j++) 
             {
-            	if (((Double) visit(constants.children.get(j))).equals(value)) 
+            	if (Double.compare(evalDouble(constants.children.get(j)), value) == 0) 
                 {
-                	return visit(branch.children.get(1));
+                	return branch.children.get(1);
                 }
             }
         }
@@ -184,203 +327,215 @@ public class Executor
     
     private Object visitTest(Node testNode)
     {
-        return (Boolean) visit(testNode.children.get(0));
+        return evalTest(testNode);
     }
     
-    private Object visitWrite(Node writeNode)
+    protected Object visitWrite(Node writeNode)
     {
-        printValue(writeNode.children);
+        printValue(writeNode);
         return null;
     }
     
-    private Object visitWriteln(Node writelnNode)
+    protected Object visitWriteln(Node writelnNode)
     {
-        if (writelnNode.children.size() > 0) printValue(writelnNode.children);
-        System.out.println();
+        if (writelnNode.children.size() > 0) printValue(writelnNode);
+        output.newline();
         
         return null;
     }
 
-    private void printValue(ArrayList<Node> children)
+    private void printValue(Node writeNode)
     {
-        long fieldWidth    = -1;
-        long decimalPlaces = 0;
+        WriteFormat format = writeFormat(writeNode);
         
-        // Use any specified field width and count of decimal places.
-        if (children.size() > 1)
+        if (format.isConstant()) format.write(output);
+        else format.write(output, evalDouble(writeNode.children.get(0)));
+    }
+    
+    /**
+     * Print a numeric WRITE or WRITELN argument that is already evaluated.
+     * @param writeNode the WRITE or WRITELN node.
+     * @param value the value of its argument.
+     */
+    protected void printValue(Node writeNode, double value)
+    {
+        writeFormat(writeNode).write(output, value);
+    }
+    
+    private WriteFormat writeFormat(Node writeNode)
+    {
+        // Compile the node's format the first time it executes.
+        WriteFormat format = (WriteFormat) writeNode.value;
+        if (format == null)
         {
-            double fw = (Double) visit(children.get(1));
-            fieldWidth = (long) fw;
-            
-            if (children.size() > 2) 
-            {
-                double dp = (Double) visit(children.get(2));
-                decimalPlaces = (long) dp;
-            }
+            format = WriteFormat.compile(writeNode);
+            writeNode.value = format;
         }
         
-        // Print the value with a format.
-        Node valueNode = children.get(0);
-        if (valueNode.type == VARIABLE)
-        {
-            String format = "%";
-            if (fieldWidth >= 0)    format += fieldWidth;
-            if (decimalPlaces >= 0) format += "." + decimalPlaces;
-            format += "f";
-            
-            Double value = (Double) visit(valueNode);
-            System.out.printf(format, value);
-        }
-        else  // node type STRING_CONSTANT
-        {
-            String format = "%";
-            if (fieldWidth > 0) format += fieldWidth;
-            format += "s";
-            
-            String value = (String) visit(valueNode);
-            System.out.printf(format, value);
-        }
+        return format;
     }
 
     private Object visitExpression(Node expressionNode)
     {
-        // Single-operand expressions.
-        if (singletons.contains(expressionNode.type))
+        if (expressionNode.type == STRING_CONSTANT)
         {
-            switch (expressionNode.type)
-            {
-                case VARIABLE         : return visitVariable(expressionNode);
-                case INTEGER_CONSTANT : return visitIntegerConstant(expressionNode);
-                case REAL_CONSTANT    : return visitRealConstant(expressionNode);
-                case STRING_CONSTANT  : return visitStringConstant(expressionNode);
-                
-                default: return null;
-            }
+            return (String) expressionNode.value;
         }
         
-        // Relational expressions.
-        if (relationals.contains(expressionNode.type))
+        // Boxing happens only here, for callers that need an Object.
+        if (   relationals.contains(expressionNode.type)
+            || logicals.contains(expressionNode.type))
+        {
+            return evalBoolean(expressionNode);
+        }
+        
+        if (   singletons.contains(expressionNode.type)
+            || arithmetics.contains(expressionNode.type))
+        {
+            return evalDouble(expressionNode);
+        }
+
+       return null;
+    }
+    
+    /**
+     * Evaluate a numeric expression without allocating.
+     * @param node the root node of the expression.
+     * @return the value of the expression.
+     */
+    public double evalDouble(Node node)
+    {
+        switch (node.type)
         {
-        	 // Binary expressions.
-            double value1 = (Double) visit(expressionNode.children.get(0));
-            double value2 = (Double) visit(expressionNode.children.get(1));
+            case VARIABLE :         return variableEntry(node).getValue();
+            case INTEGER_CONSTANT : return (Long) node.value;
+            case REAL_CONSTANT :    return (Double) node.value;
             
-            boolean value = false;
+            case ADD :      return   evalDouble(node.children.get(0)) 
+                                   + evalDouble(node.children.get(1));
+            case SUBTRACT : return   evalDouble(node.children.get(0)) 
+                                   - evalDouble(node.children.get(1));
+            case MULTIPLY : return   evalDouble(node.children.get(0)) 
+                                   * evalDouble(node.children.get(1));
             
-            switch (expressionNode.type)
+            case DIVIDE :
             {
-                case EQ : value = value1 == value2; break;
-                case NE : value = value1 != value2; break;
-                case LT : value = value1 <  value2; break;
-                case LTE : value = value1 <= value2; break;
-                case GT : value = value1 > value2; break;
-                case GTE : value = value1 >= value2; break;
+                double value1 = evalDouble(node.children.get(0));
+                double value2 = evalDouble(node.children.get(1));
                 
-                default : break;
+                if (value2 != 0.0) return value1/value2;
+                
+                runtimeError(node, "Division by zero");
+                return 0.0;
             }
             
-            return value;
-        }
-        
-        // Arithmetic expressions.
-        if (arithmetics.contains(expressionNode.type))
-        {
-        	 // Binary expressions.
-            double value1 = (Double) visit(expressionNode.children.get(0));
-            double value2 = (Double) visit(expressionNode.children.get(1));
-            
-        	double value = 0.0;
-        
-        	switch (expressionNode.type)
-        	{
-        		case ADD :      value = value1 + value2; break;
-        		case SUBTRACT : value = value1 - value2; break;
-        		case MULTIPLY : value = value1 * value2; break;
+            case DIV :
+            {
+                double value1 = evalDouble(node.children.get(0));
+                double value2 = evalDouble(node.children.get(1));
                 
-        		case DIVIDE :
-        		{
-        			if (value2 != 0.0) value = value1/value2;
-        			else
-        			{
-        				runtimeError(expressionNode, "Division by zero");
-        				return 0.0;
-        			}
-        			
-        			break;
-        		}
-                case DIV:
-                {
-                    if (value2 != 0.0) value = Math.floor(value1/value2);
-                    else
-                    {
-                        runtimeError(expressionNode, "Division by zero");
-                        return 0.0;
-                    }
-
-                    break;
-                }
-        		
-        		default : break;
-        	}
-        	
-        	return value;
-        }
-
-        // Logical expressions.
-        if (logicals.contains(expressionNode.type))
-        {
-        	// Binary expressions.
-            boolean value1 = (Boolean) visit(expressionNode.children.get(0));
+                if (value2 != 0.0) return Math.floor(value1/value2);
+                
+                runtimeError(node, "Division by zero");
+                return 0.0;
+            }
             
-        	boolean value = false;
-        
-        	switch (expressionNode.type)
-        	{
-        		case AND :      boolean value2AND = (Boolean) visit(expressionNode.children.get(1));
-        						value = value1 && value2AND; break;
-        		case OR : 		boolean value2OR = (Boolean) visit(expressionNode.children.get(1));
-        						value = value1 || value2OR; break;
-        		case NOT : 		value = !value1; break;
-        		
-        		default : break;
-        	}
-        	
-        	return value;
+            default :
+            {
+                runtimeError(node, "Invalid numeric expression");
+                return 0.0;
+            }
         }
-
-       return null;
     }
     
-    private Object visitVariable(Node variableNode)
+    /**
+     * Evaluate an integer-valued expression, such as a field width,
+     * without allocating.
+     * @param node the root node of the expression.
+     * @return the value of the expression.
+     */
+    public long evalLong(Node node)
     {
-        // Obtain the variable's value from its symbol table entry.
-        String variableName = variableNode.text;
-        SymtabEntry variableId = symtab.lookup(variableName);
-        Double value = variableId.getValue();
-        
-        return value;
+        if (node.type == INTEGER_CONSTANT) return (Long) node.value;
+        return (long) evalDouble(node);
     }
     
-    private Object visitIntegerConstant(Node integerConstantNode)
+    /**
+     * Evaluate a relational or logical expression without allocating.
+     * @param node the root node of the expression.
+     * @return the value of the expression.
+     */
+    public boolean evalBoolean(Node node)
     {
-        long value = (Long) integerConstantNode.value;
-        return (double) value;
+        switch (node.type)
+        {
+            case EQ :  return   evalDouble(node.children.get(0)) 
+                             == evalDouble(node.children.get(1));
+            case NE :  return   evalDouble(node.children.get(0)) 
+                             != evalDouble(node.children.get(1));
+            case LT :  return   evalDouble(node.children.get(0)) 
+                             <  evalDouble(node.children.get(1));
+            case LTE : return   evalDouble(node.children.get(0)) 
+                             <= evalDouble(node.children.get(1));
+            case GT :  return   evalDouble(node.children.get(0)) 
+                             >  evalDouble(node.children.get(1));
+            case GTE : return   evalDouble(node.children.get(0)) 
+                             >= evalDouble(node.children.get(1));
+            
+            // Both operands are always evaluated.
+            case AND :
+            {
+                boolean value1 = evalBoolean(node.children.get(0));
+                boolean value2 = evalBoolean(node.children.get(1));
+                return value1 && value2;
+            }
+            case OR :
+            {
+                boolean value1 = evalBoolean(node.children.get(0));
+                boolean value2 = evalBoolean(node.children.get(1));
+                return value1 || value2;
+            }
+            case NOT : return !evalBoolean(node.children.get(0));
+            
+            default :
+            {
+                runtimeError(node, "Invalid boolean expression");
+                return false;
+            }
+        }
     }
     
-    private Object visitRealConstant(Node realConstantNode)
+    /**
+     * Evaluate the condition of a TEST node.
+     * @param testNode the TEST node.
+     * @return the value of the condition.
+     */
+    protected boolean evalTest(Node testNode)
     {
-        return (Double) realConstantNode.value;
+        return evalBoolean(testNode.children.get(0));
     }
     
-    private Object visitStringConstant(Node stringConstantNode)
+    /**
+     * Obtain a variable's symbol table entry, and remember it in the node
+     * so later visits skip the lookup.
+     * @param variableNode the VARIABLE node.
+     * @return the symbol table entry.
+     */
+    protected SymtabEntry variableEntry(Node variableNode)
     {
-        return (String) stringConstantNode.value;
+        SymtabEntry variableId = variableNode.entry;
+        
+        if (variableId == null)
+        {
+            variableId = symtab.lookup(variableNode.text);
+            variableNode.entry = variableId;
+        }
+        
+        return variableId;
     }
 
-    private void runtimeError(Node node, String message)
+    protected void runtimeError(Node node, String message)
     {
-        System.out.printf("RUNTIME ERROR at line %d: %s: %s\n", 
-                          lineNumber, message, node.text);
-        System.exit(-2);
+        throw new RuntimeError(lineNumber, message, node.text);
     }
 }
@@ -0,0 +1,56 @@
+/**
+ * Runtime frame of compiled code.
+ *
+ * Compiled code keeps the values of its variables in a primitive array
+ * of slots instead of in symbol table entries. The slot of each variable
+ * is assigned by the ClosureCompiler that compiled the code.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+public class Frame
+{
+    public final double[] slots;       // variable values
+    public final OutputBuffer output;  // program output
+    public final Budget budget;        // charged at loop back edges
+    public int lineNumber;             // line number of the current statement
+
+    /**
+     * Constructor.
+     * @param slotCount the number of variable slots.
+     * @param output the output buffer.
+     */
+    public Frame(int slotCount, OutputBuffer output)
+    {
+        this(slotCount, output, new Budget());
+    }
+
+    /**
+     * Constructor.
+     * @param slotCount the number of variable slots.
+     * @param output the output buffer.
+     * @param budget the execution budget.
+     */
+    public Frame(int slotCount, OutputBuffer output, Budget budget)
+    {
+        this(new double[slotCount], output, budget);
+    }
+
+    /**
+     * Constructor for a frame that shares the slots of another, for
+     * code that runs at the same time but uses other variables.
+     * @param slots the other frame's slots.
+     * @param output the output buffer.
+     * @param budget the execution budget.
+     */
+    public Frame(double[] slots, OutputBuffer output, Budget budget)
+    {
+        this.slots = slots;
+        this.output = output;
+        this.budget = budget;
+        this.lineNumber = 0;
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * Iterative executor class for a simple interpreter.
+ *
+ * Statements are executed with an explicit stack of continuation frames
+ * instead of by recursive visits, so the nesting depth of a program is
+ * bounded only by the heap. Each frame is a container statement (COMPOUND
+ * or LOOP) and the index of its next child. Expressions are evaluated
+ * recursively as usual. Evaluation has no side effects, so if an
+ * expression is too deep for the thread stack, it is simply evaluated
+ * again with an explicit operand stack.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class IterativeExecutor extends Executor
+{
+    private Node[] frameNodes;  // container statement of each frame
+    private int[] frameIndexes; // index of each frame's next child
+    private int top;            // index of the top frame
+
+    public IterativeExecutor(Symtab symtab)
+    {
+        super(symtab);
+        initialize();
+    }
+
+    public IterativeExecutor(Symtab symtab, OutputBuffer output)
+    {
+        super(symtab, output);
+        initialize();
+    }
+
+    private void initialize()
+    {
+        frameNodes = new Node[64];
+        frameIndexes = new int[64];
+        top = -1;
+    }
+
+    @Override
+    public Object visit(Node node)
+    {
+        switch (node.type)
+        {
+            case COMPOUND :
+            case LOOP :
+            case IFNODE :
+            case SELECT :
+            {
+                execute(node);
+                return null;
+            }
+
+            default : return super.visit(node);
+        }
+    }
+
+    /**
+     * Execute a statement and everything nested within it
+     * without recursion.
+     * @param statementNode the statement node.
+     */
+    private void execute(Node statementNode)
+    {
+        Node frame = enter(statementNode);
+        if (frame == null) return;
+
+        // The top frame is kept in local variables.
+        // Only suspended frames are on the stack.
+        int bottom = top;
+        ArrayList<Node> children = frame.children;
+        int size = children.size();
+        boolean loop = frame.type == LOOP;
+        int index = 0;
+        int backEdges = 0;
+
+        while (true)
+        {
+            boolean done = false;
+
+            if (index < size)
+            {
+                Node child = children.get(index++);
+
+                // Evaluate the test condition. Stop looping if true.
+                if (child.type == TEST) done = test(child);
+                else
+                {
+                    Node nested = enter(child);
+
+                    // Suspend this frame and start the nested one.
+                    if (nested != null)
+                    {
+                        push(frame, index);
+
+                        frame = nested;
+                        children = frame.children;
+                        size = children.size();
+                        loop = frame.type == LOOP;
+                        index = 0;
+                    }
+                }
+            }
+            else if (loop)
+            {
+                index = 0;  // next iteration
+                
+                if (++backEdges == Budget.BATCH)
+                {
+                    budget.charge(backEdges, frame.lineNumber);
+                    backEdges = 0;
+                }
+            }
+            else done = true;
+
+            // Resume the suspended frame, if any.
+            if (done)
+            {
+                // Charge a finished loop's back edges.
+                if (loop)
+                {
+                    budget.charge(backEdges, frame.lineNumber);
+                    backEdges = 0;
+                }
+                
+                if (top == bottom) return;
+
+                frame = frameNodes[top];
+                index = frameIndexes[top];
+                top--;
+
+                children = frame.children;
+                size = children.size();
+                loop = frame.type == LOOP;
+            }
+        }
+    }
+
+    /**
+     * Start executing a statement. An IF or CASE is replaced by the
+     * statement it selects. A COMPOUND or LOOP is returned to be run
+     * as a new frame. Any other statement is executed immediately.
+     * @param node the statement node.
+     * @return the COMPOUND or LOOP node, or null if the statement is done.
+     */
+    private Node enter(Node node)
+    {
+        while (node != null)
+        {
+            switch (node.type)
+            {
+                case COMPOUND :
+                case LOOP :
+                {
+                    lineNumber = node.lineNumber;
+                    if ((node.type == COMPOUND) && (node.value != null)) parseDeferred(node);
+                    
+                    return node;
+                }
+
+                case IFNODE :
+                {
+                    ArrayList<Node> children = node.children;
+
+                    if (test(children.get(0))) node = children.get(1);
+                    else if (children.size() > 2)  node = children.get(2);
+                    else                           node = null;
+
+                    break;
+                }
+
+                case SELECT :   node = select(node);  break;
+
+                case ASSIGN :   assign(node);         return null;
+                case WRITE :
+                case WRITELN :  write(node);          return null;
+
+                default : return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Suspend a frame.
+     * @param node the frame's COMPOUND or LOOP node.
+     * @param index the index of the frame's next child.
+     */
+    private void push(Node node, int index)
+    {
+        if (++top == frameNodes.length)
+        {
+            frameNodes = Arrays.copyOf(frameNodes, 2*top);
+            frameIndexes = Arrays.copyOf(frameIndexes, 2*top);
+        }
+
+        frameNodes[top] = node;
+        frameIndexes[top] = index;
+    }
+
+    // Each statement below is retried with explicit-stack evaluation
+    // if its expression is too deep for the thread stack.
+
+    private Node select(Node caseNode)
+    {
+        try
+        {
+            return selectBranch(caseNode);
+        }
+        catch (StackOverflowError ex)
+        {
+            return selectBranch(caseNode, evaluate(caseNode.children.get(0)));
+        }
+    }
+
+    private void assign(Node assignNode)
+    {
+        lineNumber = assignNode.lineNumber;
+
+        try
+        {
+            visitAssign(assignNode);
+        }
+        catch (StackOverflowError ex)
+        {
+            double value = evaluate(assignNode.children.get(1));
+            variableEntry(assignNode.children.get(0)).setValue(value);
+        }
+    }
+
+    private void write(Node writeNode)
+    {
+        lineNumber = writeNode.lineNumber;
+
+        try
+        {
+            if (writeNode.type == WRITE) visitWrite(writeNode);
+            else                         visitWriteln(writeNode);
+        }
+        catch (StackOverflowError ex)
+        {
+            // Only a numeric argument can be too deep,
+            // and it's evaluated before anything is printed.
+            printValue(writeNode, evaluate(writeNode.children.get(0)));
+            if (writeNode.type == WRITELN) output.newline();
+        }
+    }
+
+    /**
+     * Evaluate the condition of a TEST node.
+     * @param testNode the TEST node.
+     * @return the value of the condition.
+     */
+    private boolean test(Node testNode)
+    {
+        try
+        {
+            return evalTest(testNode);
+        }
+        catch (StackOverflowError ex)
+        {
+            return evaluate(testNode.children.get(0)) != 0.0;
+        }
+    }
+
+    /**
+     * Evaluate an expression with explicit stacks, in postorder.
+     * Boolean values are 1.0 for true and 0.0 for false.
+     * @param root the root node of the expression.
+     * @return the value of the expression.
+     */
+    private double evaluate(Node root)
+    {
+        Node[] nodes = new Node[16];
+        boolean[] expanded = new boolean[16];
+        double[] values = new double[16];
+        int nodeTop = 0;
+        int valueTop = -1;
+
+        nodes[0] = root;
+
+        while (nodeTop >= 0)
+        {
+            Node node = nodes[nodeTop];
+            ArrayList<Node> children = node.children;
+
+            // First visit of an operator: Evaluate its operands first.
+            if (!expanded[nodeTop] && !children.isEmpty())
+            {
+                expanded[nodeTop] = true;
+
+                if (nodeTop + children.size() >= nodes.length)
+                {
+                    nodes = Arrays.copyOf(nodes, 2*nodes.length);
+                    expanded = Arrays.copyOf(expanded, nodes.length);
+                }
+
+                // Push the operands in reverse so the first is evaluated first.
+                for (int i = children.size() - 1; i >= 0; i--)
+                {
+                    nodes[++nodeTop] = children.get(i);
+                    expanded[nodeTop] = false;
+                }
+
+                continue;
+            }
+
+            nodeTop--;
+
+            if (valueTop + 1 == values.length) values = Arrays.copyOf(values, 2*values.length);
+
+            if (children.isEmpty())
+            {
+                values[++valueTop] = evalDouble(node);  // a leaf
+                continue;
+            }
+
+            double value2 = values[valueTop--];
+
+            if (node.type == NOT)
+            {
+                values[++valueTop] = value2 != 0.0 ? 0.0 : 1.0;
+                continue;
+            }
+
+            double value1 = values[valueTop--];
+            double value;
+
+            switch (node.type)
+            {
+                case ADD :      value = value1 + value2; break;
+                case SUBTRACT : value = value1 - value2; break;
+                case MULTIPLY : value = value1 * value2; break;
+
+                case DIVIDE :
+                case DIV :
+                {
+                    if (value2 == 0.0)
+                    {
+                        runtimeError(node, "Division by zero");
+                        value = 0.0;
+                    }
+                    else if (node.type == DIVIDE) value = value1/value2;
+                    else                          value = Math.floor(value1/value2);
+
+                    break;
+                }
+
+                case EQ :  value = value1 == value2 ? 1.0 : 0.0; break;
+                case NE :  value = value1 != value2 ? 1.0 : 0.0; break;
+                case LT :  value = value1 <  value2 ? 1.0 : 0.0; break;
+                case LTE : value = value1 <= value2 ? 1.0 : 0.0; break;
+                case GT :  value = value1 >  value2 ? 1.0 : 0.0; break;
+                case GTE : value = value1 >= value2 ? 1.0 : 0.0; break;
+
+                case AND : value = (value1 != 0.0) && (value2 != 0.0) ? 1.0 : 0.0; break;
+                case OR :  value = (value1 != 0.0) || (value2 != 0.0) ? 1.0 : 0.0; break;
+
+                default :
+                {
+                    runtimeError(node, "Invalid expression");
+                    value = 0.0;
+                }
+            }
+
+            values[++valueTop] = value;
+        }
+
+        return values[0];
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Limit exceeded class for a simple interpreter.
+ *
+ * Thrown when an execution runs out of its Budget, or when its budget
+ * was cancelled. It's a runtime error, so it stops the program wherever
+ * runtime errors do, but it has its own report and exit status.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+public class LimitExceeded extends RuntimeError
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Which limit was exceeded.
+     */
+    public enum Limit
+    {
+        FUEL, DEADLINE, CANCELLED
+    }
+
+    private Limit limit;
+
+    /**
+     * Constructor.
+     * @param lineNumber the line number of the loop that was running.
+     * @param limit the limit that was exceeded.
+     */
+    public LimitExceeded(int lineNumber, Limit limit)
+    {
+        super(lineNumber,   limit == Limit.FUEL     ? "Out of fuel"
+                          : limit == Limit.DEADLINE ? "Deadline passed"
+                          :                           "Cancelled");
+        this.limit = limit;
+    }
+
+    /**
+     * Getter.
+     * @return the limit that was exceeded.
+     */
+    public Limit getLimit() { return limit; }
+
+    @Override
+    public String report()
+    {
+        return String.format("EXECUTION LIMIT at line %d: %s\n",
+                             getLineNumber(), getMessage());
+    }
+
+    @Override
+    public int exitStatus() { return -3; }
+}
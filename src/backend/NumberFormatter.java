@@ -0,0 +1,152 @@
+/**
+ * Fixed-point number formatter for WRITE and WRITELN.
+ *
+ * It produces exactly what String.format("%w.df", value) produces,
+ * but stores the digits directly into an output buffer without creating
+ * a Formatter, a StringBuilder, or any intermediate strings. Values it
+ * cannot format exactly, such as NaN or values very close to a rounding
+ * tie, are left to java.util.Formatter.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+public class NumberFormatter
+{
+    public static final int MAX_DECIMAL_PLACES = 17;
+
+    private static final double TWO_TO_THE_52 = 4503599627370496.0;
+    private static final double TWO_TO_THE_53 = 9007199254740992.0;
+
+    private static final long[] LONG_POWERS_OF_10 = new long[19];
+    private static final double[] DOUBLE_POWERS_OF_10 = new double[MAX_DECIMAL_PLACES + 1];
+
+    // Formatter localizes digits and the decimal point. Only plain
+    // ASCII digits and '.' are handled here.
+    private static final boolean ENABLED;
+
+    static
+    {
+        long power = 1;
+        for (int i = 0; i < LONG_POWERS_OF_10.length; i++)
+        {
+            LONG_POWERS_OF_10[i] = power;
+            power *= 10;
+        }
+
+        for (int i = 0; i <= MAX_DECIMAL_PLACES; i++)
+        {
+            DOUBLE_POWERS_OF_10[i] = LONG_POWERS_OF_10[i];  // exact
+        }
+
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(
+                                    Locale.getDefault(Locale.Category.FORMAT));
+        ENABLED =    (symbols.getZeroDigit() == '0')
+                  && (symbols.getDecimalSeparator() == '.');
+    }
+
+    /**
+     * Format a value the way "%w.df" would.
+     * @param value the value to format.
+     * @param fieldWidth the field width w, or -1 if none.
+     * @param decimalPlaces the count of decimal places d.
+     * @param out the output buffer.
+     * @return true if formatted, false if the caller must use Formatter.
+     */
+    public static boolean format(double value, int fieldWidth,
+                                 int decimalPlaces, OutputBuffer out)
+    {
+        // A zero width is an error for Formatter. Let it report that.
+        if (   !ENABLED || (fieldWidth == 0)
+            || (decimalPlaces < 0) || (decimalPlaces > MAX_DECIMAL_PLACES)
+            || Double.isNaN(value) || Double.isInfinite(value))
+        {
+            return false;
+        }
+
+        boolean negative = Double.compare(value, 0.0) < 0;  // includes -0.0
+        double magnitude = Math.abs(value);
+
+        long integerPart;
+        long fractionPart;
+
+        // Integral values are exact, so no rounding is involved.
+        if ((magnitude < TWO_TO_THE_53) && (magnitude == Math.rint(magnitude)))
+        {
+            integerPart  = (long) magnitude;
+            fractionPart = 0;
+        }
+        else
+        {
+            double scaled = magnitude*DOUBLE_POWERS_OF_10[decimalPlaces];
+            if (scaled >= TWO_TO_THE_52) return false;
+
+            // Formatter rounds the shortest decimal representation of the
+            // value half-up. That can differ from rounding the binary value
+            // only when the binary value is within an ulp or so of a tie.
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            if (Math.abs(fraction - 0.5) <= 8*Math.ulp(scaled)) return false;
+
+            long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+            long divisor = LONG_POWERS_OF_10[decimalPlaces];
+            integerPart  = rounded/divisor;
+            fractionPart = rounded%divisor;
+        }
+
+        int integerDigits = digitCount(integerPart);
+        int length = (negative ? 1 : 0) + integerDigits
+                   + (decimalPlaces > 0 ? decimalPlaces + 1 : 0);
+        int padding = Math.max(fieldWidth - length, 0);
+
+        if (length + padding > out.capacity()) return false;
+
+        byte[] buffer = out.reserve(length + padding);
+        int start = out.position();
+        int end = start + padding + length;
+
+        for (int i = 0; i < padding; i++) buffer[start + i] = ' ';
+        if (negative) buffer[start + padding] = '-';
+
+        // Store digits from right to left.
+        int p = end;
+        if (decimalPlaces > 0)
+        {
+            for (int i = 0; i < decimalPlaces; i++)
+            {
+                buffer[--p] = (byte) ('0' + fractionPart%10);
+                fractionPart /= 10;
+            }
+            buffer[--p] = '.';
+        }
+
+        do
+        {
+            buffer[--p] = (byte) ('0' + integerPart%10);
+            integerPart /= 10;
+        } while (integerPart > 0);
+
+        out.setPosition(end);
+        return true;
+    }
+
+    /**
+     * @param value a non-negative value.
+     * @return the number of decimal digits in the value.
+     */
+    private static int digitCount(long value)
+    {
+        int count = 1;
+        while ((count < LONG_POWERS_OF_10.length) && (value >= LONG_POWERS_OF_10[count]))
+        {
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Output buffer class for a simple interpreter.
+ *
+ * Program output accumulates in a large reusable byte array that is
+ * written to the underlying stream only when the array is full, when
+ * the program ends, or when a flush is explicitly requested.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Formatter;
+
+public class OutputBuffer
+{
+    public static final int DEFAULT_CAPACITY = 64*1024;
+
+    private static final byte[] LINE_SEPARATOR =
+        System.lineSeparator().getBytes(Charset.defaultCharset());
+
+    private OutputStream sink;  // where flushed bytes go
+    private byte[] buffer;      // pending output bytes
+    private int position;       // count of pending bytes
+
+    private StringBuilder scratch;  // for values that need a Formatter
+    private Formatter formatter;
+
+    /**
+     * Constructor for an output buffer on the standard output.
+     * It bypasses the synchronized System.out print stream.
+     */
+    public OutputBuffer()
+    {
+        this(new FileOutputStream(FileDescriptor.out), DEFAULT_CAPACITY);
+        System.out.flush();  // anything already printed comes first
+    }
+
+    /**
+     * Constructor.
+     * @param sink the output stream to flush to.
+     */
+    public OutputBuffer(OutputStream sink)
+    {
+        this(sink, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param sink the output stream to flush to.
+     * @param capacity the size of the buffer in bytes.
+     */
+    public OutputBuffer(OutputStream sink, int capacity)
+    {
+        this.sink = sink;
+        this.buffer = new byte[capacity];
+        this.position = 0;
+    }
+
+    /**
+     * Append bytes.
+     * @param bytes the bytes to append.
+     */
+    public void write(byte[] bytes)
+    {
+        if (bytes.length > buffer.length - position)
+        {
+            flushBuffer();
+
+            // Too big to ever fit: Write it straight through.
+            if (bytes.length > buffer.length)
+            {
+                writeToSink(bytes, bytes.length);
+                return;
+            }
+        }
+
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Append a string in the platform's default character set.
+     * @param string the string to append.
+     */
+    public void write(String string)
+    {
+        int length = string.length();
+
+        // Fast path for plain ASCII text.
+        if (length <= buffer.length)
+        {
+            reserve(length);
+            int p = position;
+
+            for (int i = 0; i < length; i++)
+            {
+                char ch = string.charAt(i);
+                if (ch >= 0x80)
+                {
+                    write(string.getBytes(Charset.defaultCharset()));
+                    return;
+                }
+
+                buffer[p++] = (byte) ch;
+            }
+
+            position = p;
+        }
+        else write(string.getBytes(Charset.defaultCharset()));
+    }
+
+    /**
+     * Append a value formatted by java.util.Formatter.
+     * @param format the format string.
+     * @param value the value to format.
+     */
+    public void writeFormatted(String format, double value)
+    {
+        if (formatter == null)
+        {
+            scratch = new StringBuilder();
+            formatter = new Formatter(scratch);
+        }
+
+        scratch.setLength(0);
+        formatter.format(format, value);
+        write(scratch.toString());
+    }
+
+    /**
+     * Append the platform's line separator.
+     */
+    public void newline()
+    {
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Make room for bytes that will be stored directly into the buffer.
+     * @param count the number of bytes, at most the buffer's capacity.
+     * @return the buffer to store into, starting at position().
+     */
+    byte[] reserve(int count)
+    {
+        if (count > buffer.length - position) flushBuffer();
+        return buffer;
+    }
+
+    /**
+     * Getter.
+     * @return the index of the next free byte in the buffer.
+     */
+    int position() { return position; }
+
+    /**
+     * Setter, after storing bytes directly into the buffer.
+     * @param position the index of the next free byte.
+     */
+    void setPosition(int position) { this.position = position; }
+
+    /**
+     * Getter.
+     * @return the size of the buffer in bytes.
+     */
+    int capacity() { return buffer.length; }
+
+    /**
+     * Write any pending bytes and flush the underlying stream.
+     */
+    public void flush()
+    {
+        flushBuffer();
+
+        try
+        {
+            sink.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Write the pending bytes to the underlying stream.
+     */
+    private void flushBuffer()
+    {
+        if (position > 0)
+        {
+            writeToSink(buffer, position);
+            position = 0;
+        }
+    }
+
+    private void writeToSink(byte[] bytes, int length)
+    {
+        try
+        {
+            sink.write(bytes, 0, length);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
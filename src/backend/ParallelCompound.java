@@ -0,0 +1,211 @@
+/**
+ * Parallel compound statement class for a simple interpreter.
+ *
+ * Compiled code of a compound statement whose statements fall into
+ * groups that a DependenceAnalysis found independent. Each task runs the
+ * statements of some of the groups in program order, on the common
+ * ForkJoinPool, which steals work for idle threads. The tasks share the
+ * variable slots, since they assign different variables and read none
+ * that another assigns. Each task has its own output buffer, and the
+ * output of each statement is appended in program order at the end.
+ *
+ * If any statement fails, the other tasks are cancelled, the variables
+ * that the compound statement assigns get back their values from before
+ * it, and the statements run again sequentially, which ends with the
+ * same output and runtime error as a sequential run. A runtime error
+ * ends the program, so this costs nothing otherwise. The statements run
+ * sequentially from the start when the execution budget is limited,
+ * since the budget counts back edges in order.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelCompound implements ClosureCompiler.Statement
+{
+    // Estimated node evaluations that must be taken off the longest
+    // group for the tasks to be worth starting. Starting them was
+    // measured to cost about as much as 10000 node evaluations.
+    public static final long THRESHOLD = 100_000;
+
+    private static final int NO_LINE = -1;
+    private static final int OUTPUT_CAPACITY = 4*1024;
+
+    /**
+     * One execution of a task.
+     */
+    private class Part
+    {
+        final int[] indexes;  // of the task's statements
+        final ByteArrayOutputStream bytes;
+        final Frame frame;
+        final int[] starts;   // of each statement's output in the bytes
+        final int[] ends;
+        final int[] lines;    // line number that each statement left, or NO_LINE
+
+        Part(int[] indexes, Frame compoundFrame, Budget shared)
+        {
+            this.indexes = indexes;
+            this.bytes = new ByteArrayOutputStream();
+            this.frame = new Frame(compoundFrame.slots,
+                                   new OutputBuffer(bytes, OUTPUT_CAPACITY),
+                                   new Budget(shared));
+            this.starts = new int[indexes.length];
+            this.ends = new int[indexes.length];
+            this.lines = new int[indexes.length];
+        }
+
+        /**
+         * Run the task's statements, until one fails or the
+         * shared budget is cancelled.
+         * @param shared the budget that the tasks share.
+         */
+        void run(Budget shared)
+        {
+            try
+            {
+                for (int i = 0; (i < indexes.length) && !shared.isCancelled(); i++)
+                {
+                    int k = indexes[i];
+
+                    if (printing[k])
+                    {
+                        frame.output.flush();
+                        starts[i] = bytes.size();
+                    }
+
+                    // A line number is only needed for an error report,
+                    // and the statements rerun after an error.
+                    frame.lineNumber = NO_LINE;
+                    statements[k].execute(frame);
+                    lines[i] = frame.lineNumber;
+
+                    if (printing[k])
+                    {
+                        frame.output.flush();
+                        ends[i] = bytes.size();
+                    }
+                }
+            }
+            catch (RuntimeError | StackOverflowError error)
+            {
+                shared.cancel();
+            }
+        }
+    }
+
+    private final int line;
+    private final ClosureCompiler.Statement[] statements;
+    private final boolean[] printing;   // true if the statement may write
+    private final int[][] tasks;        // statement indexes of each task
+    private final int[] taskOf;         // by statement
+    private final int[] positionOf;     // in its task, by statement
+    private final int[] writtenSlots;   // of the variables that the statements assign
+
+    /**
+     * Constructor.
+     * @param line the line number of the compound statement.
+     * @param statements the compiled statements.
+     * @param printing true for each statement that may write output.
+     * @param tasks the indexes of the statements of each task, in
+     *              program order.
+     * @param writtenSlots the slots of the variables that the
+     *                     statements assign.
+     */
+    public ParallelCompound(int line, ClosureCompiler.Statement[] statements,
+                            boolean[] printing, int[][] tasks, int[] writtenSlots)
+    {
+        this.line = line;
+        this.statements = statements;
+        this.printing = printing;
+        this.tasks = tasks;
+        this.writtenSlots = writtenSlots;
+        this.taskOf = new int[statements.length];
+        this.positionOf = new int[statements.length];
+
+        for (int t = 0; t < tasks.length; t++)
+        {
+            for (int i = 0; i < tasks[t].length; i++)
+            {
+                taskOf[tasks[t][i]] = t;
+                positionOf[tasks[t][i]] = i;
+            }
+        }
+    }
+
+    @Override
+    public void execute(Frame frame)
+    {
+        frame.lineNumber = line;
+
+        if ((ForkJoinPool.getCommonPoolParallelism() < 2) || frame.budget.isLimited())
+        {
+            for (ClosureCompiler.Statement statement : statements) statement.execute(frame);
+            return;
+        }
+
+        double[] saved = new double[writtenSlots.length];
+        for (int i = 0; i < saved.length; i++) saved[i] = frame.slots[writtenSlots[i]];
+
+        Budget shared = new Budget(frame.budget);
+        Part[] parts = new Part[tasks.length];
+        ForkJoinTask<?>[] forks = new ForkJoinTask<?>[tasks.length];
+
+        for (int t = 0; t < tasks.length; t++)
+        {
+            Part part = new Part(tasks[t], frame, shared);
+
+            parts[t] = part;
+            forks[t] = ForkJoinTask.adapt(() -> part.run(shared));
+        }
+
+        // A nested parallel statement is already on a pool thread.
+        if (ForkJoinTask.inForkJoinPool()) ForkJoinTask.invokeAll(forks);
+        else ForkJoinPool.commonPool()
+                         .invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(forks)));
+
+        if (shared.isCancelled())
+        {
+            for (int i = 0; i < saved.length; i++) frame.slots[writtenSlots[i]] = saved[i];
+
+            frame.lineNumber = line;
+            for (ClosureCompiler.Statement statement : statements) statement.execute(frame);
+            return;
+        }
+
+        // Append the output in program order.
+        byte[][] bytes = new byte[parts.length][];
+        for (int t = 0; t < parts.length; t++) bytes[t] = parts[t].bytes.toByteArray();
+
+        for (int k = 0; k < statements.length; k++)
+        {
+            if (printing[k])
+            {
+                Part part = parts[taskOf[k]];
+                int i = positionOf[k];
+
+                frame.output.write(Arrays.copyOfRange(bytes[taskOf[k]],
+                                                      part.starts[i], part.ends[i]));
+            }
+        }
+
+        // The compound statement leaves the last line number recorded.
+        for (int k = statements.length - 1; k >= 0; k--)
+        {
+            int recorded = parts[taskOf[k]].lines[positionOf[k]];
+
+            if (recorded != NO_LINE)
+            {
+                frame.lineNumber = recorded;
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Parallel FOR loop class for a simple interpreter.
+ *
+ * Compiled code of a FOR loop whose iterations a DependenceAnalysis
+ * found independent. The iterations are split into consecutive chunks
+ * that run on the common ForkJoinPool, each with its own copy of the
+ * variable slots and its own output buffer. The chunks' output is then
+ * appended in iteration order, and the variables that the loop assigns
+ * get the values that the last chunk left, which are those that the
+ * sequential loop would leave. The loop doesn't store into any other
+ * slot, so other code may use those at the same time. If a chunk fails
+ * with a runtime error, the output of the earlier chunks and of the
+ * chunk up to the error is kept and the error is thrown, as if the loop
+ * had run sequentially. The budgets of the later chunks are cancelled
+ * then, since the sequential loop would never have run their iterations,
+ * which may not even end.
+ *
+ * The loop runs sequentially instead when it's too cheap to be worth
+ * splitting, when the values of the control variable might not be
+ * exact, or when the execution budget is limited, since the budget
+ * counts back edges in order.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelFor implements ClosureCompiler.Statement
+{
+    public static final long THRESHOLD = 100_000;  // estimated node evaluations
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final double MAX_EXACT = 1 << 30;  // control variable magnitude
+
+    /**
+     * A chunk of consecutive iterations.
+     */
+    private class Chunk
+    {
+        final long first;     // index of the first iteration
+        final long count;     // number of iterations
+        final Budget budget;  // cancelled if an earlier chunk fails
+        Frame frame;
+        ByteArrayOutputStream bytes;
+        Throwable error;      // RuntimeError or StackOverflowError, or null
+
+        Chunk(long first, long count, Budget budget)
+        {
+            this.first = first;
+            this.count = count;
+            this.budget = budget;
+        }
+
+        /**
+         * Run the chunk's iterations with a copy of the loop's frame.
+         * @param loopFrame the frame of the loop.
+         * @param start the value of the control variable at the start.
+         */
+        void run(Frame loopFrame, double start)
+        {
+            bytes = new ByteArrayOutputStream();
+            frame = new Frame(loopFrame.slots.length, new OutputBuffer(bytes), budget);
+            error = null;
+
+            System.arraycopy(loopFrame.slots, 0, frame.slots, 0, frame.slots.length);
+            frame.lineNumber = loopFrame.lineNumber;
+
+            // As after the increment of the previous iteration.
+            if (first > 0)
+            {
+                frame.slots[slot] = up ? start + first : start - first;
+                frame.lineNumber = incrementLine;
+            }
+
+            try
+            {
+                for (long i = 0; i < count; i++)
+                {
+                    body.execute(frame);
+                    increment.execute(frame);
+                }
+            }
+            catch (RuntimeError | StackOverflowError caught)
+            {
+                error = caught;
+            }
+
+            frame.output.flush();
+        }
+    }
+
+    private final int slot;            // of the control variable
+    private final boolean up;          // TO, or else DOWNTO
+    private final ClosureCompiler.NumberExpression limit;
+    private final ClosureCompiler.Statement body;
+    private final ClosureCompiler.Statement increment;
+    private final int incrementLine;
+    private final int[] writtenSlots;  // of the variables that the loop assigns
+    private final long cost;           // estimated cost of an iteration
+    private final ClosureCompiler.Statement sequential;  // the same loop
+
+    /**
+     * Constructor.
+     * @param slot the slot of the control variable.
+     * @param up true for a TO loop, false for DOWNTO.
+     * @param limit the limit of the control variable.
+     * @param body the body.
+     * @param increment the increment or decrement of the control variable.
+     * @param incrementLine the line number that the increment records.
+     * @param writtenSlots the slots of the variables that the loop assigns,
+     *                     including the control variable.
+     * @param cost the estimated cost of an iteration.
+     * @param sequential the loop compiled to run sequentially.
+     */
+    public ParallelFor(int slot, boolean up, ClosureCompiler.NumberExpression limit,
+                       ClosureCompiler.Statement body, ClosureCompiler.Statement increment,
+                       int incrementLine, int[] writtenSlots, long cost,
+                       ClosureCompiler.Statement sequential)
+    {
+        this.slot = slot;
+        this.up = up;
+        this.limit = limit;
+        this.body = body;
+        this.increment = increment;
+        this.incrementLine = incrementLine;
+        this.writtenSlots = writtenSlots;
+        this.cost = Math.max(cost, 1);
+        this.sequential = sequential;
+    }
+
+    @Override
+    public void execute(Frame frame)
+    {
+        double start = frame.slots[slot];
+        long iterations = iterationCount(start, limit.evaluate(frame));
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+
+        if (   (iterations < 2) || (threads < 2) || (iterations < THRESHOLD/cost)
+            || frame.budget.isLimited())
+        {
+            sequential.execute(frame);
+            return;
+        }
+
+        int chunkCount = (int) Math.min(iterations, threads*CHUNKS_PER_THREAD);
+        Chunk[] chunks = new Chunk[chunkCount];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunkCount];
+
+        for (int c = 0; c < chunkCount; c++)
+        {
+            long first = iterations*c/chunkCount;
+            long next  = iterations*(c + 1)/chunkCount;
+            chunks[c] = new Chunk(first, next - first, new Budget(frame.budget));
+        }
+
+        for (int c = 0; c < chunkCount; c++)
+        {
+            Chunk chunk = chunks[c];
+            int later = c + 1;
+
+            tasks[c] = ForkJoinTask.adapt(() -> {
+                chunk.run(frame, start);
+
+                if (chunk.error instanceof RuntimeError)
+                {
+                    for (int k = later; k < chunkCount; k++) chunks[k].budget.cancel();
+                }
+            });
+        }
+
+        // A nested parallel loop is already on a pool thread.
+        if (ForkJoinTask.inForkJoinPool()) ForkJoinTask.invokeAll(tasks);
+        else ForkJoinPool.commonPool()
+                         .invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        // Combine the chunks in iteration order.
+        for (Chunk chunk : chunks)
+        {
+            // A pool thread's stack is small, so rerun a chunk
+            // that overflowed it on this thread.
+            if (chunk.error instanceof StackOverflowError) chunk.run(frame, start);
+
+            frame.output.write(chunk.bytes.toByteArray());
+
+            if (chunk.error instanceof StackOverflowError) throw (StackOverflowError) chunk.error;
+            if (chunk.error != null) throw (RuntimeError) chunk.error;
+        }
+
+        Frame last = chunks[chunkCount - 1].frame;
+        for (int written : writtenSlots) frame.slots[written] = last.slots[written];
+        frame.lineNumber = last.lineNumber;
+    }
+
+    /**
+     * Count the iterations of the loop, if the control variable takes
+     * exact integer values.
+     * @param start the value of the control variable at the start.
+     * @param limitValue the value of the limit.
+     * @return the number of iterations, or -1 if they can't be counted.
+     */
+    private long iterationCount(double start, double limitValue)
+    {
+        double last = up ? Math.floor(limitValue) : Math.ceil(limitValue);
+
+        if (   (start != Math.rint(start)) || !(Math.abs(start) < MAX_EXACT)
+            || !(Math.abs(last) < MAX_EXACT))
+        {
+            return -1;
+        }
+
+        long count = (long) (up ? last - start : start - last) + 1;
+        return Math.max(count, 0);
+    }
+}
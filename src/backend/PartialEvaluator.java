@@ -0,0 +1,249 @@
+/**
+ * Partial evaluator class for a simple interpreter.
+ *
+ * A program reads no input, so the statements at the start of its
+ * main compound statement compute the same values and print the same
+ * output on every run. The partial evaluator executes them in advance,
+ * one at a time, with a limited amount of fuel, and replaces them with
+ * assignments of the resulting variable values and a single write of
+ * the output that they printed. It stops before the first statement
+ * that runs out of fuel, fails with a runtime error, or prints too
+ * much, and leaves that statement and the rest to run normally.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class PartialEvaluator extends Executor
+{
+    public static final long DEFAULT_FUEL = 1_000_000;  // node visits
+    public static final int  MAX_OUTPUT   = 1 << 20;    // bytes
+
+    /**
+     * Thrown when a statement can't be evaluated in advance.
+     */
+    private static class OutOfFuel extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        OutOfFuel() { super(null, null, false, false); }
+    }
+
+    /**
+     * Output stream that refuses to grow past the output limit.
+     */
+    private static class BoundedOutput extends ByteArrayOutputStream
+    {
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length)
+        {
+            if (count + length > MAX_OUTPUT) throw new OutOfFuel();
+            super.write(bytes, offset, length);
+        }
+    }
+
+    private long fuel;
+    private int evaluatedCount;  // statements evaluated in advance
+    private BoundedOutput rendered;
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table.
+     */
+    public PartialEvaluator(Symtab symtab)
+    {
+        this(symtab, DEFAULT_FUEL);
+    }
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table.
+     * @param fuel the number of node visits that the evaluation may take.
+     */
+    public PartialEvaluator(Symtab symtab, long fuel)
+    {
+        this(symtab, fuel, new BoundedOutput());
+    }
+
+    private PartialEvaluator(Symtab symtab, long fuel, BoundedOutput rendered)
+    {
+        super(symtab, new OutputBuffer(rendered));
+        this.fuel = fuel;
+        this.rendered = rendered;
+    }
+
+    /**
+     * Getter.
+     * @return the number of statements that the last evaluation
+     *         replaced.
+     */
+    public int evaluatedCount() { return evaluatedCount; }
+
+    /**
+     * Evaluate the input-independent prefix of a program. The variables
+     * are all 0.0 again afterwards.
+     * @param programNode the program's parse tree, whose nodes the
+     *                    residual program may share.
+     * @return the parse tree of the residual program, or the original
+     *         one if no statement could be evaluated in advance.
+     */
+    public Node evaluate(Node programNode)
+    {
+        Node compoundNode = programNode.children.get(0);
+        ArrayList<Node> statements = compoundNode.children;
+        LinkedHashSet<SymtabEntry> assigned = new LinkedHashSet<>();
+
+        lineNumber = compoundNode.lineNumber;
+        int committedLine = lineNumber;
+        int committedOutput = 0;
+        evaluatedCount = 0;
+
+        while (evaluatedCount < statements.size())
+        {
+            Node statementNode = statements.get(evaluatedCount);
+
+            // Save the variables that the statement can change.
+            LinkedHashSet<SymtabEntry> targets = new LinkedHashSet<>();
+            IdentityHashMap<SymtabEntry, Double> saved = new IdentityHashMap<>();
+
+            try
+            {
+                assignmentTargets(statementNode, targets);
+                for (SymtabEntry entry : targets) saved.put(entry, entry.getValue());
+
+                visit(statementNode);
+                output.flush();
+            }
+            catch (OutOfFuel | RuntimeError | StackOverflowError error)
+            {
+                // Undo the statement.
+                saved.forEach(SymtabEntry::setValue);
+                break;
+            }
+
+            assigned.addAll(targets);
+            committedLine = lineNumber;
+            committedOutput = rendered.size();
+            evaluatedCount++;
+        }
+
+        byte[] bytes = Arrays.copyOf(rendered.toByteArray(), committedOutput);
+        String text = new String(bytes, Charset.defaultCharset());
+
+        // The output must survive the round trip through a string constant.
+        if (!Arrays.equals(text.getBytes(Charset.defaultCharset()), bytes))
+        {
+            evaluatedCount = 0;
+        }
+
+        Node residualNode = evaluatedCount > 0
+                          ? residual(programNode, assigned, committedLine, text)
+                          : programNode;
+
+        for (SymtabEntry entry : assigned) entry.setValue(0.0);
+        return residualNode;
+    }
+
+    @Override
+    public Object visit(Node node)
+    {
+        if (--fuel < 0) throw new OutOfFuel();
+        return super.visit(node);
+    }
+
+    /**
+     * Build the residual program.
+     * @param programNode the original program.
+     * @param assigned the variables that the evaluated statements assigned.
+     * @param line the line number current after the evaluated statements.
+     * @param text the output that the evaluated statements printed.
+     * @return the residual program's parse tree.
+     */
+    private Node residual(Node programNode, LinkedHashSet<SymtabEntry> assigned,
+                          int line, String text)
+    {
+        Node compoundNode = programNode.children.get(0);
+
+        Node prefixNode = new Node(COMPOUND);
+        prefixNode.lineNumber = line;
+
+        // Variables that are still +0.0 need no assignment.
+        for (SymtabEntry entry : assigned)
+        {
+            double value = entry.getValue();
+            if (Double.doubleToRawLongBits(value) == 0) continue;
+
+            Node variableNode = new Node(VARIABLE);
+            variableNode.text = entry.getName();
+            variableNode.entry = entry;
+
+            Node constantNode = new Node(REAL_CONSTANT);
+            constantNode.value = value;
+
+            Node assignNode = new Node(ASSIGN);
+            assignNode.lineNumber = line;
+            assignNode.adopt(variableNode);
+            assignNode.adopt(constantNode);
+            prefixNode.adopt(assignNode);
+        }
+
+        if (!text.isEmpty())
+        {
+            Node stringNode = new Node(STRING_CONSTANT);
+            stringNode.value = text;
+
+            Node writeNode = new Node(WRITE);
+            writeNode.lineNumber = line;
+            writeNode.adopt(stringNode);
+            prefixNode.adopt(writeNode);
+        }
+
+        Node newCompoundNode = new Node(COMPOUND);
+        newCompoundNode.lineNumber = compoundNode.lineNumber;
+        newCompoundNode.adopt(prefixNode);
+
+        ArrayList<Node> statements = compoundNode.children;
+        for (int i = evaluatedCount; i < statements.size(); i++)
+        {
+            newCompoundNode.adopt(statements.get(i));
+        }
+
+        Node newProgramNode = new Node(PROGRAM);
+        newProgramNode.lineNumber = programNode.lineNumber;
+        newProgramNode.text = programNode.text;
+        newProgramNode.adopt(newCompoundNode);
+
+        return newProgramNode;
+    }
+
+    /**
+     * Collect the entries of the variables that a statement assigns.
+     * @param node the statement's parse tree.
+     * @param targets the set to add the entries to.
+     */
+    private void assignmentTargets(Node node, LinkedHashSet<SymtabEntry> targets)
+    {
+        // An empty statement, such as a CASE branch's, has no node.
+        if (node == null) return;
+
+        if (node.type == ASSIGN)
+        {
+            targets.add(variableEntry(node.children.get(0)));
+            return;
+        }
+
+        for (Node child : node.children) assignmentTargets(child, targets);
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Execution profile of a program for a simple interpreter.
+ *
+ * A profile holds counters per parse tree node: how many times each
+ * statement executed, how many times each TEST condition was evaluated
+ * and how many of those were true, and how many times each branch of a
+ * SELECT was taken. A profile can be saved and loaded again by a later
+ * run of the same program, so that run can specialize up front. Nodes
+ * are identified in the file by their preorder position in the parse
+ * tree, and the file records the content hash of the program source, so
+ * a profile of an edited program is never applied.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class Profile
+{
+    private static final int MAGIC = 0x53505246;  // "SPRF"
+    private static final int VERSION = 1;
+
+    // Counters of a statement:   { executions }
+    // Counters of a TEST node:   { evaluations, true outcomes }
+    // Counters of a SELECT node: { executions, times no branch matched,
+    //                              times branch 1 was taken, ... }
+    private IdentityHashMap<Node, long[]> counters;
+
+    public Profile()
+    {
+        this.counters = new IdentityHashMap<>();
+    }
+
+    /**
+     * Getter.
+     * @param node a parse tree node.
+     * @return the node's counters, or null if it has none.
+     */
+    public long[] counters(Node node) { return counters.get(node); }
+
+    /**
+     * Get a node's counters, and create them if it has none yet.
+     * @param node the parse tree node.
+     * @param size the number of counters.
+     * @return the counters.
+     */
+    long[] counters(Node node, int size)
+    {
+        long[] nodeCounters = counters.get(node);
+
+        if (nodeCounters == null)
+        {
+            nodeCounters = new long[size];
+            counters.put(node, nodeCounters);
+        }
+
+        return nodeCounters;
+    }
+
+    /**
+     * @param node a statement node.
+     * @return the number of times it executed.
+     */
+    public long executions(Node node)
+    {
+        long[] nodeCounters = counters.get(node);
+        return nodeCounters != null ? nodeCounters[0] : 0;
+    }
+
+    /**
+     * @param testNode a TEST node.
+     * @return the fraction of its evaluations that were true,
+     *         or -1 if it was never evaluated.
+     */
+    public double trueRatio(Node testNode)
+    {
+        long[] nodeCounters = counters.get(testNode);
+
+        if ((nodeCounters == null) || (nodeCounters.length < 2) || (nodeCounters[0] == 0))
+        {
+            return -1;
+        }
+
+        return (double) nodeCounters[1]/nodeCounters[0];
+    }
+
+    /**
+     * @param loopNode a LOOP node.
+     * @return the number of iterations of the loop in all its executions.
+     */
+    public long iterations(Node loopNode)
+    {
+        long iterations = 0;
+
+        for (Node child : loopNode.children)
+        {
+            if ((child != null) && (child.type == TEST))
+            {
+                long[] nodeCounters = counters.get(child);
+                if (nodeCounters != null) iterations = Math.max(iterations, nodeCounters[0]);
+            }
+        }
+
+        return iterations;
+    }
+
+    /**
+     * @param selectNode a SELECT node.
+     * @return the index of its most often taken SELECT_BRANCH child,
+     *         or -1 if no branch was ever taken.
+     */
+    public int hottestBranch(Node selectNode)
+    {
+        long[] nodeCounters = counters.get(selectNode);
+        if (nodeCounters == null) return -1;
+
+        int hottest = -1;
+        long most = 0;
+
+        for (int i = 1; i < nodeCounters.length - 1; i++)
+        {
+            if (nodeCounters[i + 1] > most)
+            {
+                hottest = i;
+                most = nodeCounters[i + 1];
+            }
+        }
+
+        return hottest;
+    }
+
+    /**
+     * Compute the content hash of a program source.
+     * @param sourceFileName the source file name.
+     * @return the hash.
+     * @throws IOException if the source can't be read.
+     */
+    public static byte[] hash(String sourceFileName) throws IOException
+    {
+        try (InputStream in = new FileInputStream(sourceFileName))
+        {
+            return MessageDigest.getInstance("SHA-256").digest(in.readAllBytes());
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Make the name of a program's profile file from its content hash.
+     * @param hash the content hash.
+     * @return the file name.
+     */
+    public static String fileName(byte[] hash)
+    {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) name.append(String.format("%02x", b));
+
+        return name.append(".prof").toString();
+    }
+
+    /**
+     * Save the profile.
+     * @param file the profile file.
+     * @param programNode the root of the program's parse tree.
+     * @param hash the content hash of the program source.
+     * @throws IOException if the file can't be written.
+     */
+    public void save(File file, Node programNode, byte[] hash) throws IOException
+    {
+        ArrayList<Node> nodes = preorder(programNode);
+        IdentityHashMap<Node, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) positions.put(nodes.get(i), i);
+
+        try (DataOutputStream out = new DataOutputStream(
+                                        new BufferedOutputStream(
+                                            new FileOutputStream(file))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hash.length);
+            out.write(hash);
+            out.writeInt(nodes.size());
+            out.writeInt(counters.size());
+
+            for (Map.Entry<Node, long[]> entry : counters.entrySet())
+            {
+                long[] nodeCounters = entry.getValue();
+
+                out.writeInt(positions.get(entry.getKey()));
+                out.writeInt(nodeCounters.length);
+                for (long counter : nodeCounters) out.writeLong(counter);
+            }
+        }
+    }
+
+    /**
+     * Load a saved profile.
+     * @param file the profile file.
+     * @param programNode the root of the program's parse tree.
+     * @param hash the content hash of the program source.
+     * @return the profile, or null if the file doesn't exist, is damaged,
+     *         or is the profile of a different program.
+     */
+    public static Profile load(File file, Node programNode, byte[] hash)
+    {
+        if (!file.isFile()) return null;
+
+        ArrayList<Node> nodes = preorder(programNode);
+        Profile profile = new Profile();
+
+        try (DataInputStream in = new DataInputStream(
+                                      new BufferedInputStream(
+                                          new FileInputStream(file))))
+        {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) return null;
+
+            byte[] savedHash = new byte[in.readInt()];
+            in.readFully(savedHash);
+            if (!Arrays.equals(savedHash, hash) || (in.readInt() != nodes.size())) return null;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                int position = in.readInt();
+                long[] nodeCounters = new long[in.readInt()];
+                for (int j = 0; j < nodeCounters.length; j++) nodeCounters[j] = in.readLong();
+
+                if ((position < 0) || (position >= nodes.size())) return null;
+                profile.counters.put(nodes.get(position), nodeCounters);
+            }
+        }
+        catch (IOException | NegativeArraySizeException ex)
+        {
+            return null;
+        }
+
+        return profile;
+    }
+
+    /**
+     * List the nodes of a parse tree in preorder, without recursion.
+     * @param root the root node.
+     * @return the list of nodes.
+     */
+    private static ArrayList<Node> preorder(Node root)
+    {
+        ArrayList<Node> nodes = new ArrayList<>();
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            nodes.add(node);
+
+            for (int i = node.children.size() - 1; i >= 0; i--)
+            {
+                Node child = node.children.get(i);
+                if (child != null) stack.add(child);
+            }
+        }
+
+        return nodes;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Profiling executor class for a simple interpreter.
+ *
+ * Executes a program in the tree walker while counting statement
+ * executions, TEST outcomes and SELECT branches into a Profile.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+
+import intermediate.*;
+
+public class ProfilingExecutor extends Executor
+{
+    private Profile collected;  // profile being collected
+
+    public ProfilingExecutor(Symtab symtab)
+    {
+        this(symtab, new OutputBuffer());
+    }
+
+    public ProfilingExecutor(Symtab symtab, OutputBuffer output)
+    {
+        super(symtab, output);
+        this.collected = new Profile();
+    }
+
+    /**
+     * Getter.
+     * @return the profile of the execution so far.
+     */
+    public Profile profile() { return collected; }
+
+    @Override
+    public Object visit(Node node)
+    {
+        switch (node.type)
+        {
+            case COMPOUND :
+            case ASSIGN :
+            case LOOP :
+            case WRITE :
+            case WRITELN :
+            case IFNODE :  collected.counters(node, 1)[0]++;  break;
+
+            default : break;
+        }
+
+        return super.visit(node);
+    }
+
+    @Override
+    protected boolean evalTest(Node testNode)
+    {
+        boolean condition = super.evalTest(testNode);
+
+        long[] counters = collected.counters(testNode, 2);
+        counters[0]++;
+        if (condition) counters[1]++;
+
+        return condition;
+    }
+
+    @Override
+    protected Node selectBranch(Node caseNode, double value)
+    {
+        Node statementNode = super.selectBranch(caseNode, value);
+        ArrayList<Node> children = caseNode.children;
+
+        long[] counters = collected.counters(caseNode, children.size() + 1);
+        counters[0]++;
+
+        // Find the taken branch. No match counts as branch 0.
+        int taken = 0;
+        if (statementNode != null)
+        {
+            for (int i = 1; i < children.size(); i++)
+            {
+                if (children.get(i).children.get(1) == statementNode)
+                {
+                    taken = i;
+                    break;
+                }
+            }
+        }
+
+        counters[taken + 1]++;
+        return statementNode;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Result cache class for a simple interpreter.
+ *
+ * A program reads no input and can't see the clock, so its output and
+ * exit status depend only on its source, the interpreter, and the
+ * default character set, line separator and locale that format the
+ * output. The cache stores the exact output bytes and exit status of a
+ * run in a directory, in one file per program named by a content hash
+ * of all of those. A later run of the same program streams the stored
+ * output instead of executing. The modification time of a file marks
+ * its last use, and the least recently used files are deleted when the
+ * directory grows past its size limit. A file is written under a
+ * temporary name and then renamed, so a reader never sees half of one.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+public class ResultCache
+{
+    // Change whenever a change to the interpreter can change what a
+    // program prints, so that older results are never replayed.
+    public static final int ENGINE_VERSION = 1;
+
+    public static final File DEFAULT_DIRECTORY =
+        new File(System.getProperty("user.home"), ".simple-cache");
+    public static final long DEFAULT_MAX_SIZE  = 64L << 20;  // bytes in all
+    public static final int  MAX_RESULT_SIZE   = 8 << 20;    // bytes of output
+
+    private static final int MAGIC = 0x53525354;  // "SRST"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".result";
+
+    private File directory;
+    private long maxSize;
+
+    /**
+     * Output stream that passes the program's output through and
+     * records a copy of it, unless it grows too big to cache.
+     */
+    public static class Recorder extends OutputStream
+    {
+        private OutputStream sink;
+        private ByteArrayOutputStream copy;  // null if too big
+
+        /**
+         * Constructor.
+         * @param sink the stream to pass the output to.
+         */
+        public Recorder(OutputStream sink)
+        {
+            this.sink = sink;
+            this.copy = new ByteArrayOutputStream();
+        }
+
+        /**
+         * @return the output recorded so far, or null if it's too big.
+         */
+        public byte[] recorded() { return copy != null ? copy.toByteArray() : null; }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+        {
+            sink.write(bytes, offset, length);
+
+            if (copy != null)
+            {
+                if (copy.size() + length > MAX_RESULT_SIZE) copy = null;
+                else copy.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException { sink.flush(); }
+    }
+
+    /**
+     * Constructor.
+     * @param directory the cache directory, created when needed.
+     * @param maxSize the size limit of the cached results in bytes.
+     */
+    public ResultCache(File directory, long maxSize)
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Compute the key of a program's cached result.
+     * @param sourceFileName the source file name.
+     * @return the key.
+     * @throws IOException if the source can't be read.
+     */
+    public static byte[] key(String sourceFileName) throws IOException
+    {
+        try (InputStream in = new FileInputStream(sourceFileName))
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(in.readAllBytes());
+
+            String environment = "\0" + ENGINE_VERSION
+                               + "\0" + Charset.defaultCharset().name()
+                               + "\0" + System.lineSeparator()
+                               + "\0" + Locale.getDefault(Locale.Category.FORMAT).toLanguageTag();
+            return digest.digest(environment.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Write a program's cached output.
+     * @param key the program's key.
+     * @param out the stream to write the output to.
+     * @return the program's exit status, or null if no result is cached.
+     * @throws IOException if the output can't be written.
+     */
+    public Integer replay(byte[] key, OutputStream out) throws IOException
+    {
+        File file = file(key);
+        if (!file.isFile()) return null;
+
+        int status;
+
+        try (DataInputStream in = new DataInputStream(
+                                      new BufferedInputStream(
+                                          new FileInputStream(file))))
+        {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) return null;
+
+            if (in.readInt() != key.length) return null;
+            byte[] savedKey = new byte[key.length];
+            in.readFully(savedKey);
+            if (!Arrays.equals(savedKey, key)) return null;
+
+            status = in.readInt();
+            long length = in.readLong();
+            long headerSize = 4 + 4 + 4 + key.length + 4 + 8;
+            if (file.length() != headerSize + length) return null;
+
+            file.setLastModified(System.currentTimeMillis());
+            in.transferTo(out);
+            out.flush();
+        }
+        catch (EOFException | FileNotFoundException ex)
+        {
+            return null;  // damaged, or just evicted
+        }
+
+        return status;
+    }
+
+    /**
+     * Store a program's result, and evict the least recently used
+     * results if the cache grew too big.
+     * @param key the program's key.
+     * @param output the program's output bytes.
+     * @param status the program's exit status.
+     * @throws IOException if the result can't be written.
+     */
+    public void store(byte[] key, byte[] output, int status) throws IOException
+    {
+        if (output.length > MAX_RESULT_SIZE) return;
+
+        Files.createDirectories(directory.toPath());
+        File temporary = File.createTempFile("store", ".tmp", directory);
+
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(
+                                            new BufferedOutputStream(
+                                                new FileOutputStream(temporary))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(status);
+                out.writeLong(output.length);
+                out.write(output);
+            }
+
+            Files.move(temporary.toPath(), file(key).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            temporary.delete();
+        }
+
+        evict();
+    }
+
+    /**
+     * Delete the least recently used results until the rest fit.
+     */
+    private void evict()
+    {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+
+        long size = 0;
+        for (File file : files) size += file.length();
+        if (size <= maxSize) return;
+
+        long[] used = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++)
+        {
+            used[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> used[i]));
+
+        for (int i = 0; (i < order.length) && (size > maxSize); i++)
+        {
+            File file = files[order[i]];
+            long length = file.length();
+
+            if (file.delete()) size -= length;
+        }
+    }
+
+    private File file(byte[] key)
+    {
+        StringBuilder name = new StringBuilder();
+        for (byte b : key) name.append(String.format("%02x", b));
+
+        return new File(directory, name.append(SUFFIX).toString());
+    }
+}
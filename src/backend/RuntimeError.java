@@ -0,0 +1,61 @@
+/**
+ * Runtime error class for a simple interpreter.
+ *
+ * Thrown wherever execution detects an error, such as division by zero,
+ * and caught where the program's execution began.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+public class RuntimeError extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private int lineNumber;
+
+    /**
+     * Constructor.
+     * @param lineNumber the line number of the current statement.
+     * @param message the error message.
+     * @param text the text of the node in error.
+     */
+    public RuntimeError(int lineNumber, String message, String text)
+    {
+        super(message + ": " + text, null, false, false);  // no stack trace
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Constructor for an error without a node.
+     * @param lineNumber the line number of the current statement.
+     * @param message the error message.
+     */
+    protected RuntimeError(int lineNumber, String message)
+    {
+        super(message, null, false, false);  // no stack trace
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Getter.
+     * @return the line number of the current statement.
+     */
+    public int getLineNumber() { return lineNumber; }
+
+    /**
+     * @return the error as printed for the user.
+     */
+    public String report()
+    {
+        return String.format("RUNTIME ERROR at line %d: %s\n",
+                             lineNumber, getMessage());
+    }
+
+    /**
+     * @return the exit status of a program that the error ends.
+     */
+    public int exitStatus() { return -2; }
+}
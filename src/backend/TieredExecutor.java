@@ -0,0 +1,158 @@
+/**
+ * Tiered executor class for a simple interpreter.
+ *
+ * Programs start out in the tree walker, so cold code runs immediately.
+ * Each LOOP node counts its back edges, across every time it is entered.
+ * When a loop becomes hot, its subtree is compiled by the ClosureCompiler
+ * and the loop continues in compiled code from the next iteration on:
+ * the live values of the loop's variables are moved from the symbol table
+ * into a Frame, and moved back when the loop exits (on-stack replacement).
+ * Later entries to the loop go straight to the compiled code, and so do
+ * the first entries of loops that a profile of earlier runs shows are hot.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class TieredExecutor extends Executor
+{
+    public static final int DEFAULT_THRESHOLD = 500;
+
+    private Symtab symtab;
+    private int threshold;  // back edges before a loop is compiled
+    private IdentityHashMap<Node, LoopProfile> profiles;
+
+    /**
+     * Execution profile of a LOOP node.
+     */
+    private static class LoopProfile
+    {
+        int backEdges;                        // iterations in the tree walker
+        ClosureCompiler.Statement iterations; // compiled iterations, or null
+        SymtabEntry[] variables;              // variables indexed by slot
+    }
+
+    public TieredExecutor(Symtab symtab)
+    {
+        this(symtab, new OutputBuffer(), DEFAULT_THRESHOLD);
+    }
+
+    public TieredExecutor(Symtab symtab, OutputBuffer output, int threshold)
+    {
+        super(symtab, output);
+        this.symtab = symtab;
+        this.threshold = threshold;
+        this.profiles = new IdentityHashMap<>();
+    }
+
+    @Override
+    protected Object visitLoop(Node loopNode)
+    {
+        LoopProfile loopProfile = profiles.get(loopNode);
+        if (loopProfile == null)
+        {
+            loopProfile = new LoopProfile();
+            profiles.put(loopNode, loopProfile);
+
+            // A loop that was hot in earlier runs is compiled right away.
+            if ((profile != null) && (profile.iterations(loopNode) >= threshold))
+            {
+                compile(loopNode, loopProfile);
+            }
+        }
+
+        if (loopProfile.iterations != null) return runCompiled(loopProfile);
+
+        ArrayList<Node> children = loopNode.children;
+        int count = children.size();
+        int backEdges = 0;
+
+        while (true)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                Node node = children.get(i);
+
+                // Evaluate the test condition. Stop looping if true.
+                if (node.type == TEST)
+                {
+                    if (evalTest(node))
+                    {
+                        budget.charge(backEdges, loopNode.lineNumber);
+                        return null;
+                    }
+                }
+                else visit(node);
+            }
+
+            // Back edge: Switch to compiled code once the loop is hot.
+            backEdges++;
+            if (++loopProfile.backEdges >= threshold)
+            {
+                budget.charge(backEdges, loopNode.lineNumber);
+                compile(loopNode, loopProfile);
+                return runCompiled(loopProfile);
+            }
+            else if (backEdges == Budget.BATCH)
+            {
+                budget.charge(backEdges, loopNode.lineNumber);
+                backEdges = 0;
+            }
+        }
+    }
+
+    /**
+     * Compile the iterations of a hot loop.
+     * @param loopNode the LOOP node.
+     * @param loopProfile the loop's profile.
+     */
+    private void compile(Node loopNode, LoopProfile loopProfile)
+    {
+        ClosureCompiler compiler = new ClosureCompiler(symtab, profile);
+
+        loopProfile.iterations = compiler.compileIterations(loopNode);
+        loopProfile.variables = compiler.variables().toArray(new SymtabEntry[0]);
+    }
+
+    /**
+     * Run a loop's compiled iterations from the top of an iteration.
+     * @param loopProfile the loop's profile.
+     * @return null.
+     */
+    private Object runCompiled(LoopProfile loopProfile)
+    {
+        SymtabEntry[] variables = loopProfile.variables;
+        Frame frame = new Frame(variables.length, output, budget);
+
+        // Transfer the live variable values into the frame.
+        for (int i = 0; i < variables.length; i++)
+        {
+            frame.slots[i] = variables[i].getValue();
+        }
+        frame.lineNumber = lineNumber;
+
+        try
+        {
+            loopProfile.iterations.execute(frame);
+        }
+        finally
+        {
+            // Transfer them back, even if there was a runtime error.
+            for (int i = 0; i < variables.length; i++)
+            {
+                variables[i].setValue(frame.slots[i]);
+            }
+            lineNumber = frame.lineNumber;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,628 @@
+/**
+ * Tracing executor class for a simple interpreter.
+ *
+ * The tree walker counts the back edges of each LOOP node. When a loop
+ * becomes hot, its next iteration is recorded while it executes: the
+ * linear sequence of statements that actually ran, with a guard at each
+ * decision of a TEST, IFNODE or SELECT node. The trace is compiled into
+ * a straight-line fast path that runs whole iterations as long as every
+ * decision goes the recorded way. When a guard fails, execution leaves
+ * the trace and the tree walker finishes the iteration from that point,
+ * and the next iteration starts in the trace again. A trace that keeps
+ * failing is thrown away and recorded again, up to a limit.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class TracingExecutor extends Executor
+{
+    public static final int DEFAULT_THRESHOLD = 500;
+
+    private static final int MAX_RECORDINGS = 3;  // traces per loop
+    private static final int MIN_EXITS = 64;      // side exits before a trace is judged
+
+    private Symtab symtab;
+    private int threshold;  // back edges before a loop is recorded
+    private IdentityHashMap<Node, LoopProfile> profiles;
+
+    /**
+     * Execution profile of a LOOP node.
+     */
+    private static class LoopProfile
+    {
+        int backEdges;     // iterations in the tree walker
+        int recordings;    // traces recorded so far
+        boolean untraced;  // true if the loop is never traced again
+        Trace trace;       // current trace, or null
+    }
+
+    /**
+     * One step of a compiled trace.
+     */
+    private interface Step
+    {
+        /**
+         * Execute the step.
+         * @param frame the trace's frame.
+         * @return false if the step is a guard that failed.
+         */
+        boolean execute(Frame frame);
+    }
+
+    /**
+     * Where the tree walker resumes when a guard fails: after the
+     * decision node, in each enclosing container statement from the
+     * innermost COMPOUND out to the LOOP, at the index of the next child.
+     */
+    private static class Exit
+    {
+        final Node decision;      // TEST, IFNODE or SELECT node
+        final Node[] containers;  // innermost first
+        final int[] nextIndexes;  // parallel to containers
+
+        Exit(Node decision, Node[] containers, int[] nextIndexes)
+        {
+            this.decision = decision;
+            this.containers = containers;
+            this.nextIndexes = nextIndexes;
+        }
+    }
+
+    /**
+     * Guard on the recorded outcome of a TEST or IFNODE.
+     */
+    private static class TestGuard implements Step
+    {
+        final ClosureCompiler.BooleanExpression condition;
+        final boolean expected;
+        final Exit exit;
+
+        TestGuard(ClosureCompiler.BooleanExpression condition, boolean expected, Exit exit)
+        {
+            this.condition = condition;
+            this.expected = expected;
+            this.exit = exit;
+        }
+
+        public boolean execute(Frame frame)
+        {
+            return condition.evaluate(frame) == expected;
+        }
+    }
+
+    /**
+     * Guard on the recorded branch of a SELECT.
+     */
+    private static class SelectGuard implements Step
+    {
+        final ClosureCompiler.NumberExpression selector;
+        final CaseDispatch dispatch;
+        final int expected;  // index of the recorded branch, or -1
+        final Exit exit;
+        double value;        // selector value when the guard last failed
+
+        SelectGuard(ClosureCompiler.NumberExpression selector, CaseDispatch dispatch,
+                    int expected, Exit exit)
+        {
+            this.selector = selector;
+            this.dispatch = dispatch;
+            this.expected = expected;
+            this.exit = exit;
+        }
+
+        public boolean execute(Frame frame)
+        {
+            double selected = selector.evaluate(frame);
+            if (dispatch.branchIndex(selected) == expected) return true;
+
+            value = selected;
+            return false;
+        }
+    }
+
+    /**
+     * A compiled trace of one loop iteration.
+     */
+    private static class Trace
+    {
+        final Step[] steps;
+        final SymtabEntry[] variables;  // indexed by slot
+        final Frame frame;
+        int iterations;                 // completed in the trace
+        int exits;                      // side exits within an iteration
+
+        Trace(Step[] steps, SymtabEntry[] variables, Frame frame)
+        {
+            this.steps = steps;
+            this.variables = variables;
+            this.frame = frame;
+        }
+    }
+
+    public TracingExecutor(Symtab symtab)
+    {
+        this(symtab, new OutputBuffer(), DEFAULT_THRESHOLD);
+    }
+
+    public TracingExecutor(Symtab symtab, OutputBuffer output, int threshold)
+    {
+        super(symtab, output);
+        this.symtab = symtab;
+        this.threshold = threshold;
+        this.profiles = new IdentityHashMap<>();
+    }
+
+    @Override
+    protected Object visitLoop(Node loopNode)
+    {
+        LoopProfile loopProfile = profiles.get(loopNode);
+        if (loopProfile == null)
+        {
+            loopProfile = new LoopProfile();
+            profiles.put(loopNode, loopProfile);
+
+            // A loop that was hot in earlier runs is recorded right away.
+            if ((profile != null) && (profile.iterations(loopNode) >= threshold))
+            {
+                loopProfile.backEdges = threshold - 1;
+            }
+        }
+
+        ArrayList<Node> children = loopNode.children;
+        int count = children.size();
+        int backEdges = 0;
+
+        while (true)
+        {
+            // Run iterations in the trace, if there is one.
+            if (loopProfile.trace != null)
+            {
+                budget.charge(backEdges, loopNode.lineNumber);
+                backEdges = 0;
+
+                if (runTrace(loopProfile, loopNode.lineNumber)) return null;
+                continue;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                Node node = children.get(i);
+
+                // Evaluate the test condition. Stop looping if true.
+                if (node.type == TEST)
+                {
+                    if (evalTest(node))
+                    {
+                        budget.charge(backEdges, loopNode.lineNumber);
+                        return null;
+                    }
+                }
+                else visit(node);
+            }
+
+            if (++backEdges == Budget.BATCH)
+            {
+                budget.charge(backEdges, loopNode.lineNumber);
+                backEdges = 0;
+            }
+
+            // Back edge: Record the next iteration once the loop is hot.
+            if (!loopProfile.untraced && (++loopProfile.backEdges >= threshold))
+            {
+                Recorder recorder = new Recorder(loopNode);
+
+                if (recorder.recordIteration())
+                {
+                    budget.charge(backEdges, loopNode.lineNumber);
+                    return null;
+                }
+                backEdges++;
+
+                loopProfile.recordings++;
+                loopProfile.trace = recorder.trace();
+                if (loopProfile.trace == null) loopProfile.untraced = true;
+            }
+        }
+    }
+
+    /**
+     * Run iterations of a loop in its trace, from the top of an iteration.
+     * @param loopProfile the loop's profile.
+     * @param loopLine the line number of the LOOP node.
+     * @return true if the loop exited, or false if the trace was
+     *         thrown away at the top of an iteration.
+     */
+    private boolean runTrace(LoopProfile loopProfile, int loopLine)
+    {
+        Trace trace = loopProfile.trace;
+
+        while (true)
+        {
+            Step failed = runSteps(trace, loopLine);
+
+            // Finish the iteration in the tree walker.
+            if (failed instanceof TestGuard)
+            {
+                TestGuard guard = (TestGuard) failed;
+                if (resume(guard.exit, !guard.expected, 0.0)) return true;
+            }
+            else
+            {
+                SelectGuard guard = (SelectGuard) failed;
+                if (resume(guard.exit, false, guard.value)) return true;
+            }
+
+            // The tree walker finished an iteration.
+            budget.charge(1, loopLine);
+
+            // Throw away a trace that too often fails.
+            if (   (++trace.exits >= MIN_EXITS)
+                && (trace.exits > trace.iterations/4))
+            {
+                loopProfile.trace = null;
+                loopProfile.backEdges = 0;
+                loopProfile.untraced = loopProfile.recordings >= MAX_RECORDINGS;
+
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Run a trace until a guard fails. The values of the trace's variables
+     * are moved into its frame first and back out afterwards.
+     * @param trace the trace.
+     * @param loopLine the line number of the LOOP node.
+     * @return the guard that failed.
+     */
+    private Step runSteps(Trace trace, int loopLine)
+    {
+        Step[] steps = trace.steps;
+        SymtabEntry[] variables = trace.variables;
+        Frame frame = trace.frame;
+
+        loadSlots(variables, frame);
+        frame.lineNumber = lineNumber;
+        int backEdges = 0;
+
+        try
+        {
+            while (true)
+            {
+                for (Step step : steps)
+                {
+                    if (!step.execute(frame))
+                    {
+                        budget.charge(backEdges, loopLine);
+                        return step;
+                    }
+                }
+
+                trace.iterations++;
+
+                if (++backEdges == Budget.BATCH)
+                {
+                    budget.charge(backEdges, loopLine);
+                    backEdges = 0;
+                }
+            }
+        }
+        finally
+        {
+            storeSlots(variables, frame);
+            lineNumber = frame.lineNumber;
+        }
+    }
+
+    /**
+     * Finish a loop iteration in the tree walker after a guard failed.
+     * @param exit where to resume.
+     * @param condition the value of a failed TEST or IFNODE condition.
+     * @param selected the selector value of a failed SELECT.
+     * @return true if the loop exited.
+     */
+    private boolean resume(Exit exit, boolean condition, double selected)
+    {
+        Node decision = exit.decision;
+
+        // Finish the decision the other way.
+        switch (decision.type)
+        {
+            case TEST :
+            {
+                if (condition) return true;
+                break;
+            }
+
+            case IFNODE :
+            {
+                ArrayList<Node> children = decision.children;
+
+                if (condition) visitBranch(children.get(1));
+                else if (children.size() > 2) visitBranch(children.get(2));
+
+                break;
+            }
+
+            default :
+            {
+                visitBranch(selectBranch(decision, selected));
+                break;
+            }
+        }
+
+        // Finish the enclosing statements, innermost first.
+        for (int k = 0; k < exit.containers.length; k++)
+        {
+            ArrayList<Node> children = exit.containers[k].children;
+
+            for (int i = exit.nextIndexes[k]; i < children.size(); i++)
+            {
+                Node node = children.get(i);
+
+                if ((exit.containers[k].type == LOOP) && (node.type == TEST))
+                {
+                    if (evalTest(node)) return true;
+                }
+                else visit(node);
+            }
+        }
+
+        return false;
+    }
+
+    private void visitBranch(Node node)
+    {
+        if (node != null) visit(node);
+    }
+
+    private static void loadSlots(SymtabEntry[] variables, Frame frame)
+    {
+        for (int i = 0; i < variables.length; i++)
+        {
+            frame.slots[i] = variables[i].getValue();
+        }
+    }
+
+    private static void storeSlots(SymtabEntry[] variables, Frame frame)
+    {
+        for (int i = 0; i < variables.length; i++)
+        {
+            variables[i].setValue(frame.slots[i]);
+        }
+    }
+
+    /**
+     * Records one loop iteration while executing it.
+     */
+    private class Recorder
+    {
+        private Node loopNode;
+        private ClosureCompiler compiler;
+        private ArrayList<Step> steps;
+        private Node[] containers;  // enclosing container statements
+        private int[] nextIndexes;  // parallel to containers
+        private int depth;          // number of enclosing containers
+        private boolean failed;     // true if the iteration can't be traced
+
+        // Nested loops run in the tree walker, with the
+        // trace's variables moved out of the frame and back.
+        private ArrayList<Step> nestedLoops;
+        private SymtabEntry[][] nestedVariables;
+
+        Recorder(Node loopNode)
+        {
+            this.loopNode = loopNode;
+            this.compiler = new ClosureCompiler(symtab, profile);
+            this.steps = new ArrayList<>();
+            this.containers = new Node[16];
+            this.nextIndexes = new int[16];
+            this.depth = 0;
+            this.failed = false;
+            this.nestedVariables = new SymtabEntry[1][];
+        }
+
+        /**
+         * Execute and record an iteration of the loop.
+         * @return true if the loop exited during the iteration.
+         */
+        boolean recordIteration()
+        {
+            ArrayList<Node> children = loopNode.children;
+            push(loopNode);
+
+            for (int i = 0; i < children.size(); i++)
+            {
+                Node node = children.get(i);
+                nextIndexes[depth - 1] = i + 1;
+
+                if (node.type == TEST)
+                {
+                    boolean condition = evalTest(node);
+
+                    if (!failed)
+                    {
+                        steps.add(new TestGuard(compiler.compileBoolean(node.children.get(0)),
+                                                condition, exit(node)));
+                    }
+
+                    if (condition) return true;
+                }
+                else record(node);
+            }
+
+            return false;
+        }
+
+        /**
+         * @return the compiled trace, or null if the iteration couldn't
+         *         be traced.
+         */
+        Trace trace()
+        {
+            if (failed) return null;
+
+            SymtabEntry[] variables = compiler.variables().toArray(new SymtabEntry[0]);
+            nestedVariables[0] = variables;
+
+            return new Trace(steps.toArray(new Step[0]), variables,
+                             new Frame(variables.length, output, budget));
+        }
+
+        /**
+         * Execute and record a statement.
+         * @param node the statement node.
+         */
+        private void record(Node node)
+        {
+            if (node == null) return;
+
+            if (failed)
+            {
+                visit(node);
+                return;
+            }
+
+            switch (node.type)
+            {
+                case COMPOUND :
+                {
+                    int line = node.lineNumber;
+                    lineNumber = line;
+                    steps.add(frame -> {
+                        frame.lineNumber = line;
+                        return true;
+                    });
+
+                    ArrayList<Node> children = node.children;
+                    push(node);
+
+                    for (int i = 0; i < children.size(); i++)
+                    {
+                        nextIndexes[depth - 1] = i + 1;
+                        record(children.get(i));
+                    }
+
+                    depth--;
+                    break;
+                }
+
+                case ASSIGN :
+                case WRITE :
+                case WRITELN :
+                {
+                    ClosureCompiler.Statement statement = compiler.compileStatement(node);
+                    steps.add(frame -> {
+                        statement.execute(frame);
+                        return true;
+                    });
+
+                    visit(node);
+                    break;
+                }
+
+                case IFNODE :
+                {
+                    ArrayList<Node> children = node.children;
+                    boolean condition = evalTest(children.get(0));
+
+                    steps.add(new TestGuard(
+                        compiler.compileBoolean(children.get(0).children.get(0)),
+                        condition, exit(node)));
+
+                    if (condition) record(children.get(1));
+                    else if (children.size() > 2) record(children.get(2));
+
+                    break;
+                }
+
+                case SELECT :
+                {
+                    CaseDispatch dispatch = CaseDispatch.compile(node);
+
+                    // Only a CASE with numeric constants can be guarded.
+                    if (dispatch.isLinear())
+                    {
+                        failed = true;
+                        visit(node);
+                        break;
+                    }
+
+                    double value = evalDouble(node.children.get(0));
+                    int index = dispatch.branchIndex(value);
+
+                    steps.add(new SelectGuard(compiler.compileNumber(node.children.get(0)),
+                                              dispatch, index, exit(node)));
+
+                    if (index > 0) record(node.children.get(index).children.get(1));
+                    break;
+                }
+
+                case LOOP :
+                {
+                    SymtabEntry[][] variables = nestedVariables;
+                    steps.add(frame -> {
+                        storeSlots(variables[0], frame);
+                        lineNumber = frame.lineNumber;
+
+                        visit(node);
+
+                        loadSlots(variables[0], frame);
+                        frame.lineNumber = lineNumber;
+                        return true;
+                    });
+
+                    visit(node);
+                    break;
+                }
+
+                default :
+                {
+                    failed = true;
+                    visit(node);
+                    break;
+                }
+            }
+        }
+
+        private void push(Node container)
+        {
+            if (depth == containers.length)
+            {
+                containers = Arrays.copyOf(containers, 2*depth);
+                nextIndexes = Arrays.copyOf(nextIndexes, 2*depth);
+            }
+
+            containers[depth++] = container;
+        }
+
+        /**
+         * Make the exit of a guard from the current enclosing statements.
+         * @param decision the decision node of the guard.
+         * @return the exit.
+         */
+        private Exit exit(Node decision)
+        {
+            Node[] exitContainers = new Node[depth];
+            int[] exitIndexes = new int[depth];
+
+            for (int k = 0; k < depth; k++)
+            {
+                exitContainers[k] = containers[depth - 1 - k];
+                exitIndexes[k] = nextIndexes[depth - 1 - k];
+            }
+
+            return new Exit(decision, exitContainers, exitIndexes);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Precompiled format of a WRITE or WRITELN argument.
+ *
+ * The field width and count of decimal places are fixed by the parse
+ * tree, so each WRITE node is compiled into a format once and then
+ * reused every time the node executes. A string constant is rendered
+ * to bytes ahead of time, and numbers go through NumberFormatter.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package backend;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class WriteFormat
+{
+    private final String format;      // Formatter format for a numeric value
+    private final int fieldWidth;     // -1 if none
+    private final int decimalPlaces;
+    private final byte[] bytes;       // rendered string constant, or null
+
+    private WriteFormat(String format, int fieldWidth, int decimalPlaces,
+                        byte[] bytes)
+    {
+        this.format = format;
+        this.fieldWidth = fieldWidth;
+        this.decimalPlaces = decimalPlaces;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Compile the format of a WRITE or WRITELN node's argument.
+     * @param writeNode the WRITE or WRITELN node with an argument.
+     * @return the format.
+     */
+    public static WriteFormat compile(Node writeNode)
+    {
+        ArrayList<Node> children = writeNode.children;
+        long fieldWidth    = -1;
+        long decimalPlaces = 0;
+
+        // Use any specified field width and count of decimal places.
+        if (children.size() > 1)
+        {
+            fieldWidth = (Long) children.get(1).value;
+            if (children.size() > 2) decimalPlaces = (Long) children.get(2).value;
+        }
+
+        Node valueNode = children.get(0);
+        if (valueNode.type == STRING_CONSTANT)
+        {
+            String format = "%";
+            if (fieldWidth > 0) format += fieldWidth;
+            format += "s";
+
+            String text = String.format(format, (String) valueNode.value);
+            return new WriteFormat(null, -1, 0, 
+                                   text.getBytes(Charset.defaultCharset()));
+        }
+        else
+        {
+            String format = "%";
+            if (fieldWidth >= 0)    format += fieldWidth;
+            if (decimalPlaces >= 0) format += "." + decimalPlaces;
+            format += "f";
+
+            // Anything out of the fast formatter's range uses the format.
+            if (   (fieldWidth > Integer.MAX_VALUE) 
+                || (decimalPlaces > NumberFormatter.MAX_DECIMAL_PLACES))
+            {
+                fieldWidth = 0;
+            }
+
+            return new WriteFormat(format, (int) fieldWidth, 
+                                   (int) decimalPlaces, null);
+        }
+    }
+
+    /**
+     * @return true if the argument is a string constant.
+     */
+    public boolean isConstant() { return bytes != null; }
+
+    /**
+     * Write the rendered string constant.
+     * @param out the output buffer.
+     */
+    public void write(OutputBuffer out)
+    {
+        out.write(bytes);
+    }
+
+    /**
+     * Write a numeric value.
+     * @param out the output buffer.
+     * @param value the value to write.
+     */
+    public void write(OutputBuffer out, double value)
+    {
+        if (!NumberFormatter.format(value, fieldWidth, decimalPlaces, out))
+        {
+            out.writeFormatted(format, value);
+        }
+    }
+}
@@ -11,7 +11,13 @@
  */
 package frontend;
 
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.function.Consumer;
 
 import intermediate.*;
 import static frontend.Token.TokenType.*;
@@ -26,19 +32,69 @@ public class Parser
     private Token currentToken;
     private int lineNumber;
     private int errorCount;
+    private PrintStream errors;  // where error messages go
+    private String sourceText;   // that the scanner scans, if the parser is lazy
+    private boolean checking;    // parse skimmed statements right away
+    
+    private static final PrintStream NO_ERRORS =
+        new PrintStream(OutputStream.nullOutputStream());
     
     public Parser(Scanner scanner, Symtab symtab)
+    {
+        this(scanner, symtab, System.out);
+    }
+    
+    /**
+     * Constructor.
+     * @param scanner the scanner.
+     * @param symtab the symbol table.
+     * @param errors the stream to print syntax and semantic errors to.
+     */
+    public Parser(Scanner scanner, Symtab symtab, PrintStream errors)
     {
         this.scanner = scanner;
         this.symtab  = symtab;
         this.currentToken = null;
         this.lineNumber = 1;
         this.errorCount = 0;
+        this.errors = errors;
     }
     
     public int errorCount() { return errorCount; }
     
+    /**
+     * Setter. A lazy parser only skims the compound statements of IF and
+     * CASE branches, and they're parsed from the source text when they
+     * first execute, or right away if it's checking.
+     * @param sourceText the whole text that the scanner scans, to be
+     *                   lazy, or null to parse everything at once.
+     */
+    public void setLazy(String sourceText) { this.sourceText = sourceText; }
+    
+    /**
+     * Setter. A lazy parser that's checking the whole program parses the
+     * statements of each compound statement right after skimming it, and
+     * parses one that has errors again as if it weren't lazy, so they're
+     * printed just as they are when it isn't.
+     * @param checking true to check the whole program.
+     */
+    public void setChecking(boolean checking) { this.checking = checking; }
+    
     public Node parseProgram()
+    {
+        return parseProgram(null);
+    }
+    
+    /**
+     * Parse a program, and hand each statement of its compound statement
+     * to a consumer as soon as it's parsed, instead of adding it to the
+     * tree. After a syntax error, the rest of the statements are still
+     * parsed for errors, but they aren't handed over.
+     * @param statementSink the consumer of the statements, or null to
+     *                      add them to the tree.
+     * @return the program's parse tree.
+     */
+    public Node parseProgram(Consumer<Node> statementSink)
     {
         Node programNode = new Node(Node.NodeType.PROGRAM);
         
@@ -69,32 +125,38 @@ public class Parser
         if (currentToken.type != BEGIN) syntaxError("Expecting BEGIN");
         
         // The PROGRAM node adopts the COMPOUND tree.
-        programNode.adopt(parseCompoundStatement());
+        programNode.adopt(parseCompoundStatement(statementSink));
         
         if (currentToken.type != PERIOD) syntaxError("Expecting .");
         return programNode;
     }
     
-    private static HashSet<Token.TokenType> statementStarters;
-    private static HashSet<Token.TokenType> statementFollowers;
-    private static HashSet<Token.TokenType> relationalOperators;
-    private static HashSet<Token.TokenType> simpleExpressionOperators;
-    private static HashSet<Token.TokenType> termOperators;
+    private static EnumSet<Token.TokenType> statementStarters;
+    private static EnumSet<Token.TokenType> statementFollowers;
+    private static EnumSet<Token.TokenType> relationalOperators;
+    private static EnumSet<Token.TokenType> simpleExpressionOperators;
+    private static EnumSet<Token.TokenType> termOperators;
 
     static
     {
-        statementStarters = new HashSet<Token.TokenType>();
-        statementFollowers = new HashSet<Token.TokenType>();
-        relationalOperators = new HashSet<Token.TokenType>();
-        simpleExpressionOperators = new HashSet<Token.TokenType>();
-        termOperators = new HashSet<Token.TokenType>();
+        statementStarters = EnumSet.noneOf(Token.TokenType.class);
+        statementFollowers = EnumSet.noneOf(Token.TokenType.class);
+        relationalOperators = EnumSet.noneOf(Token.TokenType.class);
+        simpleExpressionOperators = EnumSet.noneOf(Token.TokenType.class);
+        termOperators = EnumSet.noneOf(Token.TokenType.class);
         
-        // Tokens that can start a statement.
+        // Tokens that can start a statement: every token that
+        // parseStatement dispatches on, so that a missing ; is
+        // reported before any kind of statement.
         statementStarters.add(BEGIN);
         statementStarters.add(IDENTIFIER);
         statementStarters.add(REPEAT);
         statementStarters.add(Token.TokenType.WRITE);
         statementStarters.add(Token.TokenType.WRITELN);
+        statementStarters.add(WHILE);
+        statementStarters.add(IF);
+        statementStarters.add(FOR);
+        statementStarters.add(CASE);
         
         // Tokens that can immediately follow a statement.
         statementFollowers.add(SEMICOLON);
@@ -181,12 +243,17 @@ private Node parseAssignmentStatement()
 }
     
     private Node parseCompoundStatement()
+    {
+        return parseCompoundStatement(null);
+    }
+    
+    private Node parseCompoundStatement(Consumer<Node> statementSink)
     {
         Node compoundNode = new Node(COMPOUND);
         compoundNode.lineNumber = currentToken.lineNumber;
         
         currentToken = scanner.nextToken();  // consume BEGIN
-        parseStatementList(compoundNode, END);    
+        parseStatementList(compoundNode, END, statementSink);    
         
         if (currentToken.type == END) 
         {
@@ -198,12 +265,23 @@ private Node parseAssignmentStatement()
     }
     
     private void parseStatementList(Node parentNode, Token.TokenType terminalType)
+    {
+        parseStatementList(parentNode, terminalType, null);
+    }
+    
+    private void parseStatementList(Node parentNode, Token.TokenType terminalType,
+                                    Consumer<Node> statementSink)
     {
         while (   (currentToken.type != terminalType) 
                && (currentToken.type != END_OF_FILE))
         {
             Node stmtNode = parseStatement();
-            if (stmtNode != null) parentNode.adopt(stmtNode);
+            
+            if (stmtNode != null)
+            {
+                if (statementSink == null) parentNode.adopt(stmtNode);
+                else if (errorCount == 0)  statementSink.accept(stmtNode);
+            }
             
             // A semicolon separates statements.
             if (currentToken.type == SEMICOLON)
@@ -504,7 +582,8 @@ private Node parseAssignmentStatement()
         if (variableId == null) semanticError("Undeclared identifier");
         
         Node node = new Node(VARIABLE);
-        node.text = variableName;
+        node.text  = variableName;
+        node.entry = variableId;
         
         currentToken = scanner.nextToken();  // consume the identifier        
         return node;
@@ -588,7 +667,7 @@ private Node parseAssignmentStatement()
         if (currentToken.type == THEN) {
         	currentToken = scanner.nextToken();
 //	        Node thenBlockNode = parseStatement();
-	        ifNode.adopt(parseStatement());
+	        ifNode.adopt(parseBranchStatement());
         }
         else
         	syntaxError("expecting THEN");
@@ -596,7 +675,7 @@ private Node parseAssignmentStatement()
         // The current token should now be ELSE
         if (currentToken.type == ELSE) {
         	currentToken = scanner.nextToken();
-        	Node elseBlockNode = parseStatement();
+        	Node elseBlockNode = parseBranchStatement();
         	ifNode.adopt(elseBlockNode);
         }
 
@@ -725,11 +804,12 @@ private Node parseAssignmentStatement()
         return compoundNode;
     }
 
-    private Node parseConstantList() {
+    private Node parseConstantList(HashSet<Object> caseConstants) {
     	Node constantsNode = new Node(SELECT_CONSTANTS);
         constantsNode.lineNumber = currentToken.lineNumber;
     	boolean flag = false;
     	while (!flag) {
+    		int count = constantsNode.children.size();
     		//Consume identifier constant
     		if (currentToken.type == IDENTIFIER)
     		{
@@ -758,6 +838,10 @@ private Node parseAssignmentStatement()
     		else {
     			syntaxError("expecting constant");
     		}
+    		if (constantsNode.children.size() > count)
+    		{
+    			checkDuplicateConstant(constantsNode.children.get(count), caseConstants);
+    		}
     		//Consume comma if there is one
     		if (currentToken.type == COMMA)
     		{
@@ -772,7 +856,28 @@ private Node parseAssignmentStatement()
     	return constantsNode;
     }
 
-    private Node parseBranch()
+    //Reports a constant that already appeared in the same CASE statement
+    private void checkDuplicateConstant(Node constantNode, HashSet<Object> caseConstants)
+    {
+        Object key;
+        
+        // Integer and real constants are compared by numeric value.
+        // Variables aren't constant until run time.
+        if (   (constantNode.type == INTEGER_CONSTANT) 
+            || (constantNode.type == REAL_CONSTANT))
+        {
+            key = ((Number) constantNode.value).doubleValue();
+        }
+        else if (constantNode.type == STRING_CONSTANT) key = constantNode.value;
+        else return;
+        
+        if (!caseConstants.add(key))
+        {
+            semanticError("Duplicate CASE constant " + constantNode.value);
+        }
+    }
+
+    private Node parseBranch(HashSet<Object> caseConstants)
     {
     	// The current token should now be a constant list
 
@@ -786,7 +891,7 @@ private Node parseAssignmentStatement()
     			(currentToken.type == STRING) ||
         	    (currentToken.type == MINUS))
     	{
-        	branchNode.adopt(parseConstantList());
+        	branchNode.adopt(parseConstantList(caseConstants));
     	}
         else
     	{
@@ -806,7 +911,8 @@ private Node parseAssignmentStatement()
         }
         else if (currentToken.type == BEGIN)
         {
-        	branchNode.adopt(parseCompoundStatement());
+        	branchNode.adopt(sourceText != null ? skimCompoundStatement(false) 
+        	                                    : parseCompoundStatement());
         }
         else
         {
@@ -838,9 +944,10 @@ private Node parseAssignmentStatement()
         // Consumes the OF token
         currentToken = scanner.nextToken();
 
+        HashSet<Object> caseConstants = new HashSet<Object>();
         boolean flag = false;
         while (!flag) {
-        	selectNode.adopt(parseBranch());
+        	selectNode.adopt(parseBranch(caseConstants));
 
         	if(currentToken.type == END)
             {
@@ -852,9 +959,167 @@ private Node parseAssignmentStatement()
         return selectNode;
     }
 
+    /**
+     * Parse the statement of an IF branch. In lazy mode, a compound
+     * statement is only skimmed.
+     * @return the statement's node.
+     */
+    private Node parseBranchStatement()
+    {
+        if ((sourceText == null) || (currentToken.type != BEGIN)) return parseStatement();
+
+        lineNumber = currentToken.lineNumber;  // as parseStatement does
+        return skimCompoundStatement(true);
+    }
+
+    /**
+     * Skim a compound statement without building its subtree: Only
+     * check that its BEGIN and CASE tokens are balanced by END tokens,
+     * and keep the range of its source text to parse it later. The 
+     * variables that it assigns are entered into the symbol table now,
+     * so the statements after it are parsed as if it had been. It's 
+     * parsed now instead if it isn't balanced, has a bad token, or uses
+     * a variable before it's assigned, so those errors are reported as
+     * usual. Other errors in it are found only when it's parsed.
+     * @param asStatement true to parse it now with parseStatement,
+     *                    false with parseCompoundStatement.
+     * @return the COMPOUND node, whose value is a DeferredBody if the
+     *         statements weren't parsed.
+     */
+    private Node skimCompoundStatement(boolean asStatement)
+    {
+        // The current token should now be BEGIN.
+
+        ArrayList<Token> tokens = new ArrayList<>();
+        HashSet<String> assigned = new HashSet<>();
+        boolean deferrable = true;
+        int depth = 0;
+        Token token;
+
+        do
+        {
+            token = currentToken;
+            tokens.add(token);
+
+            switch (token.type)
+            {
+                case BEGIN :
+                case CASE :        depth++;            break;
+                case END :         depth--;            break;
+                case ERROR :
+                case END_OF_FILE : deferrable = false; break;
+                default :                              break;
+            }
+
+            currentToken = scanner.nextToken();
+
+            // A variable is assigned if := follows it, and it's used otherwise.
+            if (token.type == IDENTIFIER)
+            {
+                String name = token.text.toLowerCase();
+
+                if (currentToken.type == COLON_EQUALS) assigned.add(name);
+                else if (!assigned.contains(name) && (symtab.lookup(name) == null))
+                {
+                    deferrable = false;
+                }
+            }
+        } while ((depth > 0) && (token.type != END_OF_FILE));
+
+        if (deferrable)
+        {
+            Node compoundNode = new Node(COMPOUND);
+            compoundNode.lineNumber = tokens.get(0).lineNumber;
+            DeferredCompound body = new DeferredCompound(tokens.get(0), currentToken.offset,
+                                                         this);
+            
+            if (!checking)
+            {
+                for (String name : assigned)
+                {
+                    if (symtab.lookup(name) == null) symtab.enter(name);
+                }
+                
+                compoundNode.value = body;
+                return compoundNode;
+            }
+            
+            // When checking, parse it now, which enters the variables that
+            // it assigns. If it has errors, remove them and parse it again 
+            // below as usual instead, since the skim may have matched its 
+            // END differently than the parser recovers from them.
+            assigned.removeIf(name -> symtab.lookup(name) != null);
+            
+            if (body.parse(compoundNode, NO_ERRORS) == 0)
+            {
+                lineNumber = body.lineNumber;  // as if this parser had parsed it
+                return compoundNode;
+            }
+            
+            for (String name : assigned) symtab.remove(name);
+        }
+
+        // Parse the skimmed tokens now, and then the rest.
+        tokens.add(currentToken);
+        TokenReplay replay = new TokenReplay(tokens, scanner);
+        scanner = replay;
+        currentToken = scanner.nextToken();
+
+        Node node = asStatement ? parseStatement() : parseCompoundStatement();
+
+        if (replay.isDone()) scanner = replay.rest();
+        return node;
+    }
+
+    /**
+     * The source text range of a skimmed compound statement, which a
+     * parser of its own scans again and parses. It can skim the compound
+     * statements nested within.
+     */
+    private static class DeferredCompound implements DeferredBody
+    {
+        private String sourceText;
+        private Symtab symtab;
+        private int begin;       // offset of the BEGIN token
+        private int end;         // offset of the token after the END
+        private int beginLine;   // line number of the BEGIN token
+        private int lineNumber;  // of the parser when it skimmed the statement,
+                                 // and then when it parsed it
+        private boolean checking;
+
+        DeferredCompound(Token beginToken, int end, Parser parser)
+        {
+            this.sourceText = parser.sourceText;
+            this.symtab = parser.symtab;
+            this.begin = beginToken.offset;
+            this.end = end;
+            this.beginLine = beginToken.lineNumber;
+            this.lineNumber = parser.lineNumber;
+            this.checking = parser.checking;
+        }
+
+        @Override
+        public int parse(Node compoundNode, PrintStream errors)
+        {
+            Source source = new Source(new StringReader(sourceText.substring(begin, end)),
+                                       beginLine, begin);
+            Parser parser = new Parser(new Scanner(source, errors), symtab, errors);
+            parser.sourceText = sourceText;
+            parser.lineNumber = lineNumber;
+            parser.checking = checking;
+            parser.currentToken = parser.scanner.nextToken();  // BEGIN
+
+            compoundNode.children = parser.parseCompoundStatement().children;
+            lineNumber = parser.lineNumber;
+            sourceText = null;
+
+            return parser.errorCount;
+        }
+    }
+
     private void syntaxError(String message)
     {
-        System.out.println("SYNTAX ERROR at line " + lineNumber 
+        errors.println("SYNTAX ERROR at line " + lineNumber 
                            + ": " + message + " at '" + currentToken.text + "'");
         errorCount++;
         
@@ -868,7 +1133,7 @@ private Node parseAssignmentStatement()
     
     private void semanticError(String message)
     {
-        System.out.println("SEMANTIC ERROR at line " + lineNumber 
+        errors.println("SEMANTIC ERROR at line " + lineNumber 
                            + ": " + message + " at '" + currentToken.text + "'");
         errorCount++;
     }
@@ -10,17 +10,31 @@
  */
 package frontend;
 
+import java.io.PrintStream;
+
 public class Scanner
 {
     private Source source;
+    private PrintStream errors;  // where token errors go
     
     /**
      * Constructor.
      * @param source the input source.
      */
     public Scanner(Source source)
+    {
+        this(source, System.out);
+    }
+    
+    /**
+     * Constructor.
+     * @param source the input source.
+     * @param errors the stream to print token errors to.
+     */
+    public Scanner(Source source, PrintStream errors)
     {
         this.source = source;
+        this.errors = errors;
     }
     
     /**
@@ -41,9 +55,15 @@ public class Scanner
                 ch = source.nextChar();
             }
         }
-        if (Character.isLetter(ch)) return Token.word(ch, source);
-        else if (Character.isDigit(ch)) return Token.number(ch, source);
-        else if (ch == '\'') return Token.string(ch, source);
-        else return Token.specialSymbol(ch, source);
+        int offset = source.offset();
+        Token token;
+        
+        if (Character.isLetter(ch)) token = Token.word(ch, source);
+        else if (Character.isDigit(ch)) token = Token.number(ch, source, errors);
+        else if (ch == '\'') token = Token.string(ch, source, errors);
+        else token = Token.specialSymbol(ch, source, errors);
+        
+        token.offset = offset;
+        return token;
     }
 }
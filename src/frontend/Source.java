@@ -10,6 +10,7 @@ package frontend;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 
 public class Source
 {
@@ -19,6 +20,7 @@ public class Source
     private BufferedReader source;
     
     private int lineNumber = 1;  // current source line number
+    private int offset = -1;     // of the current source character
     private char currentChar;    // current source character
     
     /**
@@ -39,12 +41,44 @@ public class Source
         }
     }
     
+    /**
+     * Constructor
+     * @param reader the reader of the source text, such as a
+     *               StringReader for a program that isn't in a file.
+     */
+    public Source(Reader reader)
+    {
+        source = new BufferedReader(reader);
+        currentChar = nextChar();  // read the first character
+    }
+    
+    /**
+     * Constructor for a part of a source, such as a statement to scan
+     * again, whose line numbers and offsets continue those before it.
+     * @param reader the reader of the part's text.
+     * @param lineNumber the line number of the part's first character.
+     * @param offset the offset of the part's first character.
+     */
+    public Source(Reader reader, int lineNumber, int offset)
+    {
+        this.source = new BufferedReader(reader);
+        this.lineNumber = lineNumber;
+        this.offset = offset - 1;
+        currentChar = nextChar();  // read the first character
+    }
+    
     /**
      * Getter.
      * @return the current source line number.
      */
     public int lineNumber() { return lineNumber; }
     
+    /**
+     * Getter.
+     * @return the offset of the current source character from the start.
+     */
+    public int offset() { return offset; }
+    
     /**
      * Getter.
      * @return the current source character.
@@ -62,6 +96,7 @@ public class Source
             int value = source.read();
             currentChar = value > -1 ? (char) value : EOF;
             if (currentChar == EOL) lineNumber++;
+            offset++;
             
             return currentChar;
         }
@@ -0,0 +1,132 @@
+/**
+ * Statement stream class for a simple interpreter.
+ *
+ * Runs a parser on a thread of its own, and hands the statements of the
+ * program's compound statement over to the executor's thread one at a
+ * time, as soon as each one is parsed. The queue between the threads is
+ * bounded, so the parser waits when it gets too far ahead, and a
+ * statement that the executor is done with isn't referenced anymore.
+ * The parser resolves every variable that it hands over to its symbol
+ * table entry, so the executor never looks up the symbol table while the
+ * parser adds to it.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package frontend;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import intermediate.*;
+
+public class StatementStream implements Iterator<Node>
+{
+    public static final int DEFAULT_CAPACITY = 1024;  // statements
+
+    private static final Node END = new Node(Node.NodeType.PROGRAM);  // marks the end
+
+    private ArrayBlockingQueue<Node> queue;
+    private Thread thread;      // of the parser
+    private Node next;          // taken from the queue but not returned yet, or null
+    private Throwable failure;  // thrown by the parser, or null
+
+    /**
+     * Constructor. The parser starts at once.
+     * @param parser the parser, which mustn't have started.
+     * @param capacity the number of parsed statements that can wait.
+     * @param stackSize the stack size of the parser's thread.
+     */
+    public StatementStream(Parser parser, int capacity, long stackSize)
+    {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(null,
+                                 () -> {
+                                     try
+                                     {
+                                         parser.parseProgram(this::put);
+                                     }
+                                     catch (RuntimeException | Error error)
+                                     {
+                                         failure = error;
+                                     }
+
+                                     put(END);
+                                 },
+                                 "parser", stackSize);
+        thread.start();
+    }
+
+    /**
+     * Hand over a statement, and wait if the queue is full.
+     * @param node the statement's node.
+     */
+    private void put(Node node)
+    {
+        try
+        {
+            queue.put(node);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for the next statement, or for the parser to finish.
+     * @return true if there is another statement.
+     */
+    @Override
+    public boolean hasNext()
+    {
+        while (next == null)
+        {
+            try
+            {
+                next = queue.take();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return next != END;
+    }
+
+    @Override
+    public Node next()
+    {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        Node node = next;
+        next = null;
+        return node;
+    }
+
+    /**
+     * Skip any statements left, and wait for the parser to finish.
+     * Its error count is final then. Anything that the parser threw,
+     * such as a StackOverflowError, is thrown again here.
+     */
+    public void finish()
+    {
+        while (hasNext()) next();
+
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error)            throw (Error) failure;
+    }
+}
@@ -11,6 +11,7 @@
  */
 package frontend;
 
+import java.io.PrintStream;
 import java.util.HashMap;
 
 public class Token
@@ -68,6 +69,7 @@ public class Token
     public int lineNumber = 0;   // source line number of the token
     public String text = "";     // text of the token
     public Object value = null;  // the value (if any) of the token
+    public int offset = 0;       // of the token's first character in the source
     
     /**
      * Constructor.
@@ -109,9 +111,10 @@ public class Token
      * Construct a number token and set its value.
      * @param firstChar the first character of the token.
      * @param source the input source.
+     * @param errors the stream to print token errors to.
      * @return the number token.
      */
-    public static Token number(char firstChar, Source source)
+    public static Token number(char firstChar, Source source, PrintStream errors)
     {
         Token token = new Token(firstChar);
         token.lineNumber = source.lineNumber();
@@ -144,7 +147,7 @@ public class Token
         else
         {
             token.type = TokenType.ERROR;
-            tokenError(token, "Invalid number");
+            tokenError(token, "Invalid number", errors);
         }
         
         return token;
@@ -154,9 +157,10 @@ public class Token
      * Construct a string token and set its value.
      * @param firstChar the first character of the token.
      * @param source the input source.
+     * @param errors the stream to print token errors to.
      * @return the string token.
      */
-    public static Token string(char firstChar, Source source)
+    public static Token string(char firstChar, Source source, PrintStream errors)
     {
         Token token = new Token(firstChar);  // the leading '
         token.lineNumber = source.lineNumber();
@@ -195,7 +199,7 @@ public class Token
         else if(source.currentChar() == source.EOF)
         {
             token.type = TokenType.ERROR;
-            tokenError(token, "String not closed");
+            tokenError(token, "String not closed", errors);
         }
         
         // Don't include the leading and trailing ' in the value.
@@ -208,9 +212,10 @@ public class Token
      * Construct a special symbol token and set its value.
      * @param firstChar the first character of the token.
      * @param source the input source.
+     * @param errors the stream to print token errors to.
      * @return the special symbol token.
      */
-    public static Token specialSymbol(char firstChar, Source source)
+    public static Token specialSymbol(char firstChar, Source source, PrintStream errors)
     {
         Token token = new Token(firstChar);
         token.lineNumber = source.lineNumber();
@@ -306,7 +311,7 @@ public class Token
             default: 
             {
                 token.type = TokenType.ERROR;
-                tokenError(token, "Invalid token");
+                tokenError(token, "Invalid token", errors);
             }
         }
         
@@ -318,10 +323,11 @@ public class Token
      * Handle a token error.
      * @param token the bad token.
      * @param message the error message.
+     * @param errors the stream to print the error to.
      */
-    private static void tokenError(Token token, String message)
+    private static void tokenError(Token token, String message, PrintStream errors)
     {
-        System.out.println("TOKEN ERROR at line " + token.lineNumber 
+        errors.println("TOKEN ERROR at line " + token.lineNumber 
                            + ": " + message + " at '" + token.text + "'");
     }
 }
@@ -0,0 +1,52 @@
+/**
+ * Token replay class for a simple interpreter.
+ *
+ * A scanner that returns tokens that were already scanned, such as those
+ * of a compound statement that the parser skimmed, and then continues
+ * with the tokens of the scanner that scanned them.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package frontend;
+
+import java.util.ArrayList;
+
+public class TokenReplay extends Scanner
+{
+    private ArrayList<Token> tokens;
+    private int index;   // of the next token to return
+    private Scanner rest;  // of the tokens after these
+
+    /**
+     * Constructor.
+     * @param tokens the tokens to replay.
+     * @param rest the scanner of the tokens after them.
+     */
+    public TokenReplay(ArrayList<Token> tokens, Scanner rest)
+    {
+        super(null, null);  // never reads a source itself
+        this.tokens = tokens;
+        this.index = 0;
+        this.rest = rest;
+    }
+
+    /**
+     * Getter.
+     * @return true if every token was replayed.
+     */
+    public boolean isDone() { return index == tokens.size(); }
+
+    /**
+     * Getter.
+     * @return the scanner of the tokens after the replayed ones.
+     */
+    public Scanner rest() { return rest; }
+
+    @Override
+    public Token nextToken()
+    {
+        return index < tokens.size() ? tokens.get(index++) : rest.nextToken();
+    }
+}
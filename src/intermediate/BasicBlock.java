@@ -0,0 +1,72 @@
+/**
+ * Basic block class of the control flow graph of a simple interpreter.
+ *
+ * A maximal straight-line sequence of instructions. Control enters only
+ * at the top and leaves only through the terminator at the bottom.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+
+public class BasicBlock
+{
+    public int id;
+    public ArrayList<Instruction> instructions;
+    public ArrayList<BasicBlock> predecessors;
+    public ArrayList<BasicBlock> successors;
+    public BasicBlock dominator;  // immediate dominator, or null for the entry
+
+    /**
+     * Constructor.
+     * @param id the block's number.
+     */
+    public BasicBlock(int id)
+    {
+        this.id = id;
+        this.instructions = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+        this.successors = new ArrayList<>();
+        this.dominator = null;
+    }
+
+    /**
+     * Append an instruction.
+     * @param instruction the instruction.
+     * @return the instruction.
+     */
+    public Instruction append(Instruction instruction)
+    {
+        instruction.block = this;
+        instructions.add(instruction);
+
+        return instruction;
+    }
+
+    /**
+     * @return the block's terminator, or null if it has none yet.
+     */
+    public Instruction terminator()
+    {
+        if (instructions.isEmpty()) return null;
+
+        Instruction last = instructions.get(instructions.size() - 1);
+        return last.isTerminator() ? last : null;
+    }
+
+    /**
+     * Add a control flow edge to a successor block.
+     * @param successor the successor.
+     */
+    public void addSuccessor(BasicBlock successor)
+    {
+        successors.add(successor);
+        successor.predecessors.add(this);
+    }
+
+    @Override
+    public String toString() { return "B" + id; }
+}
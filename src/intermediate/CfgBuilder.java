@@ -0,0 +1,801 @@
+/**
+ * Control flow graph builder class for a simple interpreter.
+ *
+ * Builds the SSA form of a program from its parse tree. Because the
+ * language is structured, the current value of each variable is tracked
+ * in an environment while the tree is walked: an IF, CASE or loop exit
+ * merges the values along its incoming edges with phi instructions, and
+ * a loop header gets a phi for each variable that the loop assigns.
+ * Assignments are logged on a trail, so each branch is undone before the
+ * next one is built, and a merge looks only at the variables that some
+ * branch assigned.
+ * Phis that turn out to merge a single value are removed. Blocks that
+ * can't be reached, such as the code after a loop with no test, are
+ * removed as well.
+ *
+ * The graph has the same semantics as the tree walker: both operands of
+ * AND and OR are evaluated, a CASE compares values with Double.compare()
+ * and takes the first matching constant, and an ill-typed expression
+ * becomes an INVALID instruction that fails at run time.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import static intermediate.Node.NodeType.*;
+import static intermediate.Instruction.Opcode;
+
+public class CfgBuilder
+{
+    private static final Object LINE = new Object();  // line number pseudo-variable
+    private static final Instruction REMOVED = new Instruction(Opcode.PHI);  // no value
+
+    private Symtab symtab;
+    private ArrayList<BasicBlock> blocks;           // all blocks created
+    private BasicBlock entry;
+    private BasicBlock current;                     // block being filled
+    private IdentityHashMap<Object, Instruction> environment;  // current values
+    private ArrayList<Object> trailVariables;       // assigned variables, in order
+    private ArrayList<Instruction> trailValues;     // their previous values
+    private HashMap<Long, Instruction> constants;   // by bit pattern
+    private ArrayList<Instruction> phis;            // all phis created
+    private ArrayList<ControlFlowGraph.Use> uses;   // of numeric expression nodes
+
+    /**
+     * Constructor.
+     * @param symtab the program's symbol table.
+     */
+    public CfgBuilder(Symtab symtab)
+    {
+        this.symtab = symtab;
+    }
+
+    /**
+     * Build the control flow graph of a program.
+     * @param programNode the root of the program's parse tree.
+     * @return the control flow graph.
+     */
+    public ControlFlowGraph build(Node programNode)
+    {
+        blocks = new ArrayList<>();
+        constants = new HashMap<>();
+        phis = new ArrayList<>();
+        environment = new IdentityHashMap<>();
+        trailVariables = new ArrayList<>();
+        trailValues = new ArrayList<>();
+        uses = new ArrayList<>();
+
+        entry = newBlock();
+        current = entry;
+
+        statement(programNode.children.get(0));
+        current.append(new Instruction(Opcode.EXIT));
+
+        ControlFlowGraph graph = new ControlFlowGraph(programNode.text);
+        graph.blocks.add(entry);
+        removeUnreachableBlocks();
+        removeTrivialPhis();
+        removeUnusedConstants();
+        graph.renumber();
+
+        // Nodes in removed blocks, or whose phis were removed, have no value.
+        for (ControlFlowGraph.Use use : uses)
+        {
+            BasicBlock block = use.block;
+            Instruction value = resolve(use.value);
+
+            if (   (block.id < graph.blocks.size()) && (graph.blocks.get(block.id) == block)
+                && (value != REMOVED))
+            {
+                graph.uses.add(new ControlFlowGraph.Use(use.node, value, block));
+            }
+        }
+
+        return graph;
+    }
+
+    // ------------------------------------------------------------------
+    // Statements
+
+    private void statement(Node node)
+    {
+        if (node == null) return;
+
+        switch (node.type)
+        {
+            case COMPOUND :
+            {
+                setLine(node);
+                for (Node child : node.children) statement(child);
+                break;
+            }
+
+            case ASSIGN :
+            {
+                setLine(node);
+                Instruction value = number(node.children.get(1));
+                assign(variableOf(node.children.get(0)), value);
+                break;
+            }
+
+            case LOOP :
+            {
+                setLine(node);
+                loop(node);
+                break;
+            }
+
+            case WRITE :
+            case WRITELN :
+            {
+                setLine(node);
+                write(node);
+                break;
+            }
+
+            case IFNODE :  ifStatement(node);  break;
+            case SELECT :  select(node);       break;
+            case TEST :    condition(node.children.get(0));  break;
+
+            // An expression as a statement is evaluated for its errors.
+            case EQ : case NE : case LT : case LTE : case GT : case GTE :
+            case AND : case OR : case NOT :
+            {
+                condition(node);
+                break;
+            }
+
+            case VARIABLE : case INTEGER_CONSTANT : case REAL_CONSTANT :
+            case ADD : case SUBTRACT : case MULTIPLY : case DIVIDE : case DIV :
+            {
+                number(node);
+                break;
+            }
+
+            default :  break;
+        }
+    }
+
+    private void setLine(Node node)
+    {
+        assign(LINE, constant(node.lineNumber));
+    }
+
+    private void loop(Node loopNode)
+    {
+        BasicBlock header = newBlock();
+        BasicBlock exit = newBlock();
+        IdentityHashMap<BasicBlock, IdentityHashMap<Object, Instruction>> exits =
+            new IdentityHashMap<>();
+        int mark = trailVariables.size();
+
+        jump(current, header);
+        current = header;
+
+        // A phi for each variable that the loop assigns.
+        ArrayList<Object> assigned = assignedVariables(loopNode);
+        ArrayList<Instruction> headerPhis = new ArrayList<>();
+
+        for (Object variable : assigned)
+        {
+            Instruction phi = newPhi(header, variable);
+            phi.addOperand(read(variable));
+            assign(variable, phi);
+            headerPhis.add(phi);
+        }
+
+        for (Node child : loopNode.children)
+        {
+            if ((child != null) && (child.type == TEST))
+            {
+                Instruction test = condition(child.children.get(0));
+                BasicBlock next = newBlock();
+
+                exits.put(current, changesSince(mark));
+                branch(test, exit, next);
+                current = next;
+            }
+            else statement(child);
+        }
+
+        // Back edge.
+        jump(current, header);
+        for (int i = 0; i < assigned.size(); i++)
+        {
+            headerPhis.get(i).addOperand(read(assigned.get(i)));
+        }
+
+        undo(mark);
+        current = exit;
+        merge(exit, exits);
+    }
+
+    private void ifStatement(Node ifNode)
+    {
+        ArrayList<Node> children = ifNode.children;
+        Instruction test = condition(children.get(0).children.get(0));
+
+        BasicBlock branchBlock = current;
+        BasicBlock thenBlock = newBlock();
+        BasicBlock join = newBlock();
+        BasicBlock elseBlock = children.size() > 2 ? newBlock() : join;
+
+        IdentityHashMap<BasicBlock, IdentityHashMap<Object, Instruction>> incoming =
+            new IdentityHashMap<>();
+        int mark = trailVariables.size();
+
+        branch(test, thenBlock, elseBlock);
+
+        current = thenBlock;
+        statement(children.get(1));
+        incoming.put(current, changesSince(mark));
+        undo(mark);
+        jump(current, join);
+
+        if (elseBlock != join)
+        {
+            current = elseBlock;
+            statement(children.get(2));
+            incoming.put(current, changesSince(mark));
+            undo(mark);
+            jump(current, join);
+        }
+        else incoming.put(branchBlock, new IdentityHashMap<>());
+
+        current = join;
+        merge(join, incoming);
+    }
+
+    private void select(Node selectNode)
+    {
+        ArrayList<Node> children = selectNode.children;
+        Instruction selector = number(children.get(0));
+
+        BasicBlock switchBlock = current;
+        BasicBlock join = newBlock();
+        IdentityHashMap<BasicBlock, IdentityHashMap<Object, Instruction>> incoming =
+            new IdentityHashMap<>();
+        int mark = trailVariables.size();
+
+        // The keys are the constants in order, as far as the first one
+        // that isn't a number. The tree walker fails on that one.
+        ArrayList<Double> keys = new ArrayList<>();
+        ArrayList<Integer> targets = new ArrayList<>();
+        Node invalidConstant = null;
+
+        for (int i = 1; (i < children.size()) && (invalidConstant == null); i++)
+        {
+            for (Node constant : children.get(i).children.get(0).children)
+            {
+                if ((constant.type != INTEGER_CONSTANT) && (constant.type != REAL_CONSTANT))
+                {
+                    invalidConstant = constant;
+                    break;
+                }
+
+                keys.add(((Number) constant.value).doubleValue());
+                targets.add(i);
+            }
+        }
+
+        Instruction terminator = new Instruction(Opcode.SWITCH);
+        terminator.node = selectNode;
+        terminator.addOperand(selector);
+        switchBlock.append(terminator);
+
+        // Successor 0 is the default.
+        if (invalidConstant != null)
+        {
+            BasicBlock errorBlock = newBlock();
+            switchBlock.addSuccessor(errorBlock);
+
+            current = errorBlock;
+            invalid(invalidConstant, "Invalid numeric expression");
+            incoming.put(current, new IdentityHashMap<>());
+            jump(current, join);
+        }
+        else
+        {
+            switchBlock.addSuccessor(join);
+            incoming.put(switchBlock, new IdentityHashMap<>());
+        }
+
+        // Successor i is the block of branch i.
+        for (int i = 1; i < children.size(); i++)
+        {
+            BasicBlock branchBlock = newBlock();
+            switchBlock.addSuccessor(branchBlock);
+
+            current = branchBlock;
+            statement(children.get(i).children.get(1));
+            incoming.put(current, changesSince(mark));
+            undo(mark);
+            jump(current, join);
+        }
+
+        terminator.keys = new double[keys.size()];
+        terminator.targets = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++)
+        {
+            terminator.keys[i] = keys.get(i);
+            terminator.targets[i] = targets.get(i);
+        }
+
+        current = join;
+        merge(join, incoming);
+    }
+
+    private void write(Node writeNode)
+    {
+        if (!writeNode.children.isEmpty())
+        {
+            Instruction write = new Instruction(Opcode.WRITE);
+            write.node = writeNode;
+
+            Node valueNode = writeNode.children.get(0);
+            if (valueNode.type != STRING_CONSTANT) write.addOperand(number(valueNode));
+
+            current.append(write);
+        }
+
+        if (writeNode.type == WRITELN)
+        {
+            Instruction newline = new Instruction(Opcode.NEWLINE);
+            newline.node = writeNode;
+            current.append(newline);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Expressions
+
+    private Instruction number(Node node)
+    {
+        Instruction value;
+
+        switch (node.type)
+        {
+            case VARIABLE :         value = read(variableOf(node));            break;
+            case INTEGER_CONSTANT : value = constant((Long) node.value);       break;
+            case REAL_CONSTANT :    value = constant((Double) node.value);     break;
+
+            case ADD :      value = binary(Opcode.ADD, node, false);      break;
+            case SUBTRACT : value = binary(Opcode.SUBTRACT, node, false); break;
+            case MULTIPLY : value = binary(Opcode.MULTIPLY, node, false); break;
+            case DIVIDE :   value = binary(Opcode.DIVIDE, node, false);   break;
+            case DIV :      value = binary(Opcode.DIV, node, false);      break;
+
+            default :       value = invalid(node, "Invalid numeric expression"); break;
+        }
+
+        uses.add(new ControlFlowGraph.Use(node, value, current));
+
+        return value;
+    }
+
+    private Instruction condition(Node node)
+    {
+        switch (node.type)
+        {
+            case EQ :  return binary(Opcode.EQ, node, false);
+            case NE :  return binary(Opcode.NE, node, false);
+            case LT :  return binary(Opcode.LT, node, false);
+            case LTE : return binary(Opcode.LTE, node, false);
+            case GT :  return binary(Opcode.GT, node, false);
+            case GTE : return binary(Opcode.GTE, node, false);
+
+            case AND : return binary(Opcode.AND, node, true);
+            case OR :  return binary(Opcode.OR, node, true);
+
+            case NOT :
+            {
+                Instruction instruction = new Instruction(Opcode.NOT);
+                instruction.node = node;
+                instruction.addOperand(condition(node.children.get(0)));
+
+                return current.append(instruction);
+            }
+
+            default :  return invalid(node, "Invalid boolean expression");
+        }
+    }
+
+    /**
+     * Make a binary instruction. A division also takes the line number.
+     * @param opcode the opcode.
+     * @param node the operator node.
+     * @param logical true if the operands are conditions, else numbers.
+     * @return the instruction.
+     */
+    private Instruction binary(Opcode opcode, Node node, boolean logical)
+    {
+        Instruction left  = logical ? condition(node.children.get(0))
+                                    : number(node.children.get(0));
+        Instruction right = logical ? condition(node.children.get(1))
+                                    : number(node.children.get(1));
+
+        Instruction instruction = new Instruction(opcode);
+        instruction.node = node;
+        instruction.addOperand(left);
+        instruction.addOperand(right);
+        if ((opcode == Opcode.DIVIDE) || (opcode == Opcode.DIV)) instruction.addOperand(read(LINE));
+
+        return current.append(instruction);
+    }
+
+    private Instruction invalid(Node node, String message)
+    {
+        Instruction instruction = new Instruction(Opcode.INVALID);
+        instruction.node = node;
+        instruction.message = message;
+        instruction.addOperand(read(LINE));
+
+        return current.append(instruction);
+    }
+
+    /**
+     * Get the unique CONSTANT instruction of a value.
+     * Constants are at the top of the entry block.
+     * @param value the value.
+     * @return the instruction.
+     */
+    private Instruction constant(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        Instruction instruction = constants.get(bits);
+
+        if (instruction == null)
+        {
+            instruction = new Instruction(Opcode.CONSTANT);
+            instruction.constant = value;
+            instruction.block = entry;
+            entry.instructions.add(constants.size(), instruction);
+            constants.put(bits, instruction);
+        }
+
+        return instruction;
+    }
+
+    // ------------------------------------------------------------------
+    // SSA values of variables
+
+    private Object variableOf(Node variableNode)
+    {
+        return variableNode.entry != null ? variableNode.entry
+                                          : symtab.lookup(variableNode.text);
+    }
+
+    /**
+     * Read the current value of a variable. Variables start out as 0,
+     * and so does the line number.
+     * @param variable the variable's symbol table entry, or LINE.
+     * @return the instruction of the value.
+     */
+    private Instruction read(Object variable)
+    {
+        Instruction value = environment.get(variable);
+        if (value == null) return constant(0.0);
+
+        value = resolve(value);
+        environment.put(variable, value);
+
+        return value;
+    }
+
+    private static Instruction resolve(Instruction value)
+    {
+        while (value.replacement != null) value = value.replacement;
+        return value;
+    }
+
+    private Instruction newPhi(BasicBlock block, Object variable)
+    {
+        Instruction phi = new Instruction(Opcode.PHI);
+        phi.variable = variable != LINE ? (SymtabEntry) variable : null;
+        phi.block = block;
+
+        // Phis come first in their block.
+        int position = 0;
+        while (   (position < block.instructions.size())
+               && (block.instructions.get(position).opcode == Opcode.PHI))
+        {
+            position++;
+        }
+        block.instructions.add(position, phi);
+        phis.add(phi);
+
+        return phi;
+    }
+
+    /**
+     * Assign a value to a variable, and log the assignment on the trail.
+     * @param variable the variable's symbol table entry, or LINE.
+     * @param value the instruction of the value.
+     */
+    private void assign(Object variable, Instruction value)
+    {
+        trailVariables.add(variable);
+        trailValues.add(environment.put(variable, value));
+    }
+
+    /**
+     * Undo the assignments logged since a mark on the trail.
+     * @param mark the size of the trail at the mark.
+     */
+    private void undo(int mark)
+    {
+        for (int i = trailVariables.size() - 1; i >= mark; i--)
+        {
+            Object variable = trailVariables.remove(i);
+            Instruction value = trailValues.remove(i);
+
+            if (value != null) environment.put(variable, value);
+            else               environment.remove(variable);
+        }
+    }
+
+    /**
+     * Get the current values of the variables assigned since a mark.
+     * @param mark the size of the trail at the mark.
+     * @return the values.
+     */
+    private IdentityHashMap<Object, Instruction> changesSince(int mark)
+    {
+        IdentityHashMap<Object, Instruction> changes = new IdentityHashMap<>();
+
+        for (int i = mark; i < trailVariables.size(); i++)
+        {
+            Object variable = trailVariables.get(i);
+            if (!changes.containsKey(variable)) changes.put(variable, read(variable));
+        }
+
+        return changes;
+    }
+
+    /**
+     * Merge the values along a block's incoming edges. Each edge has the
+     * values of the variables assigned along it, and the environment has
+     * the values of the rest. The merged values are assigned.
+     * @param join the block.
+     * @param incoming the values assigned along each incoming edge.
+     */
+    private void merge(BasicBlock join,
+                       IdentityHashMap<BasicBlock, IdentityHashMap<Object, Instruction>> incoming)
+    {
+        if (join.predecessors.isEmpty()) return;  // unreachable
+
+        // The variables assigned along any edge.
+        IdentityHashMap<Object, Boolean> variables = new IdentityHashMap<>();
+        for (IdentityHashMap<Object, Instruction> edge : incoming.values())
+        {
+            for (Object variable : edge.keySet()) variables.put(variable, true);
+        }
+
+        for (Object variable : variables.keySet())
+        {
+            Instruction same = null;
+            boolean differ = false;
+
+            for (BasicBlock predecessor : join.predecessors)
+            {
+                Instruction value = valueAlong(incoming.get(predecessor), variable);
+
+                if (same == null) same = value;
+                else if (value != same) differ = true;
+            }
+
+            if (differ)
+            {
+                Instruction phi = newPhi(join, variable);
+                for (BasicBlock predecessor : join.predecessors)
+                {
+                    phi.addOperand(valueAlong(incoming.get(predecessor), variable));
+                }
+
+                assign(variable, phi);
+            }
+            else if (same != read(variable)) assign(variable, same);
+        }
+    }
+
+    private Instruction valueAlong(IdentityHashMap<Object, Instruction> edge, Object variable)
+    {
+        Instruction value = edge.get(variable);
+        return value != null ? resolve(value) : read(variable);
+    }
+
+    /**
+     * List the variables that a loop assigns, and the line number if
+     * any statement in the loop sets it.
+     * @param loopNode the LOOP node.
+     * @return the list of variables.
+     */
+    private ArrayList<Object> assignedVariables(Node loopNode)
+    {
+        IdentityHashMap<Object, Boolean> found = new IdentityHashMap<>();
+        ArrayList<Object> variables = new ArrayList<>();
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(loopNode);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            switch (node.type)
+            {
+                case ASSIGN :
+                {
+                    Object variable = variableOf(node.children.get(0));
+                    if (found.put(variable, true) == null) variables.add(variable);
+
+                    // An assignment also sets the line number.
+                    if ((node != loopNode) && (found.put(LINE, true) == null)) variables.add(LINE);
+                    break;
+                }
+
+                case COMPOUND :
+                case LOOP :
+                case WRITE :
+                case WRITELN :
+                {
+                    if ((node != loopNode) && (found.put(LINE, true) == null)) variables.add(LINE);
+                    break;
+                }
+
+                default : break;
+            }
+
+            for (Node child : node.children)
+            {
+                if (child != null) stack.add(child);
+            }
+        }
+
+        return variables;
+    }
+
+    private void removeUnusedConstants()
+    {
+        entry.instructions.removeIf(instruction -> (instruction.opcode == Opcode.CONSTANT)
+                                                   && instruction.users.isEmpty());
+    }
+
+    // ------------------------------------------------------------------
+    // Blocks
+
+    private BasicBlock newBlock()
+    {
+        BasicBlock block = new BasicBlock(blocks.size());
+        blocks.add(block);
+
+        return block;
+    }
+
+    private void jump(BasicBlock from, BasicBlock to)
+    {
+        from.append(new Instruction(Opcode.JUMP));
+        from.addSuccessor(to);
+    }
+
+    private void branch(Instruction test, BasicBlock ifTrue, BasicBlock ifFalse)
+    {
+        Instruction terminator = new Instruction(Opcode.BRANCH);
+        terminator.addOperand(test);
+        current.append(terminator);
+
+        current.addSuccessor(ifTrue);
+        current.addSuccessor(ifFalse);
+    }
+
+    /**
+     * Remove the blocks that can't be reached from the entry, and
+     * the phi operands of their edges.
+     */
+    private void removeUnreachableBlocks()
+    {
+        IdentityHashMap<BasicBlock, Boolean> reachable = new IdentityHashMap<>();
+        for (BasicBlock block : ControlFlowGraph.reversePostorder(entry))
+        {
+            reachable.put(block, true);
+        }
+
+        for (BasicBlock block : blocks)
+        {
+            if (reachable.containsKey(block))
+            {
+                for (int i = block.predecessors.size() - 1; i >= 0; i--)
+                {
+                    if (reachable.containsKey(block.predecessors.get(i))) continue;
+
+                    block.predecessors.remove(i);
+                    for (Instruction instruction : block.instructions)
+                    {
+                        if (instruction.opcode != Opcode.PHI) break;
+
+                        Instruction operand = instruction.operands.remove(i);
+                        operand.users.remove(instruction);
+                    }
+                }
+            }
+            else
+            {
+                for (Instruction instruction : block.instructions)
+                {
+                    for (Instruction operand : instruction.operands)
+                    {
+                        operand.users.remove(instruction);
+                    }
+                }
+            }
+        }
+
+        phis.removeIf(phi -> !reachable.containsKey(phi.block));
+    }
+
+    /**
+     * Remove phis that merge only one value besides themselves,
+     * and phis that have no users.
+     */
+    private void removeTrivialPhis()
+    {
+        ArrayList<Instruction> worklist = new ArrayList<>(phis);
+        IdentityHashMap<Instruction, Boolean> stale = new IdentityHashMap<>();  // users to clean
+
+        while (!worklist.isEmpty())
+        {
+            Instruction phi = worklist.remove(worklist.size() - 1);
+            if (phi.replacement != null) continue;
+
+            // Removed phis are dropped from users lists lazily.
+            phi.users.removeIf(user -> user.replacement != null);
+
+            Instruction same = null;
+            boolean trivial = true;
+
+            for (Instruction operand : phi.operands)
+            {
+                if ((operand == phi) || (operand == same)) continue;
+                if (same != null) trivial = false;
+                same = operand;
+            }
+
+            if (!trivial && !phi.users.isEmpty()) continue;
+            if (same == null) same = constant(0.0);
+
+            // An unused phi that merges different values has no replacement.
+            if (!trivial) same = REMOVED;
+
+            // Removing the phi can make its phi users trivial,
+            // and its phi operands unused.
+            for (Instruction user : phi.users)
+            {
+                if ((user != phi) && (user.opcode == Opcode.PHI)) worklist.add(user);
+            }
+            for (Instruction operand : phi.operands)
+            {
+                if ((operand != phi) && (operand.opcode == Opcode.PHI)) worklist.add(operand);
+            }
+
+            phi.replaceUsesWith(same);
+            phi.replacement = same;
+            for (Instruction operand : phi.operands) stale.put(operand, true);
+        }
+
+        for (Instruction value : stale.keySet())
+        {
+            value.users.removeIf(user -> user.replacement != null);
+        }
+        for (BasicBlock block : blocks)
+        {
+            block.instructions.removeIf(instruction -> instruction.replacement != null);
+        }
+
+        phis.removeIf(phi -> phi.replacement != null);
+    }
+}
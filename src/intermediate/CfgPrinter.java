@@ -0,0 +1,187 @@
+/**
+ * Control flow graph printer class for a simple interpreter.
+ *
+ * Prints each basic block with its predecessors, immediate dominator
+ * and instructions, one per line.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+
+import static intermediate.Instruction.Opcode;
+
+public class CfgPrinter
+{
+    private static final String INDENT_SIZE = "    ";
+
+    private StringBuilder line;  // output line
+
+    /**
+     * Constructor
+     */
+    public CfgPrinter()
+    {
+        this.line = new StringBuilder();
+    }
+
+    /**
+     * Print a control flow graph.
+     * @param graph the graph.
+     */
+    public void print(ControlFlowGraph graph)
+    {
+        line.append("PROGRAM " + graph.name);
+        printLine();
+
+        for (BasicBlock block : graph.blocks) print(block);
+    }
+
+    /**
+     * Print a basic block.
+     * @param block the block.
+     */
+    private void print(BasicBlock block)
+    {
+        printLine();
+        line.append(block + ":");
+
+        if (!block.predecessors.isEmpty())
+        {
+            line.append(" preds");
+            appendList(block.predecessors);
+        }
+        if (block.dominator != null) line.append(" idom " + block.dominator);
+        printLine();
+
+        for (Instruction instruction : block.instructions)
+        {
+            line.append(INDENT_SIZE);
+            append(instruction);
+            printLine();
+        }
+    }
+
+    private void append(Instruction instruction)
+    {
+        if (!instruction.isTerminator() && (instruction.opcode != Opcode.WRITE)
+                                        && (instruction.opcode != Opcode.NEWLINE))
+        {
+            line.append("%" + instruction.id + " = ");
+        }
+
+        line.append(instruction.opcode.toString().toLowerCase());
+        ArrayList<BasicBlock> successors = instruction.block.successors;
+
+        switch (instruction.opcode)
+        {
+            case CONSTANT :
+            {
+                line.append(" " + format(instruction.constant));
+                break;
+            }
+
+            case PHI :
+            {
+                line.append(" " + (instruction.variable != null ? instruction.variable.getName()
+                                                                : "line"));
+
+                ArrayList<BasicBlock> predecessors = instruction.block.predecessors;
+                for (int i = 0; i < instruction.operands.size(); i++)
+                {
+                    line.append(i == 0 ? " [" : ", [");
+                    line.append("%" + instruction.operands.get(i).id);
+                    if (i < predecessors.size()) line.append(" " + predecessors.get(i));
+                    line.append("]");
+                }
+                break;
+            }
+
+            case INVALID :
+            {
+                line.append(" \"" + instruction.message + "\" line %"
+                            + instruction.operands.get(0).id);
+                break;
+            }
+
+            case WRITE :
+            {
+                ArrayList<Node> children = instruction.node.children;
+
+                if (instruction.operands.isEmpty())
+                {
+                    line.append(" '" + children.get(0).value + "'");
+                }
+                else line.append(" %" + instruction.operands.get(0).id);
+
+                if (children.size() > 1) line.append(" : " + children.get(1).value);
+                if (children.size() > 2) line.append(" : " + children.get(2).value);
+                break;
+            }
+
+            case JUMP :
+            {
+                line.append(" " + successors.get(0));
+                break;
+            }
+
+            case BRANCH :
+            {
+                line.append(" %" + instruction.operands.get(0).id + ", "
+                            + successors.get(0) + ", " + successors.get(1));
+                break;
+            }
+
+            case SWITCH :
+            {
+                line.append(" %" + instruction.operands.get(0).id);
+                for (int i = 0; i < instruction.keys.length; i++)
+                {
+                    line.append(", " + format(instruction.keys[i]) + ": "
+                                + successors.get(instruction.targets[i]));
+                }
+                line.append(", default: " + successors.get(0));
+                break;
+            }
+
+            default :
+            {
+                for (int i = 0; i < instruction.operands.size(); i++)
+                {
+                    line.append(i == 0 ? " %" : ", %");
+                    line.append(instruction.operands.get(i).id);
+                }
+                break;
+            }
+        }
+    }
+
+    private void appendList(ArrayList<BasicBlock> blocks)
+    {
+        for (int i = 0; i < blocks.size(); i++)
+        {
+            line.append(i == 0 ? " " : ", ");
+            line.append(blocks.get(i));
+        }
+    }
+
+    private static String format(double value)
+    {
+        return (value == Math.rint(value)) && !Double.isInfinite(value)
+                   && (Math.abs(value) < 1e15) && (Double.doubleToRawLongBits(value) != Long.MIN_VALUE)
+               ? Long.toString((long) value)
+               : Double.toString(value);
+    }
+
+    /**
+     * Print an output line.
+     */
+    private void printLine()
+    {
+        System.out.println(line);
+        line.setLength(0);
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Control flow graph verifier class for a simple interpreter.
+ *
+ * Checks the structural and SSA invariants of a control flow graph:
+ * every block ends with exactly one terminator whose successor count
+ * fits its opcode, predecessor and successor lists agree, phis come
+ * first with one operand per predecessor, operands have the right
+ * types, the users lists match the operands, and every value is
+ * defined in a block that dominates its uses.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import static intermediate.Instruction.Opcode;
+
+public class CfgVerifier
+{
+    private ControlFlowGraph graph;
+    private ArrayList<String> errors;
+    private IdentityHashMap<Instruction, Integer> positions;  // index within its block
+    private IdentityHashMap<Instruction, Integer> uses;       // operand occurrences
+
+    /**
+     * Verify a control flow graph.
+     * @param graph the graph, with blocks numbered in reverse postorder.
+     * @return the list of errors found, empty if none.
+     */
+    public ArrayList<String> verify(ControlFlowGraph graph)
+    {
+        this.graph = graph;
+        this.errors = new ArrayList<>();
+        this.positions = new IdentityHashMap<>();
+        this.uses = new IdentityHashMap<>();
+
+        for (int i = 0; i < graph.blocks.size(); i++)
+        {
+            BasicBlock block = graph.blocks.get(i);
+            if (block.id != i) error(block, "is numbered out of order");
+
+            for (int j = 0; j < block.instructions.size(); j++)
+            {
+                Instruction instruction = block.instructions.get(j);
+
+                if (positions.put(instruction, j) != null)
+                {
+                    error(block, "contains %" + instruction.id + " twice");
+                }
+                if (instruction.block != block)
+                {
+                    error(block, "contains %" + instruction.id + " of another block");
+                }
+
+                for (Instruction operand : instruction.operands) uses.merge(operand, 1, Integer::sum);
+            }
+        }
+
+        if (!graph.blocks.isEmpty() && !graph.entry().predecessors.isEmpty())
+        {
+            error(graph.entry(), "is the entry but has predecessors");
+        }
+
+        for (BasicBlock block : graph.blocks)
+        {
+            verifyEdges(block);
+            verifyInstructions(block);
+        }
+
+        return errors;
+    }
+
+    private void verifyEdges(BasicBlock block)
+    {
+        for (BasicBlock successor : block.successors)
+        {
+            if (count(successor.predecessors, block) != count(block.successors, successor))
+            {
+                error(block, "has an edge to " + successor + " that isn't a predecessor edge");
+            }
+            if ((successor.id < 0) || (successor.id >= graph.blocks.size())
+                                   || (graph.blocks.get(successor.id) != successor))
+            {
+                error(block, "has a successor " + successor + " outside the graph");
+            }
+        }
+
+        for (BasicBlock predecessor : block.predecessors)
+        {
+            if (count(predecessor.successors, block) != count(block.predecessors, predecessor))
+            {
+                error(block, "has a predecessor " + predecessor + " without the edge");
+            }
+        }
+
+        if ((block != graph.entry()) && (block.dominator == null))
+        {
+            error(block, "has no dominator");
+        }
+    }
+
+    private void verifyInstructions(BasicBlock block)
+    {
+        ArrayList<Instruction> instructions = block.instructions;
+        boolean phisDone = false;
+
+        if (block.terminator() == null) error(block, "has no terminator");
+
+        for (int j = 0; j < instructions.size(); j++)
+        {
+            Instruction instruction = instructions.get(j);
+            String name = "%" + instruction.id + " in " + block;
+
+            if (instruction.opcode == Opcode.PHI)
+            {
+                if (phisDone) error(block, "has " + name + " after other instructions");
+                if (instruction.operands.size() != block.predecessors.size())
+                {
+                    error(block, "has " + name + " with " + instruction.operands.size()
+                                 + " operands for " + block.predecessors.size()
+                                 + " predecessors");
+                }
+            }
+            else phisDone = true;
+
+            if (instruction.isTerminator() && (j != instructions.size() - 1))
+            {
+                error(block, "has terminator " + name + " before its end");
+            }
+
+            verifyOperandCount(instruction, name);
+            verifySuccessorCount(instruction, name);
+
+            for (int k = 0; k < instruction.operands.size(); k++)
+            {
+                Instruction operand = instruction.operands.get(k);
+
+                if (!positions.containsKey(operand))
+                {
+                    error(block, "has " + name + " with an operand outside the graph");
+                    continue;
+                }
+                verifyDominance(instruction, k, operand, name);
+            }
+
+            if (instruction.users.size() != uses.getOrDefault(instruction, 0))
+            {
+                error(block, "has " + name + " with " + instruction.users.size()
+                             + " users for " + uses.getOrDefault(instruction, 0) + " uses");
+            }
+            for (Instruction user : instruction.users)
+            {
+                if (!user.operands.contains(instruction))
+                {
+                    error(block, "has " + name + " with a stale user %" + user.id);
+                }
+            }
+        }
+    }
+
+    private void verifyOperandCount(Instruction instruction, String name)
+    {
+        ArrayList<Instruction> operands = instruction.operands;
+        int expected;
+
+        switch (instruction.opcode)
+        {
+            case CONSTANT :
+            case JUMP :
+            case EXIT :
+            case NEWLINE :  expected = 0; break;
+
+            case NOT :
+            case BRANCH :
+            case SWITCH :
+            case INVALID :  expected = 1; break;
+
+            case DIVIDE :
+            case DIV :      expected = 3; break;
+
+            case PHI :      return;
+
+            case WRITE :    expected = operands.size() == 1 ? 1 : 0; break;
+
+            default :       expected = 2; break;
+        }
+
+        if (operands.size() != expected)
+        {
+            error(instruction.block, "has " + name + " with " + operands.size()
+                                     + " operands instead of " + expected);
+            return;
+        }
+
+        // Operand types.
+        switch (instruction.opcode)
+        {
+            case AND :
+            case OR :
+            case NOT :
+            case BRANCH :
+            {
+                for (Instruction operand : operands) expectBoolean(operand, name);
+                break;
+            }
+
+            case PHI :
+            case CONSTANT :
+            case JUMP :
+            case EXIT :
+            case NEWLINE :
+            case INVALID :  break;
+
+            default :
+            {
+                for (Instruction operand : operands) expectNumeric(operand, name);
+                break;
+            }
+        }
+
+        if (   (instruction.opcode == Opcode.SWITCH)
+            && (   (instruction.keys == null) || (instruction.targets == null)
+                || (instruction.keys.length != instruction.targets.length)))
+        {
+            error(instruction.block, "has " + name + " without matching keys and targets");
+        }
+    }
+
+    private void verifySuccessorCount(Instruction instruction, String name)
+    {
+        int successors = instruction.block.successors.size();
+
+        switch (instruction.opcode)
+        {
+            case EXIT :
+            {
+                if (successors != 0) error(instruction.block, "exits but has successors");
+                break;
+            }
+
+            case JUMP :
+            {
+                if (successors != 1) error(instruction.block, "jumps to " + successors + " blocks");
+                break;
+            }
+
+            case BRANCH :
+            {
+                if (successors != 2) error(instruction.block, "branches to " + successors + " blocks");
+                break;
+            }
+
+            case SWITCH :
+            {
+                if (successors < 1) error(instruction.block, "switches without a default");
+
+                if (instruction.targets != null)
+                {
+                    for (int target : instruction.targets)
+                    {
+                        if ((target < 1) || (target >= successors))
+                        {
+                            error(instruction.block, "has " + name + " with a bad target " + target);
+                        }
+                    }
+                }
+                break;
+            }
+
+            default : break;
+        }
+    }
+
+    /**
+     * Check that the definition of an operand dominates its use.
+     * The use of a phi operand is at the end of the matching predecessor.
+     */
+    private void verifyDominance(Instruction instruction, int k, Instruction operand, String name)
+    {
+        BasicBlock useBlock = instruction.block;
+        BasicBlock defineBlock = operand.block;
+
+        if (instruction.opcode == Opcode.PHI)
+        {
+            if (k >= useBlock.predecessors.size()) return;
+            useBlock = useBlock.predecessors.get(k);
+
+            if (!graph.dominates(defineBlock, useBlock))
+            {
+                error(instruction.block, "has " + name + " with operand %" + operand.id
+                                         + " that doesn't dominate " + useBlock);
+            }
+        }
+        else if (defineBlock == useBlock)
+        {
+            if (positions.get(operand) >= positions.get(instruction))
+            {
+                error(useBlock, "uses %" + operand.id + " before its definition in " + name);
+            }
+        }
+        else if (!graph.dominates(defineBlock, useBlock))
+        {
+            error(useBlock, "has " + name + " with operand %" + operand.id
+                            + " that doesn't dominate it");
+        }
+    }
+
+    private void expectBoolean(Instruction operand, String name)
+    {
+        if (!operand.isBoolean() && (operand.opcode != Opcode.INVALID))
+        {
+            error(operand.block, "has %" + operand.id + " used as a condition by " + name);
+        }
+    }
+
+    private void expectNumeric(Instruction operand, String name)
+    {
+        if (!operand.isNumeric() && (operand.opcode != Opcode.INVALID))
+        {
+            error(operand.block, "has %" + operand.id + " used as a number by " + name);
+        }
+    }
+
+    private static <T> int count(ArrayList<T> list, T item)
+    {
+        int count = 0;
+        for (T element : list) if (element == item) count++;
+
+        return count;
+    }
+
+    private void error(BasicBlock block, String message)
+    {
+        errors.add(block + " " + message);
+    }
+}
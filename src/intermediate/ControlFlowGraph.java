@@ -0,0 +1,246 @@
+/**
+ * Control flow graph class for a simple interpreter.
+ *
+ * The SSA form of a program: basic blocks with explicit branches,
+ * built from the parse tree by a CfgBuilder. The blocks are kept in
+ * reverse postorder, so the entry block is first and every block comes
+ * before the blocks it dominates.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+public class ControlFlowGraph
+{
+    public String name;                  // program name
+    public ArrayList<BasicBlock> blocks;  // in reverse postorder
+    public ArrayList<Use> uses;          // of numeric expression nodes
+
+    /**
+     * The value of a numeric expression node where the node occurs.
+     * The parser can share a node, such as the control variable
+     * of a FOR loop, between several places.
+     */
+    public static class Use
+    {
+        public final Node node;
+        public final Instruction value;
+        public final BasicBlock block;  // where the node is evaluated
+
+        public Use(Node node, Instruction value, BasicBlock block)
+        {
+            this.node = node;
+            this.value = value;
+            this.block = block;
+        }
+    }
+
+    private int[] enter;  // preorder number of each block in the dominator tree
+    private int[] leave;  // and the largest preorder number below it
+
+    /**
+     * Constructor.
+     * @param name the program name.
+     */
+    public ControlFlowGraph(String name)
+    {
+        this.name = name;
+        this.blocks = new ArrayList<>();
+        this.uses = new ArrayList<>();
+    }
+
+    /**
+     * Getter.
+     * @return the entry block.
+     */
+    public BasicBlock entry() { return blocks.get(0); }
+
+    /**
+     * Put the blocks in reverse postorder, number the blocks and
+     * instructions in that order, and compute immediate dominators.
+     * Blocks that can't be reached from the entry must already be gone.
+     */
+    public void renumber()
+    {
+        blocks = reversePostorder(entry());
+
+        int instructionId = 0;
+        for (int i = 0; i < blocks.size(); i++)
+        {
+            BasicBlock block = blocks.get(i);
+            block.id = i;
+
+            for (Instruction instruction : block.instructions)
+            {
+                instruction.id = instructionId++;
+            }
+        }
+
+        computeDominators();
+    }
+
+    /**
+     * @param a a block.
+     * @param b another block.
+     * @return true if a dominates b.
+     */
+    public boolean dominates(BasicBlock a, BasicBlock b)
+    {
+        return (enter[a.id] <= enter[b.id]) && (enter[b.id] <= leave[a.id]);
+    }
+
+    /**
+     * List the blocks reachable from the entry in reverse postorder,
+     * without recursion.
+     * @param entry the entry block.
+     * @return the list of blocks.
+     */
+    public static ArrayList<BasicBlock> reversePostorder(BasicBlock entry)
+    {
+        ArrayList<BasicBlock> postorder = new ArrayList<>();
+        ArrayList<BasicBlock> stack = new ArrayList<>();
+        ArrayList<Integer> next = new ArrayList<>();  // next successor to visit
+        IdentityHashMap<BasicBlock, Boolean> visited = new IdentityHashMap<>();
+
+        stack.add(entry);
+        next.add(0);
+        visited.put(entry, true);
+
+        while (!stack.isEmpty())
+        {
+            int top = stack.size() - 1;
+            BasicBlock block = stack.get(top);
+            int i = next.get(top);
+
+            if (i < block.successors.size())
+            {
+                next.set(top, i + 1);
+                BasicBlock successor = block.successors.get(i);
+
+                if (!visited.containsKey(successor))
+                {
+                    visited.put(successor, true);
+                    stack.add(successor);
+                    next.add(0);
+                }
+            }
+            else
+            {
+                postorder.add(block);
+                stack.remove(top);
+                next.remove(top);
+            }
+        }
+
+        ArrayList<BasicBlock> order = new ArrayList<>(postorder.size());
+        for (int i = postorder.size() - 1; i >= 0; i--) order.add(postorder.get(i));
+
+        return order;
+    }
+
+    /**
+     * Compute the immediate dominator of each block with the iterative
+     * algorithm of Cooper, Harvey and Kennedy. Block ids must be the
+     * reverse postorder numbers.
+     */
+    private void computeDominators()
+    {
+        BasicBlock entry = entry();
+        for (BasicBlock block : blocks) block.dominator = null;
+        entry.dominator = entry;
+
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+
+            for (int i = 1; i < blocks.size(); i++)
+            {
+                BasicBlock block = blocks.get(i);
+                BasicBlock dominator = null;
+
+                for (BasicBlock predecessor : block.predecessors)
+                {
+                    if (predecessor.dominator == null) continue;
+
+                    dominator = dominator == null ? predecessor
+                                                  : intersect(predecessor, dominator);
+                }
+
+                if (block.dominator != dominator)
+                {
+                    block.dominator = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        entry.dominator = null;
+        numberDominatorTree();
+    }
+
+    /**
+     * Number the dominator tree in preorder, so that a block dominates
+     * the blocks whose numbers are within its own range.
+     */
+    private void numberDominatorTree()
+    {
+        ArrayList<ArrayList<BasicBlock>> children = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) children.add(new ArrayList<>());
+        for (int i = 1; i < blocks.size(); i++)
+        {
+            BasicBlock block = blocks.get(i);
+            children.get(block.dominator.id).add(block);
+        }
+
+        enter = new int[blocks.size()];
+        leave = new int[blocks.size()];
+
+        ArrayList<BasicBlock> stack = new ArrayList<>();
+        ArrayList<Integer> next = new ArrayList<>();  // next child to visit
+        int number = 0;
+
+        stack.add(entry());
+        next.add(0);
+        enter[0] = number++;
+
+        while (!stack.isEmpty())
+        {
+            int top = stack.size() - 1;
+            BasicBlock block = stack.get(top);
+            int i = next.get(top);
+
+            if (i < children.get(block.id).size())
+            {
+                next.set(top, i + 1);
+                BasicBlock child = children.get(block.id).get(i);
+
+                enter[child.id] = number++;
+                stack.add(child);
+                next.add(0);
+            }
+            else
+            {
+                leave[block.id] = number - 1;
+                stack.remove(top);
+                next.remove(top);
+            }
+        }
+    }
+
+    private static BasicBlock intersect(BasicBlock a, BasicBlock b)
+    {
+        while (a != b)
+        {
+            while (a.id > b.id) a = a.dominator;
+            while (b.id > a.id) b = b.dominator;
+        }
+
+        return a;
+    }
+}
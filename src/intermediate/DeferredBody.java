@@ -0,0 +1,29 @@
+/**
+ * Deferred body interface for a simple interpreter.
+ *
+ * The statements of a compound statement that the parser only skimmed.
+ * A lazy parser leaves one as the value of a COMPOUND node without
+ * children, and the node adopts the statements when they're parsed,
+ * usually the first time an executor reaches the node. A pass other
+ * than execution needs the whole tree, so its parser either isn't lazy
+ * or is checking, and parses each body right after skimming it.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.io.PrintStream;
+
+public interface DeferredBody
+{
+    /**
+     * Parse the statements, and have the compound statement adopt them.
+     * Call this only once, and clear the node's value first.
+     * @param compoundNode the COMPOUND node.
+     * @param errors the stream to print syntax and semantic errors to.
+     * @return the number of errors.
+     */
+    int parse(Node compoundNode, PrintStream errors);
+}
@@ -0,0 +1,440 @@
+/**
+ * Dependence analysis class for a simple interpreter.
+ *
+ * Decides whether the iterations of a FOR loop are independent of each
+ * other, so that they can run in any order, or at once. All variables
+ * are global, so an iteration depends on an earlier one if it reads a
+ * variable that the body assigns before it has assigned the variable
+ * itself, which is a loop-carried dependence. A variable that every
+ * iteration assigns before any read of it is private to the iteration,
+ * and after the loop it has the value of the last iteration. The loop's
+ * limit must not depend on the body either, and the body must not
+ * assign the control variable. Output isn't a dependence: the backend
+ * keeps it in iteration order.
+ *
+ * It also divides the statements of a compound statement into groups
+ * that don't interfere: no statement of one group touches a variable
+ * that a statement of another group assigns.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static intermediate.Node.NodeType.*;
+
+public class DependenceAnalysis
+{
+    private static final int LOOP_COST_FACTOR = 16;  // guessed iterations of a nested loop
+
+    private Symtab symtab;
+    private HashSet<SymtabEntry> assigned;  // by the body of the loop being analyzed
+    private boolean unknown;                // true if a variable had no entry
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table.
+     */
+    public DependenceAnalysis(Symtab symtab)
+    {
+        this.symtab = symtab;
+    }
+
+    /**
+     * @param loopNode a LOOP node.
+     * @return true if it's the LOOP of a FOR statement: a test of the
+     *         control variable against the limit, the body, and an
+     *         increment or decrement of the control variable by 1.
+     */
+    public static boolean isForLoop(Node loopNode)
+    {
+        if ((loopNode.type != LOOP) || (loopNode.children.size() != 3)) return false;
+
+        Node testNode = loopNode.children.get(0);
+        Node stepNode = loopNode.children.get(2);
+
+        if (   (testNode == null) || (testNode.type != TEST)
+            || (stepNode == null) || (stepNode.type != ASSIGN))
+        {
+            return false;
+        }
+
+        Node relationNode = testNode.children.get(0);
+        Node variableNode = stepNode.children.get(0);
+        Node valueNode    = stepNode.children.get(1);
+        Node.NodeType step =   relationNode.type == GT ? ADD
+                             : relationNode.type == LT ? SUBTRACT
+                             :                           null;
+
+        return    (step != null) && (valueNode.type == step)
+               && (relationNode.children.get(0) == variableNode)
+               && (valueNode.children.get(0) == variableNode)
+               && (valueNode.children.get(1).type == INTEGER_CONSTANT)
+               && Long.valueOf(1).equals(valueNode.children.get(1).value);
+    }
+
+    /**
+     * Decide whether the iterations of a FOR loop are independent.
+     * @param loopNode the LOOP node of a FOR statement.
+     * @return true if they are.
+     */
+    public boolean isIndependent(Node loopNode)
+    {
+        if (!isForLoop(loopNode)) return false;
+
+        Node relationNode = loopNode.children.get(0).children.get(0);
+        Node bodyNode = loopNode.children.get(1);
+        SymtabEntry control = entryOf(relationNode.children.get(0));
+
+        assigned = new HashSet<>();
+        unknown = false;
+        collectAssigned(bodyNode);
+        if (assigned.contains(control)) return false;
+
+        // The limit is evaluated before every iteration, so it
+        // must not change.
+        assigned.add(control);
+        if (!readsDefined(relationNode.children.get(1), new HashSet<>())) return false;
+
+        // Each assigned variable needs the value of the last iteration,
+        // so every iteration must define it.
+        HashSet<SymtabEntry> defined = new HashSet<>();
+        defined.add(control);
+
+        return    definesBeforeReads(bodyNode, defined)
+               && defined.containsAll(assigned) && !unknown;
+    }
+
+    /**
+     * Divide a list of statements into groups that can run at the same
+     * time, each in program order.
+     * @param statements the statement nodes.
+     * @return the group of each statement, with the groups numbered
+     *         from 0 in the order of their first statements, or null if
+     *         a variable has no symbol table entry.
+     */
+    public int[] independentGroups(ArrayList<Node> statements)
+    {
+        int count = statements.size();
+        ArrayList<HashSet<SymtabEntry>> touched = new ArrayList<>();
+        HashMap<SymtabEntry, Integer> writers = new HashMap<>();  // a statement that assigns it
+
+        for (int i = 0; i < count; i++)
+        {
+            HashSet<SymtabEntry> written = writes(statements.get(i));
+            HashSet<SymtabEntry> read = reads(statements.get(i));
+            if ((written == null) || (read == null)) return null;
+
+            for (SymtabEntry entry : written) writers.putIfAbsent(entry, i);
+
+            read.addAll(written);
+            touched.add(read);
+        }
+
+        // Join the statements that touch an assigned variable.
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) parents[i] = i;
+
+        for (int i = 0; i < count; i++)
+        {
+            for (SymtabEntry entry : touched.get(i))
+            {
+                Integer writer = writers.get(entry);
+                if (writer != null) parents[root(parents, i)] = root(parents, writer);
+            }
+        }
+
+        int[] groups = new int[count];
+        int[] numbers = new int[count];
+        int groupCount = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            int root = root(parents, i);
+            if (root == i) numbers[i] = groupCount++;
+        }
+
+        for (int i = 0; i < count; i++) groups[i] = numbers[root(parents, i)];
+
+        return groups;
+    }
+
+    private static int root(int[] parents, int i)
+    {
+        while (parents[i] != i)
+        {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Collect the variables that a subtree assigns.
+     * @param node the root of the subtree.
+     * @return their entries, or null if a variable has no entry.
+     */
+    public HashSet<SymtabEntry> writes(Node node)
+    {
+        assigned = new HashSet<>();
+        unknown = false;
+        collectAssigned(node);
+
+        return unknown ? null : assigned;
+    }
+
+    /**
+     * Collect the variables that a subtree reads.
+     * @param node the root of the subtree.
+     * @return their entries, or null if a variable has no entry.
+     */
+    public HashSet<SymtabEntry> reads(Node node)
+    {
+        HashSet<SymtabEntry> read = new HashSet<>();
+        unknown = false;
+        collectRead(node, read);
+
+        return unknown ? null : read;
+    }
+
+    /**
+     * Estimate the cost of executing a subtree once.
+     * @param node the root of the subtree.
+     * @return the number of nodes evaluated, where the nodes of a FOR
+     *         loop with constant bounds count for each iteration, and
+     *         those of any other loop for several iterations.
+     */
+    public static long cost(Node node)
+    {
+        if (node == null) return 0;
+
+        long iterations = forIterations(node);
+        if (iterations >= 0)
+        {
+            Node loopNode = node.children.get(1);
+            long each = 1;
+            for (Node child : loopNode.children) each += cost(child);
+
+            // The test runs once more than the body.
+            return saturatedSum(cost(node.children.get(0)),
+                                saturatedProduct(each, iterations + 1));
+        }
+
+        long cost = 1;
+        for (Node child : node.children) cost = saturatedSum(cost, cost(child));
+
+        return node.type == LOOP ? saturatedProduct(cost, LOOP_COST_FACTOR) : cost;
+    }
+
+    /**
+     * @param node a statement node.
+     * @return the number of iterations if it's a FOR statement with
+     *         integer constant bounds, or else -1.
+     */
+    private static long forIterations(Node node)
+    {
+        if ((node.type != COMPOUND) || (node.children.size() != 2)) return -1;
+
+        Node assignNode = node.children.get(0);
+        Node loopNode = node.children.get(1);
+
+        if (   (assignNode == null) || (assignNode.type != ASSIGN)
+            || (loopNode == null) || !isForLoop(loopNode))
+        {
+            return -1;
+        }
+
+        Node relationNode = loopNode.children.get(0).children.get(0);
+        Node startNode = assignNode.children.get(1);
+        Node limitNode = relationNode.children.get(1);
+
+        if (   (relationNode.children.get(0) != assignNode.children.get(0))
+            || (startNode.type != INTEGER_CONSTANT) || (limitNode.type != INTEGER_CONSTANT))
+        {
+            return -1;
+        }
+
+        long start = (Long) startNode.value;
+        long limit = (Long) limitNode.value;
+        long span = relationNode.type == GT ? limit - start : start - limit;
+
+        return span >= 0 ? saturatedSum(span, 1) : 0;
+    }
+
+    /**
+     * Add two costs, or other counts that can't be negative.
+     * @param a the first count.
+     * @param b the second count.
+     * @return their sum, or Long.MAX_VALUE if it overflows.
+     */
+    public static long saturatedSum(long a, long b)
+    {
+        long sum = a + b;
+        return sum >= 0 ? sum : Long.MAX_VALUE;
+    }
+
+    private static long saturatedProduct(long a, long b)
+    {
+        return (b == 0) || (a <= Long.MAX_VALUE/b) ? a*b : Long.MAX_VALUE;
+    }
+
+    private void collectAssigned(Node node)
+    {
+        if (node == null) return;
+
+        if (node.type == ASSIGN) assigned.add(entryOf(node.children.get(0)));
+        for (Node child : node.children) collectAssigned(child);
+    }
+
+    private void collectRead(Node node, HashSet<SymtabEntry> read)
+    {
+        if (node == null) return;
+
+        if (node.type == VARIABLE) read.add(entryOf(node));
+
+        // The target of an assignment isn't read.
+        ArrayList<Node> children = node.children;
+        for (int i = node.type == ASSIGN ? 1 : 0; i < children.size(); i++)
+        {
+            collectRead(children.get(i), read);
+        }
+    }
+
+    /**
+     * Check that a statement reads no assigned variable before the
+     * iteration defines it.
+     * @param node the statement node.
+     * @param defined the variables that are defined before the statement,
+     *                updated to those defined after it.
+     * @return true if it doesn't.
+     */
+    private boolean definesBeforeReads(Node node, HashSet<SymtabEntry> defined)
+    {
+        if (node == null) return true;
+
+        switch (node.type)
+        {
+            case COMPOUND :
+            {
+                for (Node child : node.children)
+                {
+                    if (!definesBeforeReads(child, defined)) return false;
+                }
+
+                return true;
+            }
+
+            case ASSIGN :
+            {
+                if (!readsDefined(node.children.get(1), defined)) return false;
+
+                defined.add(entryOf(node.children.get(0)));
+                return true;
+            }
+
+            case IFNODE :
+            {
+                if (!readsDefined(node.children.get(0), defined)) return false;
+
+                HashSet<SymtabEntry> thenDefined = new HashSet<>(defined);
+                if (!definesBeforeReads(node.children.get(1), thenDefined)) return false;
+
+                if (node.children.size() > 2)
+                {
+                    HashSet<SymtabEntry> elseDefined = new HashSet<>(defined);
+                    if (!definesBeforeReads(node.children.get(2), elseDefined)) return false;
+
+                    // Defined on both sides.
+                    thenDefined.retainAll(elseDefined);
+                    defined.addAll(thenDefined);
+                }
+
+                return true;
+            }
+
+            case SELECT :
+            {
+                if (!readsDefined(node.children.get(0), defined)) return false;
+
+                // No branch may be taken, so nothing more is defined after.
+                for (int i = 1; i < node.children.size(); i++)
+                {
+                    Node branchNode = node.children.get(i);
+
+                    if (   !readsDefined(branchNode.children.get(0), defined)
+                        || !definesBeforeReads(branchNode.children.get(1),
+                                               new HashSet<>(defined)))
+                    {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            case LOOP :
+            {
+                // The first pass through a nested loop defines the least,
+                // and only what comes before its first test is certain
+                // to be defined after it.
+                HashSet<SymtabEntry> loopDefined = new HashSet<>(defined);
+                HashSet<SymtabEntry> certain = null;
+
+                for (Node child : node.children)
+                {
+                    if ((child != null) && (child.type == TEST))
+                    {
+                        if (certain == null) certain = new HashSet<>(loopDefined);
+                        if (!readsDefined(child, loopDefined)) return false;
+                    }
+                    else if (!definesBeforeReads(child, loopDefined)) return false;
+                }
+
+                defined.addAll(certain != null ? certain : loopDefined);
+                return true;
+            }
+
+            default : return readsDefined(node, defined);
+        }
+    }
+
+    /**
+     * Check that an expression reads no assigned variable that isn't
+     * defined yet.
+     * @param node the root of the expression.
+     * @param defined the variables that are defined.
+     * @return true if it doesn't.
+     */
+    private boolean readsDefined(Node node, HashSet<SymtabEntry> defined)
+    {
+        if (node == null) return true;
+
+        if (node.type == VARIABLE)
+        {
+            SymtabEntry entry = entryOf(node);
+            if (assigned.contains(entry) && !defined.contains(entry)) return false;
+        }
+
+        for (Node child : node.children)
+        {
+            if (!readsDefined(child, defined)) return false;
+        }
+
+        return true;
+    }
+
+    private SymtabEntry entryOf(Node variableNode)
+    {
+        SymtabEntry entry = variableNode.entry != null ? variableNode.entry
+                                                       : symtab.lookup(variableNode.text);
+        if (entry == null) unknown = true;
+
+        return entry;
+    }
+}
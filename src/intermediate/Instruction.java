@@ -0,0 +1,165 @@
+/**
+ * Instruction class of the control flow graph of a simple interpreter.
+ *
+ * An instruction is also the SSA value that it computes. Each instruction
+ * belongs to a basic block, and its operands are the instructions that
+ * compute its inputs. Constants live in the entry block. Phi instructions
+ * come first in their block and have one operand per predecessor, in the
+ * same order as the block's predecessors. A terminator (JUMP, BRANCH,
+ * SWITCH or EXIT) comes last in each block.
+ *
+ * Runtime errors report the line number of the statement being executed,
+ * which depends on the path taken, so the current line number is treated
+ * as a pseudo-variable in SSA form. DIVIDE, DIV and INVALID take its value
+ * as their last operand.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+
+public class Instruction
+{
+    public enum Opcode
+    {
+        CONSTANT, PHI, INVALID,
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, DIV,
+        EQ, NE, LT, LTE, GT, GTE, AND, OR, NOT,
+        WRITE, NEWLINE,
+        JUMP, BRANCH, SWITCH, EXIT
+    }
+
+    public Opcode opcode;
+    public int id;
+    public BasicBlock block;
+    public ArrayList<Instruction> operands;
+    public ArrayList<Instruction> users;   // instructions with this one as an operand
+    public Node node;                      // parse tree node it came from, or null
+
+    public double constant;       // CONSTANT: its value
+    public SymtabEntry variable;  // PHI: the variable it merges, or null for the line number
+    public String message;        // INVALID: the runtime error message
+    public double[] keys;         // SWITCH: the CASE constants
+    public int[] targets;         // SWITCH: successor index of each key
+
+    Instruction replacement;      // the value of a removed trivial phi
+
+    /**
+     * Constructor.
+     * @param opcode the instruction's opcode.
+     */
+    public Instruction(Opcode opcode)
+    {
+        this.opcode = opcode;
+        this.operands = new ArrayList<>();
+        this.users = new ArrayList<>();
+    }
+
+    /**
+     * Append an operand.
+     * @param operand the operand.
+     */
+    public void addOperand(Instruction operand)
+    {
+        operands.add(operand);
+        operand.users.add(this);
+    }
+
+    /**
+     * Replace every use of this instruction.
+     * @param value the instruction to use instead.
+     */
+    public void replaceUsesWith(Instruction value)
+    {
+        for (Instruction user : users)
+        {
+            for (int i = 0; i < user.operands.size(); i++)
+            {
+                if (user.operands.get(i) == this)
+                {
+                    user.operands.set(i, value);
+                    value.users.add(user);
+                }
+            }
+        }
+
+        users.clear();
+    }
+
+    /**
+     * @return true if the instruction ends a basic block.
+     */
+    public boolean isTerminator()
+    {
+        switch (opcode)
+        {
+            case JUMP :
+            case BRANCH :
+            case SWITCH :
+            case EXIT :  return true;
+
+            default :    return false;
+        }
+    }
+
+    /**
+     * @return true if the instruction computes a boolean value.
+     */
+    public boolean isBoolean()
+    {
+        switch (opcode)
+        {
+            case EQ :
+            case NE :
+            case LT :
+            case LTE :
+            case GT :
+            case GTE :
+            case AND :
+            case OR :
+            case NOT :  return true;
+
+            default :   return false;
+        }
+    }
+
+    /**
+     * @return true if the instruction computes a number.
+     */
+    public boolean isNumeric()
+    {
+        switch (opcode)
+        {
+            case CONSTANT :
+            case PHI :
+            case ADD :
+            case SUBTRACT :
+            case MULTIPLY :
+            case DIVIDE :
+            case DIV :  return true;
+
+            default :   return false;
+        }
+    }
+
+    /**
+     * @return true if the instruction can't be removed even when its
+     *         value is unused, because it has an effect or can fail.
+     */
+    public boolean hasSideEffect()
+    {
+        switch (opcode)
+        {
+            case DIVIDE :
+            case DIV :
+            case INVALID :
+            case WRITE :
+            case NEWLINE :  return true;
+
+            default :       return isTerminator();
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class Node
     public SymtabEntry entry;
     public Object value;
     public ArrayList<Node> children;
+    public Range range;  // value range from a RangeAnalysis, or null
     
     /**
      * Constructor
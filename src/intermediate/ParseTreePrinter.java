@@ -7,6 +7,7 @@
  */
 package intermediate;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 
 import static intermediate.Node.NodeType.*;
@@ -15,15 +16,25 @@ public class ParseTreePrinter
 {
     private static final String INDENT_SIZE = "    ";
 
+    private PrintStream ps;      // output print stream
     private String indentation;  // indentation of a line
     private StringBuilder line;  // output line
 
+    /**
+     * Constructor for a printer to the standard output.
+     */
+    public ParseTreePrinter()
+    {
+        this(System.out);
+    }
+
     /**
      * Constructor
      * @param ps the output print stream.
      */
-    public ParseTreePrinter()
+    public ParseTreePrinter(PrintStream ps)
     {
+        this.ps = ps;
         this.indentation = "";
         this.line = new StringBuilder();
     }
@@ -79,7 +90,7 @@ public class ParseTreePrinter
      */
     private void printLine()
     {
-        System.out.println(line);
+        ps.println(line);
         line.setLength(0);
     }
 }
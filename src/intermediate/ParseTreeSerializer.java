@@ -0,0 +1,574 @@
+/**
+ * Parse tree serializer class for a simple interpreter.
+ *
+ * Streams a parse tree to a channel as XML in ParseTreePrinter's format,
+ * as JSON, or in a compact binary format. Bytes are encoded straight into
+ * a large buffer that's written to the channel whenever it fills, so the
+ * memory used is the buffer and a stack as deep as the tree. The tags and
+ * indentation are precomputed, and numbers and names are encoded without
+ * building strings. Only real constants are formatted by Double.toString.
+ * The tree is walked without recursion, so it may be as deep as a program
+ * that the iterative executor runs. A null child is left out of the XML,
+ * and is null in the JSON. The XML is in the default charset, like the
+ * printer's, and the JSON and binary are in UTF-8.
+ *
+ * JSON: Each node is an object with "type", then "text" or "value" if the
+ * XML has that attribute, "line" if it's known, and "children" if any.
+ *
+ * Binary: The bytes SPT and version 1, then the root node. A node is its
+ * type's ordinal plus 1 in a byte (0 for a null child), its line number,
+ * its text or value if the XML has that attribute, its number of children,
+ * and then its children. Numbers are unsigned LEB128 varints, integer
+ * constants zigzag encoded. Reals are 8 bytes of IEEE 754, big endian.
+ * A string is its length in UTF-8 bytes plus 1 (0 for null), then the
+ * bytes.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static intermediate.Node.NodeType.*;
+
+public class ParseTreeSerializer
+{
+    public enum Format { XML, JSON, BINARY }
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;  // bytes
+
+    private static final int INDENT_SIZE = 4;
+    private static final byte[] NEWLINE = bytes(System.lineSeparator());
+    private static final byte[] BINARY_HEADER = { 'S', 'P', 'T', 1 };
+    private static final Charset XML_CHARSET = Charset.defaultCharset();
+
+    private static final byte[][] xmlOpenTags;   // <TYPE
+    private static final byte[][] xmlCloseTags;  // </TYPE> and a newline
+    private static final byte[][] jsonTypes;     // {"type":"TYPE"
+
+    static
+    {
+        Node.NodeType types[] = Node.NodeType.values();
+        xmlOpenTags = new byte[types.length][];
+        xmlCloseTags = new byte[types.length][];
+        jsonTypes = new byte[types.length][];
+
+        for (Node.NodeType type : types)
+        {
+            xmlOpenTags[type.ordinal()] = bytes("<" + type);
+            xmlCloseTags[type.ordinal()] = bytes("</" + type + ">" + System.lineSeparator());
+            jsonTypes[type.ordinal()] = bytes("{\"type\":\"" + type + "\"");
+        }
+    }
+
+    private WritableByteChannel channel;
+    private Format format;
+    private byte[] buffer;
+    private int position;      // in the buffer
+    private long byteCount;    // written to the channel
+    private byte[] spaces;     // the indentation table
+
+    private Node[] nodes;      // the path from the root to the current node
+    private int[] nextChild;   // index of each node's next child to visit
+
+    /**
+     * Constructor.
+     * @param channel the channel to write to.
+     * @param format the format.
+     */
+    public ParseTreeSerializer(WritableByteChannel channel, Format format)
+    {
+        this(channel, format, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param channel the channel to write to.
+     * @param format the format.
+     * @param bufferSize the size of the buffer in bytes.
+     */
+    public ParseTreeSerializer(WritableByteChannel channel, Format format, int bufferSize)
+    {
+        this.channel = channel;
+        this.format = format;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+        this.position = 0;
+        this.byteCount = 0;
+        this.spaces = new byte[64*INDENT_SIZE];
+        this.nodes = new Node[64];
+        this.nextChild = new int[64];
+
+        java.util.Arrays.fill(spaces, (byte) ' ');
+    }
+
+    /**
+     * Getter.
+     * @return the number of bytes written to the channel so far.
+     */
+    public long byteCount() { return byteCount; }
+
+    /**
+     * Write a parse tree, and then write out the buffer.
+     * @param root the parse tree's root node.
+     * @throws IOException if the channel fails.
+     */
+    public void serialize(Node root) throws IOException
+    {
+        if (format == Format.BINARY) write(BINARY_HEADER, 0, BINARY_HEADER.length);
+
+        begin(root, 0);
+        int depth = 0;
+        if (hasChildren(root)) push(root, depth++);
+        else end(root, 0);
+
+        // Depth first, so each node ends after its children.
+        while (depth > 0)
+        {
+            Node node = nodes[depth - 1];
+            int index = nextChild[depth - 1]++;
+
+            if (index < node.children.size())
+            {
+                Node child = node.children.get(index);
+                if ((index > 0) && (format == Format.JSON)) put((byte) ',');
+
+                if (child == null) nullChild();
+                else
+                {
+                    begin(child, depth);
+                    if (hasChildren(child)) push(child, depth++);
+                    else end(child, depth);
+                }
+            }
+            else
+            {
+                nodes[--depth] = null;
+                end(node, depth);
+            }
+        }
+
+        if (format == Format.JSON) write(NEWLINE, 0, NEWLINE.length);
+        flush();
+    }
+
+    private static boolean hasChildren(Node node)
+    {
+        return (node.children != null) && (node.children.size() > 0);
+    }
+
+    private void push(Node node, int depth)
+    {
+        if (depth == nodes.length)
+        {
+            nodes = java.util.Arrays.copyOf(nodes, 2*depth);
+            nextChild = java.util.Arrays.copyOf(nextChild, 2*depth);
+        }
+
+        nodes[depth] = node;
+        nextChild[depth] = 0;
+    }
+
+    /**
+     * Write the start of a node, up to its children.
+     * @param node the node.
+     * @param depth its depth in the tree.
+     */
+    private void begin(Node node, int depth) throws IOException
+    {
+        int type = node.type.ordinal();
+
+        switch (format)
+        {
+            case XML :
+            {
+                indent(depth);
+                write(xmlOpenTags[type], 0, xmlOpenTags[type].length);
+
+                switch (node.type)
+                {
+                    case PROGRAM :
+                    case VARIABLE :
+                        put((byte) ' '); writeString(node.text);
+                        break;
+                    case INTEGER_CONSTANT :
+                        put((byte) ' '); writeLong((Long) node.value);
+                        break;
+                    case REAL_CONSTANT :
+                        put((byte) ' '); writeString(String.valueOf(node.value));
+                        break;
+                    case STRING_CONSTANT :
+                        put((byte) ' '); put((byte) '\'');
+                        writeString((String) node.value);
+                        put((byte) '\'');
+                        break;
+                    default :
+                        break;
+                }
+
+                if (node.lineNumber > 0)
+                {
+                    writeAscii(" line ");
+                    writeLong(node.lineNumber);
+                }
+
+                if (hasChildren(node))
+                {
+                    put((byte) '>');
+                    write(NEWLINE, 0, NEWLINE.length);
+                }
+                else
+                {
+                    writeAscii(" />");
+                    write(NEWLINE, 0, NEWLINE.length);
+                }
+                break;
+            }
+
+            case JSON :
+            {
+                write(jsonTypes[type], 0, jsonTypes[type].length);
+
+                switch (node.type)
+                {
+                    case PROGRAM :
+                    case VARIABLE :
+                        writeAscii(",\"text\":"); writeJsonString(node.text);
+                        break;
+                    case INTEGER_CONSTANT :
+                        writeAscii(",\"value\":"); writeLong((Long) node.value);
+                        break;
+                    case REAL_CONSTANT :
+                    {
+                        double value = (Double) node.value;
+                        writeAscii(",\"value\":");
+                        if (Double.isFinite(value)) writeString(Double.toString(value));
+                        else                        writeAscii("null");
+                        break;
+                    }
+                    case STRING_CONSTANT :
+                        writeAscii(",\"value\":"); writeJsonString((String) node.value);
+                        break;
+                    default :
+                        break;
+                }
+
+                if (node.lineNumber > 0)
+                {
+                    writeAscii(",\"line\":");
+                    writeLong(node.lineNumber);
+                }
+
+                if (hasChildren(node)) writeAscii(",\"children\":[");
+                break;
+            }
+
+            case BINARY :
+            {
+                put((byte) (type + 1));
+                writeVarint(node.lineNumber);
+
+                switch (node.type)
+                {
+                    case PROGRAM :
+                    case VARIABLE :
+                        writeBinaryString(node.text);
+                        break;
+                    case INTEGER_CONSTANT :
+                    {
+                        long value = (Long) node.value;
+                        writeVarint((value << 1) ^ (value >> 63));
+                        break;
+                    }
+                    case REAL_CONSTANT :
+                    {
+                        long bits = Double.doubleToRawLongBits((Double) node.value);
+                        ensure(8);
+                        for (int shift = 56; shift >= 0; shift -= 8)
+                        {
+                            buffer[position++] = (byte) (bits >>> shift);
+                        }
+                        break;
+                    }
+                    case STRING_CONSTANT :
+                        writeBinaryString((String) node.value);
+                        break;
+                    default :
+                        break;
+                }
+
+                writeVarint(node.children != null ? node.children.size() : 0);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Write the end of a node, after its children.
+     * @param node the node.
+     * @param depth its depth in the tree.
+     */
+    private void end(Node node, int depth) throws IOException
+    {
+        switch (format)
+        {
+            case XML :
+            {
+                if (hasChildren(node))
+                {
+                    int type = node.type.ordinal();
+                    indent(depth);
+                    write(xmlCloseTags[type], 0, xmlCloseTags[type].length);
+                }
+                break;
+            }
+            case JSON :
+            {
+                if (hasChildren(node)) put((byte) ']');
+                put((byte) '}');
+                break;
+            }
+            case BINARY :
+                break;
+        }
+    }
+
+    private void nullChild() throws IOException
+    {
+        if      (format == Format.JSON)   writeAscii("null");
+        else if (format == Format.BINARY) put((byte) 0);
+    }
+
+    private void indent(int depth) throws IOException
+    {
+        int length = depth*INDENT_SIZE;
+        if (length > spaces.length)
+        {
+            spaces = new byte[Math.max(length, 2*spaces.length)];
+            java.util.Arrays.fill(spaces, (byte) ' ');
+        }
+
+        write(spaces, 0, length);
+    }
+
+    /**
+     * Make room in the buffer, writing it out if it's too full.
+     * @param count the number of bytes to make room for, at most the
+     *              buffer size.
+     */
+    private void ensure(int count) throws IOException
+    {
+        if (position + count > buffer.length) flush();
+    }
+
+    private void put(byte b) throws IOException
+    {
+        if (position == buffer.length) flush();
+        buffer[position++] = b;
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            if (position == buffer.length) flush();
+
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void writeAscii(String text) throws IOException
+    {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) buffer[position++] = (byte) text.charAt(i);
+    }
+
+    /**
+     * Write a number in decimal.
+     * @param value the number.
+     */
+    private void writeLong(long value) throws IOException
+    {
+        ensure(20);
+        if (value < 0)
+        {
+            buffer[position++] = '-';
+        }
+        else value = -value;  // negative, so that Long.MIN_VALUE fits
+
+        // The digits from the last, then reversed in place.
+        int start = position;
+        do
+        {
+            buffer[position++] = (byte) ('0' - (value % 10));
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = start, j = position - 1; i < j; i++, j--)
+        {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void writeVarint(long value) throws IOException
+    {
+        ensure(10);
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Write a string in the format's charset, or null as PrintStream does.
+     * @param text the string.
+     */
+    private void writeString(String text) throws IOException
+    {
+        if (text == null) text = "null";
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+
+            if (ch < 0x80) put((byte) ch);
+            else if ((format == Format.XML) && !XML_CHARSET.equals(StandardCharsets.UTF_8))
+            {
+                int length = Character.charCount(text.codePointAt(i));
+                byte[] bytes = text.substring(i, i + length).getBytes(XML_CHARSET);
+                write(bytes, 0, bytes.length);
+                i += length - 1;
+            }
+            else i = writeUtf8(text, i);
+        }
+    }
+
+    private void writeJsonString(String text) throws IOException
+    {
+        if (text == null)
+        {
+            writeAscii("null");
+            return;
+        }
+
+        put((byte) '"');
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+
+            if ((ch == '"') || (ch == '\\'))
+            {
+                put((byte) '\\'); put((byte) ch);
+            }
+            else if (ch < 0x20)
+            {
+                writeAscii("\\u00");
+                put((byte) Character.forDigit(ch >> 4, 16));
+                put((byte) Character.forDigit(ch & 0xF, 16));
+            }
+            else if (ch < 0x80) put((byte) ch);
+            else i = writeUtf8(text, i);
+        }
+        put((byte) '"');
+    }
+
+    private void writeBinaryString(String text) throws IOException
+    {
+        if (text == null)
+        {
+            put((byte) 0);
+            return;
+        }
+
+        // The UTF-8 length first, without encoding the string twice.
+        long length = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+            if      (ch < 0x80)                      length += 1;
+            else if (ch < 0x800)                     length += 2;
+            else if (Character.isHighSurrogate(ch)
+                     && (i + 1 < text.length())
+                     && Character.isLowSurrogate(text.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else                                     length += 3;
+        }
+
+        writeVarint(length + 1);
+        writeString(text);
+    }
+
+    /**
+     * Write the UTF-8 bytes of a character that isn't ASCII.
+     * @param text the string.
+     * @param index the index of the character.
+     * @return the index of the character's last char, which is the
+     *         next one for a surrogate pair.
+     */
+    private int writeUtf8(String text, int index) throws IOException
+    {
+        int codePoint = text.codePointAt(index);
+        ensure(4);
+
+        if (codePoint < 0x800)
+        {
+            buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+        }
+        else
+        {
+            if (codePoint < 0x10000)
+            {
+                // A lone surrogate is encoded as ?, as String.getBytes does.
+                if (Character.isSurrogate((char) codePoint))
+                {
+                    buffer[position++] = '?';
+                    return index;
+                }
+                buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+            }
+            else
+            {
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            }
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        }
+        buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+
+        return index + Character.charCount(codePoint) - 1;
+    }
+
+    /**
+     * Write out the buffer to the channel.
+     * @throws IOException if the channel fails.
+     */
+    private void flush() throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+        while (bytes.hasRemaining()) channel.write(bytes);
+
+        byteCount += position;
+        position = 0;
+    }
+
+    private static byte[] bytes(String text)
+    {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
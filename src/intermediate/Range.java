@@ -0,0 +1,333 @@
+/**
+ * Value range class for a simple interpreter.
+ *
+ * The set of values that an expression can have at run time: the values
+ * between a low and a high bound, plus NaN if the flag says so. A range
+ * can also tell that its values are integral: integers or infinities,
+ * but not -0.0 or NaN. A sum, difference or product of integral values
+ * is rounded to an integral value. A range can also tell that zero is
+ * excluded even though it lies between the bounds. The empty range is the value of code that hasn't
+ * been reached yet.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import static intermediate.Instruction.Opcode;
+
+public class Range
+{
+    public static final Range EMPTY = new Range(Double.POSITIVE_INFINITY,
+                                                Double.NEGATIVE_INFINITY,
+                                                true, false, false);
+    public static final Range FULL  = new Range(Double.NEGATIVE_INFINITY,
+                                                Double.POSITIVE_INFINITY,
+                                                false, true, true);
+
+    public final double low;
+    public final double high;
+    public final boolean integral;  // true if only integers or infinities
+    public final boolean nan;       // true if NaN is possible
+    public final boolean zero;      // true if 0.0 or -0.0 is possible
+
+    private Range(double low, double high, boolean integral, boolean nan, boolean zero)
+    {
+        this.low = low;
+        this.high = high;
+        this.integral = integral;
+        this.nan = nan;
+        this.zero = zero;
+    }
+
+    /**
+     * Make a range, normalizing its flags.
+     * @param low the low bound.
+     * @param high the high bound.
+     * @param integral true if the values are integers or infinities.
+     * @param nan true if NaN is possible.
+     * @param zero true if zero is possible, as far as the bounds allow.
+     * @return the range.
+     */
+    public static Range of(double low, double high, boolean integral, boolean nan, boolean zero)
+    {
+        if (Double.isNaN(low))  low  = Double.NEGATIVE_INFINITY;
+        if (Double.isNaN(high)) high = Double.POSITIVE_INFINITY;
+
+        if ((low > high) && !nan) return EMPTY;
+
+        zero = zero && (low <= 0.0) && (0.0 <= high);
+        integral = integral && !nan;
+
+        // The bounds of integers are integers.
+        if (integral)
+        {
+            low  = Math.ceil(low);
+            high = Math.floor(high);
+        }
+
+        return new Range(low, high, integral, nan, zero);
+    }
+
+    /**
+     * Make the range of a constant.
+     * @param value the constant.
+     * @return the range.
+     */
+    public static Range constant(double value)
+    {
+        if (Double.isNaN(value)) return of(value, value, false, true, false);
+
+        boolean integral =    (value == Math.rint(value))
+                           && (Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0));
+        return of(value, value, integral, false, true);
+    }
+
+    /**
+     * @return true if the range has no values.
+     */
+    public boolean isEmpty() { return (low > high) && !nan; }
+
+    /**
+     * @return true if zero is impossible.
+     */
+    public boolean isNonZero() { return !zero; }
+
+    /**
+     * @return true if the values are integers that fit in an int.
+     */
+    public boolean isInt()
+    {
+        return integral && !isEmpty() && (low >= Integer.MIN_VALUE) && (high <= Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param other another range.
+     * @return the smallest range with the values of both.
+     */
+    public Range union(Range other)
+    {
+        if (isEmpty())       return other;
+        if (other.isEmpty()) return this;
+
+        return of(Math.min(low, other.low), Math.max(high, other.high),
+                  integral && other.integral, nan || other.nan, zero || other.zero);
+    }
+
+    /**
+     * Widen a range that grew from an earlier pass, so that loops converge.
+     * A bound that moved goes to infinity.
+     * @param older the range of the earlier pass.
+     * @return the widened range.
+     */
+    public Range widen(Range older)
+    {
+        if (older.isEmpty()) return this;
+
+        return of(low  < older.low  ? Double.NEGATIVE_INFINITY : low,
+                  high > older.high ? Double.POSITIVE_INFINITY : high,
+                  integral, nan, zero);
+    }
+
+    // ------------------------------------------------------------------
+    // Arithmetic
+
+    /**
+     * @param opcode ADD, SUBTRACT, MULTIPLY, DIVIDE or DIV.
+     * @param other the range of the right operand.
+     * @return the range of the result.
+     */
+    public Range arithmetic(Opcode opcode, Range other)
+    {
+        if (isEmpty() || other.isEmpty()) return EMPTY;
+
+        switch (opcode)
+        {
+            case ADD :      return add(other);
+            case SUBTRACT : return subtract(other);
+            case MULTIPLY : return multiply(other);
+            case DIVIDE :   return divide(other);
+            case DIV :      return div(other);
+            default :       return FULL;
+        }
+    }
+
+    private Range add(Range other)
+    {
+        boolean nan =    this.nan || other.nan
+                      || ((high == Double.POSITIVE_INFINITY) && (other.low == Double.NEGATIVE_INFINITY))
+                      || ((low == Double.NEGATIVE_INFINITY) && (other.high == Double.POSITIVE_INFINITY));
+
+        return of(low + other.low, high + other.high,
+                  integral && other.integral, nan, true);
+    }
+
+    private Range subtract(Range other)
+    {
+        boolean nan =    this.nan || other.nan
+                      || ((high == Double.POSITIVE_INFINITY) && (other.high == Double.POSITIVE_INFINITY))
+                      || ((low == Double.NEGATIVE_INFINITY) && (other.low == Double.NEGATIVE_INFINITY));
+
+        return of(low - other.high, high - other.low,
+                  integral && other.integral, nan, true);
+    }
+
+    private Range multiply(Range other)
+    {
+        // 0 times infinity is NaN.
+        boolean infinite      = Double.isInfinite(low) || Double.isInfinite(high);
+        boolean otherInfinite = Double.isInfinite(other.low) || Double.isInfinite(other.high);
+
+        if ((zero && otherInfinite) || (other.zero && infinite) || nan || other.nan)
+        {
+            return FULL;
+        }
+
+        double a = low*other.low,  b = low*other.high;
+        double c = high*other.low, d = high*other.high;
+
+        // A zero times a negative number is -0.0.
+        boolean negativeZero = (zero && (other.low < 0)) || (other.zero && (low < 0));
+
+        return of(Math.min(Math.min(a, b), Math.min(c, d)),
+                  Math.max(Math.max(a, b), Math.max(c, d)),
+                  integral && other.integral && !negativeZero, false, true);
+    }
+
+    private Range divide(Range other)
+    {
+        boolean infinite      = Double.isInfinite(low) || Double.isInfinite(high);
+        boolean otherInfinite = Double.isInfinite(other.low) || Double.isInfinite(other.high);
+        boolean aroundZero    = (other.low <= 0.0) && (0.0 <= other.high);
+
+        if (nan || other.nan || (infinite && otherInfinite))
+        {
+            return of(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false, true, true);
+        }
+
+        // A nonzero integer divisor doesn't increase the magnitude.
+        if (aroundZero && other.integral && !other.zero)
+        {
+            double magnitude = Math.max(Math.abs(low), Math.abs(high));
+            return of(-magnitude, magnitude, false, false, true);
+        }
+
+        // Otherwise a divisor range around zero gives any quotient.
+        if (aroundZero)
+        {
+            return of(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false, false, true);
+        }
+
+        double a = low/other.low,  b = low/other.high;
+        double c = high/other.low, d = high/other.high;
+
+        return of(Math.min(Math.min(a, b), Math.min(c, d)),
+                  Math.max(Math.max(a, b), Math.max(c, d)),
+                  false, false, true);
+    }
+
+    private Range div(Range other)
+    {
+        Range quotient = divide(other);
+        if (quotient.isEmpty()) return quotient;
+
+        // Math.floor() of a zero quotient with a negative divisor is -0.0,
+        // and so is a quotient that underflows.
+        boolean negativeZero =    (zero && (other.low < 0))
+                               || !integral || !other.integral
+                               || Double.isInfinite(other.low) || Double.isInfinite(other.high);
+
+        return of(Math.floor(quotient.low), Math.floor(quotient.high),
+                  !negativeZero, quotient.nan, true);
+    }
+
+    // ------------------------------------------------------------------
+    // Refinement
+
+    /**
+     * Narrow the range by a relation that is known to hold.
+     * @param relation EQ, NE, LT, LTE, GT or GTE.
+     * @param other the range of the value on the right of the relation.
+     * @return the refined range of the value on the left.
+     */
+    public Range refine(Opcode relation, Range other)
+    {
+        if (isEmpty() || other.isEmpty()) return this;
+
+        // A relation other than NE is false if either side is NaN.
+        boolean integers = integral && other.integral;
+
+        switch (relation)
+        {
+            case LT :
+            {
+                double bound = integers ? other.high - 1 : other.high;
+                return of(low, Math.min(high, bound), integral, false, zero);
+            }
+
+            case LTE : return of(low, Math.min(high, other.high), integral, false, zero);
+
+            case GT :
+            {
+                double bound = integers ? other.low + 1 : other.low;
+                return of(Math.max(low, bound), high, integral, false, zero);
+            }
+
+            case GTE : return of(Math.max(low, other.low), high, integral, false, zero);
+
+            case EQ :
+            {
+                return of(Math.max(low, other.low), Math.min(high, other.high),
+                          integral, false, zero && other.zero);
+            }
+
+            case NE :
+            {
+                boolean otherZero = (other.low == 0.0) && (other.high == 0.0) && !other.nan;
+                return of(low, high, integral, nan, zero && !otherZero);
+            }
+
+            default : return this;
+        }
+    }
+
+    @Override
+    public boolean equals(Object object)
+    {
+        if (!(object instanceof Range)) return false;
+
+        Range other = (Range) object;
+        return    (Double.compare(low, other.low) == 0) && (Double.compare(high, other.high) == 0)
+               && (integral == other.integral) && (nan == other.nan) && (zero == other.zero);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Double.hashCode(low) + 31*Double.hashCode(high)
+               + (integral ? 1 : 0) + (nan ? 2 : 0) + (zero ? 4 : 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (isEmpty()) return "empty";
+
+        StringBuilder text = new StringBuilder("[" + format(low) + ", " + format(high) + "]");
+        if (integral) text.append(" integer");
+        if (!zero && (low <= 0.0) && (0.0 <= high)) text.append(" nonzero");
+        if (nan) text.append(" or NaN");
+
+        return text.toString();
+    }
+
+    private static String format(double value)
+    {
+        if (Double.isInfinite(value)) return value > 0 ? "inf" : "-inf";
+
+        return (value == Math.rint(value)) && (Math.abs(value) < 1e15)
+               ? Long.toString((long) value)
+               : Double.toString(value);
+    }
+}
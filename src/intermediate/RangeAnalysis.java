@@ -0,0 +1,356 @@
+/**
+ * Range analysis class for a simple interpreter.
+ *
+ * Computes the range of each numeric SSA value of a control flow graph
+ * and annotates the parse tree nodes with them. Ranges come from the
+ * constants, the arithmetic and the branch conditions: a block that can
+ * only be entered when a relation holds narrows the ranges of its
+ * operands in every block that it dominates. A worklist of SSA values
+ * is iterated to a fixed point, widening any bound of a loop header phi
+ * that keeps moving to infinity, and then a few passes without widening
+ * recover the bounds that the loop tests impose, such as those of a FOR
+ * loop. The relations are indexed by the value that they narrow, and
+ * dominance checks take constant time, so the analysis stays fast on
+ * long programs.
+ *
+ * A backend can then drop the check of a division whose divisor range
+ * excludes zero, and treat a value whose range fits in an int as one.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+
+import static intermediate.Instruction.Opcode;
+
+public class RangeAnalysis
+{
+    private static final int WIDENING_UPDATES = 3;  // updates of a phi before widening
+    private static final int NARROWING_PASSES = 2;
+    private static final ArrayList<Instruction> NONE = new ArrayList<>();
+
+    /**
+     * A relation of a value to a bound that holds in the blocks
+     * dominated by a block.
+     */
+    private static class Constraint
+    {
+        final BasicBlock block;
+        final Opcode relation;     // value relation bound
+        final Instruction bound;
+        final boolean ordered;     // holds only if neither value is NaN
+
+        Constraint(BasicBlock block, Opcode relation, Instruction bound, boolean ordered)
+        {
+            this.block = block;
+            this.relation = relation;
+            this.bound = bound;
+            this.ordered = ordered;
+        }
+    }
+
+    private ControlFlowGraph graph;
+    private Range[] ranges;                       // by instruction id
+    private IdentityHashMap<Instruction, ArrayList<Constraint>> constraints;  // by value
+    private IdentityHashMap<Instruction, ArrayList<Instruction>> dependents;  // by bound
+
+    /**
+     * Analyze a control flow graph and set the range of each numeric
+     * expression node that it was built from.
+     * @param graph the graph.
+     */
+    public void analyze(ControlFlowGraph graph)
+    {
+        this.graph = graph;
+
+        int count = 0;
+        for (BasicBlock block : graph.blocks) count += block.instructions.size();
+        ranges = new Range[count];
+        constraints = new IdentityHashMap<>();
+        dependents = new IdentityHashMap<>();
+
+        gatherConstraints();
+
+        // Iterate to a fixed point with a worklist in reverse postorder,
+        // which is the order of the instruction ids. A loop header phi
+        // that keeps growing is widened.
+        int[] updates = new int[count];
+        boolean[] queued = new boolean[count];
+        PriorityQueue<Instruction> worklist =
+            new PriorityQueue<>(count + 1, (a, b) -> Integer.compare(a.id, b.id));
+
+        for (BasicBlock block : graph.blocks)
+        {
+            for (Instruction instruction : block.instructions)
+            {
+                worklist.add(instruction);
+                queued[instruction.id] = true;
+            }
+        }
+
+        while (!worklist.isEmpty())
+        {
+            Instruction instruction = worklist.poll();
+            queued[instruction.id] = false;
+
+            Range range = transfer(instruction);
+            if (range == null) continue;
+
+            Range older = ranges[instruction.id];
+            if (older != null)
+            {
+                range = range.union(older);
+
+                if (   (instruction.opcode == Opcode.PHI) && isLoopHeader(instruction.block)
+                    && (updates[instruction.id] >= WIDENING_UPDATES))
+                {
+                    range = range.widen(older);
+                }
+            }
+
+            if (range.equals(older)) continue;
+
+            ranges[instruction.id] = range;
+            updates[instruction.id]++;
+
+            // Revisit the users, and the users of the values that
+            // this one bounds.
+            ArrayList<Instruction> affected = new ArrayList<>(instruction.users);
+            for (Instruction value : dependents.getOrDefault(instruction, NONE))
+            {
+                affected.addAll(value.users);
+            }
+
+            for (Instruction user : affected)
+            {
+                if (!queued[user.id])
+                {
+                    worklist.add(user);
+                    queued[user.id] = true;
+                }
+            }
+        }
+
+        // Narrow the widened bounds.
+        for (int pass = 0; pass < NARROWING_PASSES; pass++)
+        {
+            for (BasicBlock block : graph.blocks)
+            {
+                for (Instruction instruction : block.instructions)
+                {
+                    Range range = transfer(instruction);
+                    if (range != null) ranges[instruction.id] = range;
+                }
+            }
+        }
+
+        // A node that occurs in several places gets the union of its ranges.
+        for (ControlFlowGraph.Use use : graph.uses) use.node.range = Range.EMPTY;
+        for (ControlFlowGraph.Use use : graph.uses)
+        {
+            use.node.range = use.node.range.union(rangeOf(use.value, use.block));
+        }
+    }
+
+    /**
+     * Get the range of a value where it's used.
+     * @param value the value.
+     * @param block the block where it's used.
+     * @return the range, narrowed by the relations that hold in the block.
+     */
+    public Range rangeOf(Instruction value, BasicBlock block)
+    {
+        // A constant may have been removed from the graph if it's unused.
+        if (value.opcode == Opcode.CONSTANT) return Range.constant(value.constant);
+
+        Range range = ranges[value.id];
+        if (range == null) return Range.EMPTY;  // not reached yet
+
+        ArrayList<Constraint> list = constraints.get(value);
+        if (list == null) return range;
+
+        for (Constraint constraint : list)
+        {
+            if (!graph.dominates(constraint.block, block)) continue;
+
+            Range bound = ranges[constraint.bound.id];
+            if (bound == null) continue;
+            if (constraint.ordered && (range.nan || bound.nan)) continue;
+
+            range = range.refine(constraint.relation, bound);
+        }
+
+        return range;
+    }
+
+    /**
+     * Compute the range of an instruction from the ranges of its operands.
+     * @param instruction the instruction.
+     * @return the range, or null if the instruction isn't numeric.
+     */
+    private Range transfer(Instruction instruction)
+    {
+        ArrayList<Instruction> operands = instruction.operands;
+        BasicBlock block = instruction.block;
+
+        switch (instruction.opcode)
+        {
+            case CONSTANT : return Range.constant(instruction.constant);
+
+            case PHI :
+            {
+                // The line number pseudo-variable isn't of interest.
+                if (instruction.variable == null) return null;
+
+                Range range = Range.EMPTY;
+                for (int k = 0; k < operands.size(); k++)
+                {
+                    range = range.union(rangeOf(operands.get(k), block.predecessors.get(k)));
+                }
+
+                return range;
+            }
+
+            case ADD :
+            case SUBTRACT :
+            case MULTIPLY :
+            case DIVIDE :
+            case DIV :
+            {
+                return rangeOf(operands.get(0), block)
+                           .arithmetic(instruction.opcode, rangeOf(operands.get(1), block));
+            }
+
+            // An invalid expression never has a value.
+            case INVALID :  return Range.EMPTY;
+
+            default :       return null;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Constraints
+
+    /**
+     * Gather the relations that hold in each block entered only from
+     * a branch: those of the branch's condition.
+     */
+    private void gatherConstraints()
+    {
+        for (BasicBlock block : graph.blocks)
+        {
+            if (block.predecessors.size() != 1) continue;
+
+            BasicBlock predecessor = block.predecessors.get(0);
+            Instruction terminator = predecessor.terminator();
+
+            if (   (terminator != null) && (terminator.opcode == Opcode.BRANCH)
+                && (predecessor.successors.get(0) != predecessor.successors.get(1)))
+            {
+                gather(terminator.operands.get(0), predecessor.successors.get(0) == block, block);
+            }
+        }
+    }
+
+    /**
+     * Gather the relations implied by a condition.
+     * @param condition the condition.
+     * @param sense the known value of the condition.
+     * @param block the block where the relations start to hold.
+     */
+    private void gather(Instruction condition, boolean sense, BasicBlock block)
+    {
+        ArrayList<Instruction> operands = condition.operands;
+
+        switch (condition.opcode)
+        {
+            case NOT : gather(operands.get(0), !sense, block); break;
+
+            case AND :
+            {
+                if (sense)
+                {
+                    gather(operands.get(0), true, block);
+                    gather(operands.get(1), true, block);
+                }
+                break;
+            }
+
+            case OR :
+            {
+                if (!sense)
+                {
+                    gather(operands.get(0), false, block);
+                    gather(operands.get(1), false, block);
+                }
+                break;
+            }
+
+            case EQ : case NE : case LT : case LTE : case GT : case GTE :
+            {
+                // A false ordering relation means the opposite one,
+                // unless a value is NaN.
+                Opcode relation = sense ? condition.opcode : negate(condition.opcode);
+                boolean ordered =    !sense && (condition.opcode != Opcode.EQ)
+                                  && (condition.opcode != Opcode.NE);
+
+                Instruction left  = operands.get(0);
+                Instruction right = operands.get(1);
+
+                constrain(left, new Constraint(block, relation, right, ordered));
+                constrain(right, new Constraint(block, swap(relation), left, ordered));
+                break;
+            }
+
+            default : break;
+        }
+    }
+
+    private void constrain(Instruction value, Constraint constraint)
+    {
+        if (value.opcode == Opcode.CONSTANT) return;
+
+        constraints.computeIfAbsent(value, key -> new ArrayList<>()).add(constraint);
+        dependents.computeIfAbsent(constraint.bound, key -> new ArrayList<>()).add(value);
+    }
+
+    private static Opcode negate(Opcode relation)
+    {
+        switch (relation)
+        {
+            case EQ :  return Opcode.NE;
+            case NE :  return Opcode.EQ;
+            case LT :  return Opcode.GTE;
+            case LTE : return Opcode.GT;
+            case GT :  return Opcode.LTE;
+            default :  return Opcode.LT;
+        }
+    }
+
+    private static Opcode swap(Opcode relation)
+    {
+        switch (relation)
+        {
+            case LT :  return Opcode.GT;
+            case LTE : return Opcode.GTE;
+            case GT :  return Opcode.LT;
+            case GTE : return Opcode.LTE;
+            default :  return relation;
+        }
+    }
+
+    private static boolean isLoopHeader(BasicBlock block)
+    {
+        for (BasicBlock predecessor : block.predecessors)
+        {
+            if (predecessor.id >= block.id) return true;
+        }
+
+        return false;
+    }
+}
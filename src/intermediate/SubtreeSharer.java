@@ -0,0 +1,236 @@
+/**
+ * Subtree sharer class for a simple interpreter.
+ *
+ * Hash-conses the expressions of a parse tree, so that structurally
+ * identical variables, constants and operator subtrees become one node
+ * that every occurrence shares, and the tree becomes a DAG. Generated
+ * programs repeat them thousands of times: the literal 1 of each FOR
+ * loop's increment, the strings of WRITE statements, and common
+ * subexpressions.
+ *
+ * Only expression nodes are shared. Nothing writes to them after the
+ * parse except a range analysis, which unions the range of each of a
+ * node's uses into it, so a shared node's range covers all of them.
+ * Statement nodes are never shared, since an executor keeps a node's
+ * compiled WRITE format, CASE dispatch or skimmed body in its value, and
+ * profiles count their executions by node. A node that already has a
+ * range isn't shared, so the pass should run before a range analysis.
+ *
+ * Nodes match if they have the same type, line number, text, symbol
+ * table entry, value and children, and children are compared by
+ * identity since they were shared first. The tree is walked without
+ * recursion, and the canonical nodes are kept in an open addressing
+ * hash table.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package intermediate;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.Set;
+
+import static intermediate.Node.NodeType.*;
+
+public class SubtreeSharer
+{
+    private static final EnumSet<Node.NodeType> SHAREABLE =
+        EnumSet.of(VARIABLE, INTEGER_CONSTANT, REAL_CONSTANT, STRING_CONSTANT,
+                   ADD, SUBTRACT, MULTIPLY, DIVIDE, DIV, MOD, AND, OR, NOT,
+                   EQ, NE, LT, LTE, GT, GTE);
+
+    // Estimated sizes of a node, its children list, and the list's
+    // array once a child is adopted, with compressed references.
+    private static final long NODE_BYTES  = 40;
+    private static final long LIST_BYTES  = 24;
+    private static final long ARRAY_BYTES = 56;
+
+    private Node[] table;       // canonical nodes, by structural hash
+    private int tableCount;
+    private Node[] nodes;       // the path from the root to the current node
+    private int[] nextChild;    // index of each node's next child to visit
+    private Set<Node> removed;  // duplicates replaced by canonical nodes
+    private long nodeCount;     // of the tree
+    private long bytesSaved;
+
+    /**
+     * Constructor.
+     */
+    public SubtreeSharer()
+    {
+        this.table = new Node[1024];
+        this.tableCount = 0;
+        this.nodes = new Node[64];
+        this.nextChild = new int[64];
+        this.removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.nodeCount = 0;
+        this.bytesSaved = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the number of nodes in the trees before sharing.
+     */
+    public long nodeCount() { return nodeCount; }
+
+    /**
+     * Getter.
+     * @return the number of duplicate nodes that were replaced.
+     */
+    public long removedCount() { return removed.size(); }
+
+    /**
+     * Getter.
+     * @return the estimated bytes of the replaced nodes and their lists.
+     */
+    public long bytesSaved() { return bytesSaved; }
+
+    /**
+     * Share the identical expression subtrees of a parse tree.
+     * @param root the root node of the tree.
+     * @return the root node, or the canonical node that replaces it.
+     */
+    public Node share(Node root)
+    {
+        nodeCount++;
+        if (root.children.isEmpty()) return canonical(root);
+
+        int depth = 0;
+        push(root, depth++);
+
+        // Children first, so that a node's children are canonical
+        // by the time it's looked up.
+        while (depth > 0)
+        {
+            Node node = nodes[depth - 1];
+            int index = nextChild[depth - 1]++;
+
+            if (index < node.children.size())
+            {
+                Node child = node.children.get(index);
+                if (child == null) continue;
+
+                nodeCount++;
+                if (child.children.isEmpty()) replace(node, index, canonical(child));
+                else                          push(child, depth++);
+            }
+            else
+            {
+                nodes[--depth] = null;
+                if (depth > 0) replace(nodes[depth - 1], nextChild[depth - 1] - 1, canonical(node));
+            }
+        }
+
+        return canonical(root);
+    }
+
+    private void push(Node node, int depth)
+    {
+        if (depth == nodes.length)
+        {
+            nodes = java.util.Arrays.copyOf(nodes, 2*depth);
+            nextChild = java.util.Arrays.copyOf(nextChild, 2*depth);
+        }
+
+        nodes[depth] = node;
+        nextChild[depth] = 0;
+    }
+
+    /**
+     * Replace a child by its canonical node.
+     * @param parent the parent node.
+     * @param index the child's index.
+     * @param canonical the canonical node.
+     */
+    private void replace(Node parent, int index, Node canonical)
+    {
+        Node child = parent.children.get(index);
+        if (child == canonical) return;
+
+        parent.children.set(index, canonical);
+
+        // A node that the parser already shared is counted once.
+        if (removed.add(child))
+        {
+            bytesSaved += NODE_BYTES + LIST_BYTES;
+            if (!child.children.isEmpty()) bytesSaved += ARRAY_BYTES;
+        }
+    }
+
+    /**
+     * Find the canonical node that's identical to a node whose children
+     * are canonical, or make the node canonical if there's none.
+     * @param node the node.
+     * @return the canonical node.
+     */
+    private Node canonical(Node node)
+    {
+        if (!SHAREABLE.contains(node.type) || (node.range != null)) return node;
+
+        int mask = table.length - 1;
+        int i = hash(node) & mask;
+
+        for (Node entry = table[i]; entry != null; entry = table[i])
+        {
+            if (identical(entry, node)) return entry;
+            i = (i + 1) & mask;
+        }
+
+        table[i] = node;
+        if (++tableCount > table.length/2) grow();
+
+        return node;
+    }
+
+    private void grow()
+    {
+        Node[] old = table;
+        table = new Node[2*old.length];
+        int mask = table.length - 1;
+
+        for (Node node : old)
+        {
+            if (node == null) continue;
+
+            int i = hash(node) & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = node;
+        }
+    }
+
+    private static int hash(Node node)
+    {
+        int h = 31*node.type.ordinal() + node.lineNumber;
+        h = 31*h + Objects.hashCode(node.text);
+        h = 31*h + System.identityHashCode(node.entry);
+        h = 31*h + Objects.hashCode(node.value);
+
+        for (int i = 0; i < node.children.size(); i++)
+        {
+            h = 31*h + System.identityHashCode(node.children.get(i));
+        }
+
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean identical(Node a, Node b)
+    {
+        if (   (a.type != b.type) || (a.lineNumber != b.lineNumber)
+            || (a.entry != b.entry) || (a.children.size() != b.children.size())
+            || !Objects.equals(a.text, b.text) || !Objects.equals(a.value, b.value))
+        {
+            return false;
+        }
+
+        for (int i = 0; i < a.children.size(); i++)
+        {
+            if (a.children.get(i) != b.children.get(i)) return false;
+        }
+
+        return true;
+    }
+}
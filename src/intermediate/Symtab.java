@@ -31,4 +31,10 @@ public class Symtab
      * @return the entry or null if it's not in the symbol table.
      */
     public SymtabEntry lookup(String name) { return contents.get(name); }
+    
+    /**
+     * Remove an entry.
+     * @param name the entry's name.
+     */
+    public void remove(String name) { contents.remove(name); }
 }
@@ -10,7 +10,7 @@ package intermediate;
 public class SymtabEntry
 {
     private String name;
-    private Double value;
+    private double value;
     
     /**
      * Constructor.
@@ -30,13 +30,13 @@ public class SymtabEntry
 
     /**
      * Getter.
-     * @return the entry's valuel
+     * @return the entry's value.
      */
-    public Double getValue() { return value; }
+    public double getValue() { return value; }
     
     /**
      * Set the entry's value.
      * @param value the value to set.
      */
-    public void setValue(Double value) { this.value = value; }
+    public void setValue(double value) { this.value = value; }
 }
@@ -0,0 +1,304 @@
+/**
+ * Batch runner class for a simple interpreter.
+ *
+ * Runs the programs of many source files with an ExecutionService, so
+ * they share one JVM, its warmed up code, and all the processors. The
+ * output of each program is captured by itself and then either written
+ * to a file of its own or appended to a combined stream in the order of
+ * the source files. Results are written in that order as they become
+ * ready, and only a few programs per thread are submitted ahead of the
+ * next one to be written, so a batch of any size takes little memory.
+ * A summary then lists the status and the phase times of each program.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+public class BatchRunner
+{
+    public static final String SOURCE_SUFFIX = ".txt";
+    public static final String OUTPUT_SUFFIX = ".out";
+
+    private static final int AHEAD_PER_THREAD = 4;  // programs submitted ahead
+    private static final String UNREADABLE = "UNREADABLE";
+
+    /**
+     * A source file's program, and its result once it has one.
+     */
+    private static class Entry
+    {
+        final String fileName;
+        CompletableFuture<ExecutionService.Result> future;  // null if unreadable
+        String status;
+        int exitStatus;
+        long[] nanos = new long[ExecutionService.Phase.values().length];
+        int outputSize;
+
+        Entry(String fileName)
+        {
+            this.fileName = fileName;
+        }
+    }
+
+    private long fuel;           // back edges per program
+    private long timeoutMillis;  // time per program once it starts
+    private File outputDirectory;
+    private PrintStream combined;
+
+    /**
+     * Constructor.
+     * @param fuel the loop back edges allowed per program,
+     *             or Budget.UNLIMITED_FUEL.
+     * @param timeoutMillis the time allowed per program once it starts
+     *                      running, or Budget.NO_TIMEOUT.
+     * @param outputDirectory the directory for a file of output per
+     *                        program, or null for the combined stream.
+     * @param combined the combined stream, if there's no output directory.
+     */
+    public BatchRunner(long fuel, long timeoutMillis, File outputDirectory,
+                       PrintStream combined)
+    {
+        this.fuel = fuel;
+        this.timeoutMillis = timeoutMillis;
+        this.outputDirectory = outputDirectory;
+        this.combined = combined;
+    }
+
+    /**
+     * List the source files of a batch.
+     * @param batch a directory, whose files ending with SOURCE_SUFFIX are
+     *              the batch in name order, or else a file that names
+     *              one source file per line. Blank lines are skipped.
+     * @return the source file names.
+     * @throws IOException if the batch can't be read.
+     */
+    public static ArrayList<String> sourceFiles(File batch) throws IOException
+    {
+        ArrayList<String> fileNames = new ArrayList<>();
+
+        if (batch.isDirectory())
+        {
+            File[] files = batch.listFiles(file ->    file.isFile()
+                                                   && file.getName().endsWith(SOURCE_SUFFIX));
+            if (files == null) throw new IOException("Can't list " + batch);
+
+            Arrays.sort(files);
+            for (File file : files) fileNames.add(file.getPath());
+        }
+        else
+        {
+            for (String line : Files.readAllLines(batch.toPath(), Charset.defaultCharset()))
+            {
+                if (!line.isBlank()) fileNames.add(line.strip());
+            }
+        }
+
+        return fileNames;
+    }
+
+    /**
+     * Run the programs of a batch and write their output.
+     * @param fileNames the source file names.
+     * @param summary the stream for the summary.
+     * @return true if every program completed.
+     * @throws IOException if an output file can't be written.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean run(ArrayList<String> fileNames, PrintStream summary)
+        throws IOException, InterruptedException
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int ahead = threads*AHEAD_PER_THREAD;
+        ArrayList<Entry> entries = new ArrayList<>();
+        ArrayDeque<Entry> pending = new ArrayDeque<>();
+        HashSet<String> outputNames = new HashSet<>();
+        boolean virtual;
+        long start = System.nanoTime();
+
+        if (outputDirectory != null) Files.createDirectories(outputDirectory.toPath());
+
+        try (ExecutionService service = new ExecutionService(ahead, fuel, timeoutMillis))
+        {
+            virtual = service.isVirtual();
+
+            for (String fileName : fileNames)
+            {
+                Entry entry = new Entry(fileName);
+
+                try
+                {
+                    byte[] source = Files.readAllBytes(new File(fileName).toPath());
+                    entry.future = service.submit(new String(source, Charset.defaultCharset()));
+                }
+                catch (IOException ex)
+                {
+                    entry.future = null;
+                }
+
+                entries.add(entry);
+                pending.add(entry);
+
+                // Write the results that are ready, and wait for the
+                // next one if too many programs are ahead of it.
+                while (   !pending.isEmpty()
+                       && ((pending.size() > ahead) || isReady(pending.peek())))
+                {
+                    write(pending.remove(), outputNames);
+                }
+            }
+
+            while (!pending.isEmpty()) write(pending.remove(), outputNames);
+        }
+
+        if (combined != null) combined.flush();
+        return summarize(entries, summary, threads, virtual, System.nanoTime() - start);
+    }
+
+    private static boolean isReady(Entry entry)
+    {
+        return (entry.future == null) || entry.future.isDone();
+    }
+
+    /**
+     * Wait for the result of a program and write its output.
+     * @param entry the program's entry.
+     * @param outputNames the names of the output files written so far.
+     * @throws IOException if the output file can't be written.
+     */
+    private void write(Entry entry, HashSet<String> outputNames) throws IOException
+    {
+        byte[] output;
+
+        if (entry.future == null)
+        {
+            entry.status = UNREADABLE;
+            entry.exitStatus = -1;
+            output = ("*** ERROR: Failed to read " + entry.fileName + "\n")
+                         .getBytes(Charset.defaultCharset());
+        }
+        else
+        {
+            ExecutionService.Result result = entry.future.join();
+
+            entry.status = result.status.toString();
+            entry.exitStatus = result.exitStatus();
+            for (ExecutionService.Phase phase : ExecutionService.Phase.values())
+            {
+                entry.nanos[phase.ordinal()] = result.nanos(phase);
+            }
+            output = result.output;
+        }
+
+        entry.future = null;
+        entry.outputSize = output.length;
+
+        if (outputDirectory != null)
+        {
+            File file = new File(outputDirectory, outputName(entry.fileName, outputNames));
+            Files.write(file.toPath(), output);
+        }
+        else
+        {
+            combined.println("==> " + entry.fileName + " <==");
+            combined.write(output);
+            if ((output.length > 0) && (output[output.length - 1] != '\n')) combined.println();
+        }
+    }
+
+    /**
+     * Name the output file of a source file: the source file's name
+     * with OUTPUT_SUFFIX in place of its suffix, and with a number
+     * added if another source file of the batch has the same name.
+     * @param fileName the source file name.
+     * @param outputNames the names used so far, which gets the new one.
+     * @return the output file name.
+     */
+    private static String outputName(String fileName, HashSet<String> outputNames)
+    {
+        String name = new File(fileName).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+
+        String outputName = name + OUTPUT_SUFFIX;
+        for (int n = 2; !outputNames.add(outputName); n++)
+        {
+            outputName = name + "-" + n + OUTPUT_SUFFIX;
+        }
+
+        return outputName;
+    }
+
+    /**
+     * Print the summary of a batch.
+     * @param entries the programs' entries, in batch order.
+     * @param summary the stream for the summary.
+     * @param threads the number of processors.
+     * @param virtual true if the programs ran on virtual threads.
+     * @param elapsed the time of the whole batch, in nanoseconds.
+     * @return true if every program completed.
+     */
+    private static boolean summarize(ArrayList<Entry> entries, PrintStream summary,
+                                     int threads, boolean virtual, long elapsed)
+    {
+        EnumMap<ExecutionService.Phase, Long> totals =
+            new EnumMap<>(ExecutionService.Phase.class);
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        int width = "File".length();
+
+        for (Entry entry : entries) width = Math.max(width, entry.fileName.length());
+
+        String format = "%-" + width + "s  %-15s %5s %10s %10s %10s %10s%n";
+        summary.printf(format, "File", "Status", "Exit",
+                       "Parse ms", "Compile ms", "Run ms", "Bytes");
+
+        for (Entry entry : entries)
+        {
+            long[] nanos = entry.nanos;
+
+            summary.printf(format, entry.fileName, entry.status, entry.exitStatus,
+                           millis(nanos[ExecutionService.Phase.PARSE.ordinal()]),
+                           millis(nanos[ExecutionService.Phase.COMPILE.ordinal()]),
+                           millis(nanos[ExecutionService.Phase.RUN.ordinal()]),
+                           entry.outputSize);
+
+            for (ExecutionService.Phase phase : ExecutionService.Phase.values())
+            {
+                totals.merge(phase, nanos[phase.ordinal()], Long::sum);
+            }
+            counts.merge(entry.status, 1, Integer::sum);
+        }
+
+        summary.println();
+        summary.printf("%d programs on %d %s threads in %.3f seconds%n",
+                       entries.size(), threads, virtual ? "virtual" : "platform",
+                       elapsed/1e9);
+        summary.printf("Total parse %s ms, compile %s ms, run %s ms%n",
+                       millis(totals.get(ExecutionService.Phase.PARSE)),
+                       millis(totals.get(ExecutionService.Phase.COMPILE)),
+                       millis(totals.get(ExecutionService.Phase.RUN)));
+        summary.println("Results: " + counts);
+
+        Integer completed = counts.get(ExecutionService.Status.COMPLETED.toString());
+        return (completed == null ? 0 : completed) == entries.size();
+    }
+
+    private static String millis(Long nanos)
+    {
+        return String.format("%.3f", (nanos == null ? 0 : nanos)/1e6);
+    }
+}
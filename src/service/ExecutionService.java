@@ -0,0 +1,475 @@
+/**
+ * Execution service class for a simple interpreter.
+ *
+ * Runs many programs inside one JVM. Each submitted program is parsed
+ * into its own symbol table, compiled, and run with its own output
+ * buffer, so programs can't see each other. Errors come back in the
+ * result instead of ending the process, and each program can be held
+ * to a budget of loop back edges and time. Programs run on virtual
+ * threads when the Java runtime has them, and otherwise on a pool with
+ * a thread per processor. At most a fixed number of programs are admitted at
+ * once: submit() waits for room, and trySubmit() refuses.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import frontend.*;
+import intermediate.*;
+import backend.*;
+
+public class ExecutionService implements AutoCloseable
+{
+    public static final int DEFAULT_MAX_ADMITTED = 1024;
+
+    private static final long PLATFORM_STACK_SIZE = 64L << 20;
+    private static final int OUTPUT_CAPACITY = 4*1024;
+    private static final byte[] NO_OUTPUT = new byte[0];
+
+    /**
+     * How a program ended.
+     */
+    public enum Status
+    {
+        COMPLETED, SYNTAX_ERRORS, RUNTIME_ERROR, TOO_DEEP, OUT_OF_FUEL, DEADLINE_PASSED,
+        CANCELLED
+    }
+
+    /**
+     * A phase of a program's execution. The scanner reads tokens as
+     * the parser asks for them, so scanning is part of parsing.
+     */
+    public enum Phase
+    {
+        PARSE, COMPILE, RUN
+    }
+
+    /**
+     * The result of a program.
+     */
+    public static class Result
+    {
+        public final Status status;
+        public final byte[] output;  // as the program would print it,
+                                     // including any error messages
+        private final long[] nanos;  // by phase
+
+        Result(Status status, byte[] output, long[] nanos)
+        {
+            this.status = status;
+            this.output = output;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @param phase a phase.
+         * @return the time that the program spent in the phase, in
+         *         nanoseconds, or 0 if it didn't get that far.
+         */
+        public long nanos(Phase phase) { return nanos[phase.ordinal()]; }
+
+        /**
+         * @return the exit status that the program would have
+         *         when run by Simple.
+         */
+        public int exitStatus()
+        {
+            switch (status)
+            {
+                case RUNTIME_ERROR :   return -2;
+                case OUT_OF_FUEL :
+                case DEADLINE_PASSED :
+                case CANCELLED :       return -3;
+                case TOO_DEEP :        return 1;  // uncaught StackOverflowError
+                default :              return 0;
+            }
+        }
+
+        /**
+         * @return the output as a string.
+         */
+        public String outputText() { return new String(output, Charset.defaultCharset()); }
+    }
+
+    /**
+     * A program parsed and compiled, ready to run any number of times
+     * on any number of threads at once, or else its syntax errors.
+     */
+    public static class Prepared
+    {
+        public final CompiledProgram program;  // null if it couldn't be compiled
+        public final byte[] errors;            // syntax error messages, as Simple
+                                               // prints them
+        public final boolean tooDeep;          // true if nested too deeply for the stack
+        public final int nodeCount;            // of the parse tree
+
+        Prepared(CompiledProgram program, byte[] errors, boolean tooDeep, int nodeCount)
+        {
+            this.program = program;
+            this.errors = errors;
+            this.tooDeep = tooDeep;
+            this.nodeCount = nodeCount;
+        }
+    }
+
+    private ExecutorService threads;
+    private Semaphore admission;
+    private boolean virtual;     // true if on virtual threads
+    private long fuel;           // back edges per program
+    private long timeoutMillis;  // time per program once it starts
+    private ProgramCache cache;  // of prepared programs, or null
+
+    /**
+     * Constructor.
+     */
+    public ExecutionService()
+    {
+        this(DEFAULT_MAX_ADMITTED);
+    }
+
+    /**
+     * Constructor.
+     * @param maxAdmitted the number of programs that can be queued
+     *                    or running at once.
+     */
+    public ExecutionService(int maxAdmitted)
+    {
+        this(maxAdmitted, Budget.UNLIMITED_FUEL, Budget.NO_TIMEOUT);
+    }
+
+    /**
+     * Constructor.
+     * @param maxAdmitted the number of programs that can be queued
+     *                    or running at once.
+     * @param fuel the loop back edges allowed per program,
+     *             or Budget.UNLIMITED_FUEL.
+     * @param timeoutMillis the time allowed per program once it starts
+     *                      running, or Budget.NO_TIMEOUT.
+     */
+    public ExecutionService(int maxAdmitted, long fuel, long timeoutMillis)
+    {
+        this(maxAdmitted, fuel, timeoutMillis, null);
+    }
+
+    /**
+     * Constructor.
+     * @param maxAdmitted the number of programs that can be queued
+     *                    or running at once.
+     * @param fuel the loop back edges allowed per program,
+     *             or Budget.UNLIMITED_FUEL.
+     * @param timeoutMillis the time allowed per program once it starts
+     *                      running, or Budget.NO_TIMEOUT.
+     * @param cache the cache of prepared programs, which other services
+     *              may share, or null to prepare every program.
+     */
+    public ExecutionService(int maxAdmitted, long fuel, long timeoutMillis,
+                            ProgramCache cache)
+    {
+        this.cache = cache;
+        this.fuel = fuel;
+        this.timeoutMillis = timeoutMillis;
+        this.admission = new Semaphore(maxAdmitted);
+        this.threads = virtualThreads();
+        this.virtual = threads != null;
+
+        // Compiled code is recursive, so platform threads get a big stack.
+        if (threads == null)
+        {
+            threads = Executors.newFixedThreadPool(
+                          Runtime.getRuntime().availableProcessors(),
+                          task -> {
+                              Thread thread = new Thread(null, task, "simple-program",
+                                                         PLATFORM_STACK_SIZE);
+                              thread.setDaemon(true);
+                              return thread;
+                          });
+        }
+    }
+
+    /**
+     * Make an executor service with a virtual thread per task. The
+     * service is compiled for Java versions without them, so it's
+     * looked up by reflection.
+     * @return the executor service, or null if there are no virtual threads.
+     */
+    private static ExecutorService virtualThreads()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class
+                       .getMethod("newVirtualThreadPerTaskExecutor")
+                       .invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Getter.
+     * @return true if programs run on virtual threads.
+     */
+    public boolean isVirtual() { return virtual; }
+
+    /**
+     * Submit a program, and wait until there is room for it.
+     * @param sourceText the program's source text.
+     * @return the future result.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public CompletableFuture<Result> submit(String sourceText) throws InterruptedException
+    {
+        admission.acquire();
+        return start(sourceText);
+    }
+
+    /**
+     * Submit a program if there is room for it.
+     * @param sourceText the program's source text.
+     * @return the future result, or null if too many programs
+     *         are admitted already.
+     */
+    public CompletableFuture<Result> trySubmit(String sourceText)
+    {
+        return admission.tryAcquire() ? start(sourceText) : null;
+    }
+
+    private CompletableFuture<Result> start(String sourceText)
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync(() -> execute(sourceText, fuel, timeoutMillis,
+                                                               cache),
+                                                 threads)
+                                    .whenComplete((result, error) -> admission.release());
+        }
+        catch (RuntimeException ex)
+        {
+            admission.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Parse, compile and run a program on the current thread.
+     * @param sourceText the program's source text.
+     * @return the result.
+     */
+    public static Result execute(String sourceText)
+    {
+        return execute(sourceText, Budget.UNLIMITED_FUEL, Budget.NO_TIMEOUT);
+    }
+
+    /**
+     * Parse, compile and run a program on the current thread.
+     * @param sourceText the program's source text.
+     * @param fuel the loop back edges allowed, or Budget.UNLIMITED_FUEL.
+     * @param timeoutMillis the time allowed, or Budget.NO_TIMEOUT.
+     * @return the result.
+     */
+    public static Result execute(String sourceText, long fuel, long timeoutMillis)
+    {
+        return execute(sourceText, fuel, timeoutMillis, null);
+    }
+
+    /**
+     * Run a program on the current thread, parsing and compiling it
+     * unless it's cached.
+     * @param sourceText the program's source text.
+     * @param fuel the loop back edges allowed, or Budget.UNLIMITED_FUEL.
+     * @param timeoutMillis the time allowed, or Budget.NO_TIMEOUT.
+     * @param cache the cache of prepared programs, or null.
+     * @return the result.
+     */
+    public static Result execute(String sourceText, long fuel, long timeoutMillis,
+                                 ProgramCache cache)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Result result = execute(sourceText, bytes, new Budget(fuel, timeoutMillis), cache);
+
+        return new Result(result.status, bytes.toByteArray(), result.nanos);
+    }
+
+    /**
+     * Parse, compile and run a program on the current thread, and
+     * write its output to a stream as it's printed.
+     * @param sourceText the program's source text.
+     * @param sink the stream for the output, including any error
+     *             messages. It gets the output in pieces of up to 4K.
+     * @param budget the run's budget, which another thread may cancel.
+     * @return the result, with no output.
+     */
+    public static Result execute(String sourceText, OutputStream sink, Budget budget)
+    {
+        return execute(sourceText, sink, budget, null);
+    }
+
+    /**
+     * Run a program on the current thread, parsing and compiling it
+     * unless it's cached, and write its output to a stream as it's printed.
+     * @param sourceText the program's source text.
+     * @param sink the stream for the output, including any error
+     *             messages. It gets the output in pieces of up to 4K.
+     * @param budget the run's budget, which another thread may cancel.
+     * @param cache the cache of prepared programs, or null.
+     * @return the result, with no output. A cached program has no
+     *         parse and compile times.
+     */
+    public static Result execute(String sourceText, OutputStream sink, Budget budget,
+                                 ProgramCache cache)
+    {
+        long[] nanos = new long[Phase.values().length];
+        Prepared prepared = cache != null ? cache.get(sourceText, nanos)
+                                          : prepare(sourceText, nanos);
+        try
+        {
+            sink.write(prepared.errors);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+
+        if (prepared.tooDeep)        return new Result(Status.TOO_DEEP, NO_OUTPUT, nanos);
+        if (prepared.program == null) return new Result(Status.SYNTAX_ERRORS, NO_OUTPUT, nanos);
+
+        long mark = System.nanoTime();
+
+        try
+        {
+            int status = prepared.program.run(new OutputBuffer(sink, OUTPUT_CAPACITY), budget);
+            lap(nanos, Phase.RUN, mark);
+
+            LimitExceeded.Limit limit = budget.exceeded();
+            Status outcome = status == 0                           ? Status.COMPLETED
+                           : limit == null                         ? Status.RUNTIME_ERROR
+                           : limit == LimitExceeded.Limit.FUEL     ? Status.OUT_OF_FUEL
+                           : limit == LimitExceeded.Limit.DEADLINE ? Status.DEADLINE_PASSED
+                           :                                         Status.CANCELLED;
+            return new Result(outcome, NO_OUTPUT, nanos);
+        }
+        catch (StackOverflowError error)
+        {
+            lap(nanos, Phase.RUN, mark);
+            return new Result(Status.TOO_DEEP, NO_OUTPUT, nanos);
+        }
+    }
+
+    /**
+     * Parse and compile a program on the current thread.
+     * @param sourceText the program's source text.
+     * @param nanos the times by phase, which get the parse and compile times.
+     * @return the prepared program.
+     */
+    public static Prepared prepare(String sourceText, long[] nanos)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Symtab symtab = new Symtab();
+        Phase phase = Phase.PARSE;
+        long mark = System.nanoTime();
+
+        try
+        {
+            // Syntax errors are printed like Simple prints them.
+            PrintStream errors = new PrintStream(bytes, true, Charset.defaultCharset());
+            Parser parser = new Parser(new Scanner(new Source(new StringReader(sourceText)),
+                                                   errors),
+                                       symtab, errors);
+            Node programNode = parser.parseProgram();
+            mark = lap(nanos, phase, mark);
+
+            if (parser.errorCount() > 0)
+            {
+                errors.println();
+                errors.println("There were " + parser.errorCount() + " errors.");
+                return new Prepared(null, bytes.toByteArray(), false, nodeCount(programNode));
+            }
+
+            phase = Phase.COMPILE;
+            CompiledProgram program = CompiledProgram.compile(programNode, symtab);
+            lap(nanos, phase, mark);
+
+            return new Prepared(program, NO_OUTPUT, false, nodeCount(programNode));
+        }
+        catch (StackOverflowError error)
+        {
+            lap(nanos, phase, mark);
+            return new Prepared(null, bytes.toByteArray(), true, 0);
+        }
+    }
+
+    /**
+     * Count the nodes of a parse tree, without recursion, since the
+     * tree may be deeper than the stack.
+     * @param root the root node.
+     * @return the count.
+     */
+    private static int nodeCount(Node root)
+    {
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        int count = 0;
+
+        nodes.push(root);
+        while (!nodes.isEmpty())
+        {
+            Node node = nodes.pop();
+            count++;
+            for (Node child : node.children)
+            {
+                if (child != null) nodes.push(child);  // after a syntax error
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Record the time of a phase.
+     * @param nanos the times by phase.
+     * @param phase the phase that just ended.
+     * @param mark the time that the phase started.
+     * @return the time now.
+     */
+    private static long lap(long[] nanos, Phase phase, long mark)
+    {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] = now - mark;
+        return now;
+    }
+
+    /**
+     * Stop accepting programs and wait for the running ones to finish.
+     */
+    @Override
+    public void close()
+    {
+        threads.shutdown();
+
+        try
+        {
+            while (!threads.awaitTermination(1, TimeUnit.MINUTES)) continue;
+        }
+        catch (InterruptedException ex)
+        {
+            threads.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
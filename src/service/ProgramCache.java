@@ -0,0 +1,223 @@
+/**
+ * Program cache class for a simple interpreter.
+ *
+ * Keeps the prepared programs of a long-running host in memory, so that
+ * a program submitted again isn't scanned, parsed and compiled again.
+ * A prepared program is keyed by a content hash of its source text. It
+ * is immutable, so any number of threads can run it at once. The cache
+ * holds at most a number of programs and an estimated number of bytes,
+ * and it drops the least recently used programs to stay within both.
+ * When threads ask for a program that isn't cached at the same time,
+ * the first one prepares it and the others wait for it, so it's still
+ * prepared only once. A program too deep for the preparing thread's
+ * stack isn't kept, since another thread might have room for it.
+ *
+ * Additional work done by Team A: Jade Webb, Zachary May, Yinuo Tang, Ajita Srivastava
+ * CS 153 Assignment #3
+ *
+ */
+package service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class ProgramCache
+{
+    public static final int  DEFAULT_MAX_PROGRAMS = 1024;
+    public static final long DEFAULT_MAX_SIZE     = 64L << 20;  // estimated bytes
+
+    // Estimated bytes of compiled code and constants per parse tree
+    // node, and of the rest of a cached program. Compiled programs
+    // were measured to take about 22 bytes per node.
+    private static final int BYTES_PER_NODE = 24;
+    private static final int BYTES_PER_PROGRAM = 512;
+
+    private final int maxPrograms;
+    private final long maxSize;
+
+    // In order of use, least recent first. A program being
+    // prepared has a future that isn't done yet.
+    private final LinkedHashMap<ByteBuffer, CompletableFuture<ExecutionService.Prepared>>
+        programs = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;  // estimated bytes of the prepared programs
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor.
+     */
+    public ProgramCache()
+    {
+        this(DEFAULT_MAX_PROGRAMS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param maxPrograms the number of programs to keep at most.
+     * @param maxSize the estimated bytes of the programs to keep at most.
+     */
+    public ProgramCache(int maxPrograms, long maxSize)
+    {
+        this.maxPrograms = maxPrograms;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a prepared program, preparing it on the current thread if it
+     * isn't cached or being prepared by another thread.
+     * @param sourceText the program's source text.
+     * @param nanos the times by phase, which get the parse and compile
+     *              times if this call prepares the program.
+     * @return the prepared program.
+     */
+    public ExecutionService.Prepared get(String sourceText, long[] nanos)
+    {
+        ByteBuffer key = key(sourceText);
+        CompletableFuture<ExecutionService.Prepared> future;
+        boolean preparing = false;  // by this thread
+
+        synchronized (this)
+        {
+            future = programs.get(key);
+
+            if (future != null) hits++;
+            else
+            {
+                misses++;
+                future = new CompletableFuture<>();
+                programs.put(key, future);
+                preparing = true;
+            }
+        }
+
+        if (!preparing) return future.join();
+
+        ExecutionService.Prepared prepared;
+
+        try
+        {
+            prepared = ExecutionService.prepare(sourceText, nanos);
+        }
+        catch (RuntimeException | Error ex)
+        {
+            synchronized (this)
+            {
+                programs.remove(key);
+                future.completeExceptionally(ex);
+            }
+
+            throw ex;
+        }
+
+        synchronized (this)
+        {
+            future.complete(prepared);
+
+            if (prepared.tooDeep) programs.remove(key);
+            else
+            {
+                size += sizeOf(prepared);
+                evict();
+            }
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Drop the least recently used prepared programs until the cache
+     * is within its limits. Programs still being prepared stay.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<ByteBuffer, CompletableFuture<ExecutionService.Prepared>>> entries =
+            programs.entrySet().iterator();
+        int count = programs.size();
+
+        while (((count > maxPrograms) || (size > maxSize)) && entries.hasNext())
+        {
+            CompletableFuture<ExecutionService.Prepared> future = entries.next().getValue();
+
+            if (future.isDone())
+            {
+                size -= sizeOf(future.join());
+                entries.remove();
+                count--;
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * @param prepared a prepared program.
+     * @return its estimated size in bytes.
+     */
+    private static long sizeOf(ExecutionService.Prepared prepared)
+    {
+        return   BYTES_PER_PROGRAM + (long) prepared.nodeCount*BYTES_PER_NODE
+               + prepared.errors.length;
+    }
+
+    /**
+     * Compute the key of a program.
+     * @param sourceText the program's source text.
+     * @return the SHA-256 hash of the text.
+     */
+    private static ByteBuffer key(String sourceText)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(digest.digest(sourceText.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);  // every Java runtime has SHA-256
+        }
+    }
+
+    /**
+     * Getter.
+     * @return the number of cached programs, including any being prepared.
+     */
+    public synchronized int count() { return programs.size(); }
+
+    /**
+     * Getter.
+     * @return the estimated bytes of the cached programs.
+     */
+    public synchronized long size() { return size; }
+
+    /**
+     * Getter.
+     * @return the number of programs found cached or being prepared.
+     */
+    public synchronized long hits() { return hits; }
+
+    /**
+     * Getter.
+     * @return the number of programs prepared.
+     */
+    public synchronized long misses() { return misses; }
+
+    /**
+     * Getter.
+     * @return the number of programs dropped to stay within the limits.
+     */
+    public synchronized long evictions() { return evictions; }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%d programs, %d bytes, %d hits, %d misses, %d evictions",
+                             programs.size(), size, hits, misses, evictions);
+    }
+}